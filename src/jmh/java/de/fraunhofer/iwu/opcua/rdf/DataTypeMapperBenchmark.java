@@ -0,0 +1,77 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.rdf4j.model.Literal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ulong;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTypeMapperBenchmark {
+
+    DataTypeMapper mapper;
+    Object int32 = 4711;
+    Object smallInt32 = 7;
+    UInteger uint32 = uint(4000000000L);
+    ULong uint64 = ulong(Long.MAX_VALUE).add(ulong(1));
+    Object dbl = Math.E;
+    Object str = "Machine 1";
+    DateTime dateTime = DateTime.now();
+    LocalizedText localizedText = LocalizedText.english("Machine 1");
+
+    @Setup
+    public void setUp() {
+        mapper = new DataTypeMapper(SyntheticAddressSpace.dataTypeTree(), SyntheticAddressSpace.context(1, 1));
+    }
+
+    @Benchmark
+    public Literal int32() {
+        return mapper.getLiteralFromInt32(int32);
+    }
+
+    @Benchmark
+    public Literal smallInt32() {
+        return mapper.getLiteralFromInt32(smallInt32);
+    }
+
+    @Benchmark
+    public Literal uint32() {
+        return mapper.getLiteralFromUInt32(uint32);
+    }
+
+    @Benchmark
+    public Literal uint64() {
+        return mapper.getLiteralFromUInt64(uint64);
+    }
+
+    @Benchmark
+    public Literal dbl() {
+        return mapper.getLiteralFromDouble(dbl);
+    }
+
+    @Benchmark
+    public Literal string() {
+        return mapper.getLiteralFromString(str);
+    }
+
+    @Benchmark
+    public Literal dateTime() {
+        return mapper.getLiteralFromDateTime(dateTime);
+    }
+
+    @Benchmark
+    public Literal localizedText() {
+        return mapper.getLiteralFromLocalizedText(localizedText);
+    }
+}
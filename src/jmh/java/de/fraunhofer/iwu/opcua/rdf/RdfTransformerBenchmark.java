@@ -0,0 +1,82 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RdfTransformerBenchmark {
+
+    @Param({"100"})
+    int machines;
+
+    @Param({"100"})
+    int variablesPerMachine;
+
+    RdfTransformer transformer;
+    Model model;
+    UaNode node;
+    List<ReferenceDescription> references;
+
+    @Setup
+    public void setUp() {
+        OpcuaContext ctx = SyntheticAddressSpace.context(machines, variablesPerMachine);
+        transformer = new RdfTransformer(ctx, SimpleValueFactory.getInstance().createIRI("http://iwu.fraunhofer.de/c32/benchmark"),
+                SyntheticAddressSpace.dataTypeTree());
+        model = transformer.transform();
+        Map.Entry<? extends UaNode, List<ReferenceDescription>> machine = ctx.getNodeRefMap().entrySet().stream()
+                .skip(1).findFirst().orElseThrow();
+        node = machine.getKey();
+        references = machine.getValue();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void transformNode(Blackhole blackhole) {
+        transformer.getHandler(node.getNodeClass()).handle(node, references, blackhole::consume);
+    }
+
+    @Benchmark
+    public void transform(Blackhole blackhole) {
+        transformer.transform(new AbstractRDFHandler() {
+            @Override
+            public void handleStatement(Statement st) {
+                blackhole.consume(st);
+            }
+        });
+    }
+
+    @Benchmark
+    public void writeTurtle() {
+        Rio.write(model, OutputStream.nullOutputStream(), RDFFormat.TURTLE);
+    }
+
+    /**
+     * Includes the file system, every invocation writes a new file below target/output/transformed.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void save() {
+        transformer.save(model);
+    }
+}
@@ -0,0 +1,85 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaObjectNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.milo.opcua.stack.core.util.Tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Generates an in-memory address space of machines below the Objects folder, each with a number of Double
+ * variables, so that the transformation can be measured without a server.
+ */
+final class SyntheticAddressSpace {
+
+    static final String NAMESPACE = "urn:iwu:fraunhofer:benchmark";
+
+    private SyntheticAddressSpace() {
+    }
+
+    static NamespaceTable namespaces() {
+        NamespaceTable namespaces = new NamespaceTable();
+        namespaces.addUri("urn:eclipse:milo:benchmark:server");
+        namespaces.addUri(NAMESPACE);
+        return namespaces;
+    }
+
+    static DataTypeTree dataTypeTree() {
+        return new DataTypeTree(new Tree<>(null, new DataTypeTree.DataType(
+                new QualifiedName(0, "BaseDataType"), Identifiers.BaseDataType, null, null)));
+    }
+
+    static OpcuaContext context(int machines, int variablesPerMachine) {
+        Map<UaNode, List<ReferenceDescription>> nodes = new LinkedHashMap<>();
+        List<ReferenceDescription> objectsRefs = new ArrayList<>();
+        nodes.put(object(Identifiers.ObjectsFolder, "Objects"), objectsRefs);
+        for (int m = 0; m < machines; m++) {
+            NodeId machineId = new NodeId(2, "Machine" + m);
+            objectsRefs.add(reference(Identifiers.Organizes, true, machineId, NodeClass.Object));
+            List<ReferenceDescription> machineRefs = new ArrayList<>();
+            machineRefs.add(reference(Identifiers.Organizes, false, Identifiers.ObjectsFolder, NodeClass.Object));
+            machineRefs.add(reference(Identifiers.HasTypeDefinition, true, Identifiers.BaseObjectType, NodeClass.ObjectType));
+            nodes.put(object(machineId, "Machine" + m), machineRefs);
+            for (int i = 0; i < variablesPerMachine; i++) {
+                NodeId variableId = new NodeId(2, "Machine" + m + "/Value" + i);
+                machineRefs.add(reference(Identifiers.HasComponent, true, variableId, NodeClass.Variable));
+                List<ReferenceDescription> variableRefs = new ArrayList<>();
+                variableRefs.add(reference(Identifiers.HasComponent, false, machineId, NodeClass.Object));
+                variableRefs.add(reference(Identifiers.HasTypeDefinition, true, Identifiers.BaseDataVariableType, NodeClass.VariableType));
+                nodes.put(variable(variableId, "Value" + i, new DataValue(new Variant(m * 0.5 + i))), variableRefs);
+            }
+        }
+        return new OpcuaContext(namespaces(), nodes, Collections.emptyList());
+    }
+
+    static UaObjectNode object(NodeId nodeId, String name) {
+        return new UaObjectNode(null, nodeId, NodeClass.Object, new QualifiedName(nodeId.getNamespaceIndex(), name),
+                LocalizedText.english(name), LocalizedText.english(name + " description"), uint(0), uint(0), ubyte(0));
+    }
+
+    static UaVariableNode variable(NodeId nodeId, String name, DataValue value) {
+        return new UaVariableNode(null, nodeId, NodeClass.Variable, new QualifiedName(nodeId.getNamespaceIndex(), name),
+                LocalizedText.english(name), null, uint(0), uint(0), value, Identifiers.Double, -1, null,
+                ubyte(1), ubyte(1), 0.0, false);
+    }
+
+    static ReferenceDescription reference(NodeId referenceType, boolean forward, NodeId target, NodeClass nodeClass) {
+        return new ReferenceDescription(referenceType, forward, target.expanded(), QualifiedName.NULL_VALUE,
+                LocalizedText.NULL_VALUE, nodeClass, ExpandedNodeId.NULL_VALUE);
+    }
+}
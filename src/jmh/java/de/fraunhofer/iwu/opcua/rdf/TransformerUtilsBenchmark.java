@@ -0,0 +1,45 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.rdf4j.model.IRI;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerUtilsBenchmark {
+
+    /**
+     * Number of distinct NodeIds looked up in turn; the larger value exceeds the capacity of the NodeId IRI cache.
+     */
+    @Param({"1000", "1000000"})
+    int distinctNodeIds;
+
+    NamespaceTable namespaces;
+    NodeId[] nodeIds;
+    int next;
+
+    @Setup
+    public void setUp() {
+        namespaces = SyntheticAddressSpace.namespaces();
+        nodeIds = new NodeId[distinctNodeIds];
+        for (int i = 0; i < distinctNodeIds; i++) {
+            nodeIds[i] = i % 2 == 0 ? new NodeId(2, uint(i)) : new NodeId(2, "Machine/" + i);
+        }
+    }
+
+    @Benchmark
+    public IRI getIriFromNodeId() {
+        NodeId nodeId = nodeIds[next];
+        next = next + 1 == nodeIds.length ? 0 : next + 1;
+        return TransformerUtils.getIriFromNodeId(nodeId, namespaces);
+    }
+}
@@ -0,0 +1,115 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.rdf4j.model.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.*;
+
+/**
+ * Measures {@link TransformerUtils#createValueFromDataValue} per builtin type. ExtensionObject and Variant values are
+ * left out since they need a session to be decoded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueMappingBenchmark {
+
+    @Param({"Boolean", "SByte", "Byte", "Int16", "UInt16", "Int32", "UInt32", "Int64", "UInt64", "Float", "Double",
+            "String", "DateTime", "Guid", "ByteString", "XmlElement", "NodeId", "ExpandedNodeId", "StatusCode",
+            "QualifiedName", "LocalizedText", "DiagnosticInfo"})
+    String type;
+
+    /**
+     * 0 maps a scalar, any other value an array of that length.
+     */
+    @Param({"0", "64"})
+    int arrayLength;
+
+    DataTypeMapper mapper;
+    DataValue value;
+    int typeId;
+
+    @Setup
+    public void setUp() {
+        BuiltinDataType builtinType = BuiltinDataType.valueOf(type);
+        typeId = builtinType.getTypeId();
+        mapper = new DataTypeMapper(SyntheticAddressSpace.dataTypeTree(), SyntheticAddressSpace.context(1, 1));
+        Object sample = sample(builtinType);
+        if (arrayLength == 0) {
+            value = new DataValue(new Variant(sample));
+        } else {
+            Object[] array = (Object[]) Array.newInstance(builtinType.getBackingClass(), arrayLength);
+            Arrays.fill(array, sample);
+            value = new DataValue(new Variant(array));
+        }
+    }
+
+    @Benchmark
+    public Optional<List<Value>> createValueFromDataValue() {
+        return TransformerUtils.createValueFromDataValue(value, typeId, mapper);
+    }
+
+    static Object sample(BuiltinDataType type) {
+        switch (type) {
+            case Boolean:
+                return true;
+            case SByte:
+                return (byte) -5;
+            case Byte:
+                return ubyte(200);
+            case Int16:
+                return (short) -300;
+            case UInt16:
+                return ushort(60000);
+            case Int32:
+                return 123456;
+            case UInt32:
+                return uint(4000000000L);
+            case Int64:
+                return -1L << 40;
+            case UInt64:
+                return ulong(Long.MAX_VALUE).add(ulong(1));
+            case Float:
+                return 1.5f;
+            case Double:
+                return Math.PI;
+            case String:
+                return "Machine 1";
+            case DateTime:
+                return DateTime.now();
+            case Guid:
+                return UUID.randomUUID();
+            case ByteString:
+                return ByteString.of(new byte[16]);
+            case XmlElement:
+                return new XmlElement("<Machine>1</Machine>");
+            case NodeId:
+                return new NodeId(2, "Machine1");
+            case ExpandedNodeId:
+                return new NodeId(2, "Machine1").expanded();
+            case StatusCode:
+                return new StatusCode(StatusCodes.Bad_NodeIdUnknown);
+            case QualifiedName:
+                return new QualifiedName(2, "Machine1");
+            case LocalizedText:
+                return LocalizedText.english("Machine 1");
+            case DiagnosticInfo:
+                return new DiagnosticInfo(-1, -1, -1, 0, null, null, null);
+            default:
+                throw new IllegalArgumentException("no sample for " + type);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.rdf4j.model.*;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * How array values are written. Only {@link #ELEMENTS} loses order and duplicates, as its statements are a set; the
+ * other encodings write one value per array that keeps both.
+ */
+public enum ArrayEncoding {
+
+    /**
+     * One statement per element, the default.
+     */
+    ELEMENTS,
+    /**
+     * An rdf:List of the elements, two statements per element. Null elements are written as {@link #NULL}, so the
+     * position of every element is kept.
+     */
+    LIST,
+    /**
+     * An rdf:Seq, the elements linked by {@code rdf:_1}, {@code rdf:_2}, ...; one statement per element. Null elements
+     * are left out, the others keep their index.
+     */
+    SEQUENCE,
+    /**
+     * A single {@code rdf:JSON} literal, nested for multi-dimensional arrays. Arrays of Booleans, numbers and Strings
+     * are written directly from the Java array, arrays of other types as {@link #LIST} if their elements are not all
+     * literals or carry a language tag, which JSON strings cannot hold.
+     */
+    LITERAL;
+
+    public static final IRI JSON = new ValidatingValueFactory().createIRI(RDF.NAMESPACE, "JSON");
+    /**
+     * Marks a null element in an rdf:List, which {@code rdf:nil} cannot as it is the empty list.
+     */
+    public static final IRI NULL = new ValidatingValueFactory().createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/", "Null");
+
+    private static final ValueFactory v = new ValidatingValueFactory();
+    private static final Set<IRI> JSON_NUMBERS = Set.of(XSD.BYTE, XSD.SHORT, XSD.INT, XSD.LONG, XSD.INTEGER,
+            XSD.FLOAT, XSD.DOUBLE, XSD.DECIMAL);
+
+    /**
+     * Encodes the mapped elements of an array, handing the statements of the list or sequence to the sink.
+     */
+    Value encode(List<Value> elements, Consumer<Statement> sink) {
+        switch (this) {
+            case SEQUENCE:
+                BNode sequence = v.createBNode();
+                sink.accept(v.createStatement(sequence, RDF.TYPE, RDF.SEQ));
+                for (int i = 0; i < elements.size(); i++) {
+                    if (elements.get(i) != null) {
+                        sink.accept(v.createStatement(sequence, v.createIRI(RDF.NAMESPACE, "_" + (i + 1)), elements.get(i)));
+                    }
+                }
+                return sequence;
+            case LITERAL:
+                Literal literal = elementsToJson(elements);
+                // an element is an IRI, a structure or a LocalizedText
+                return literal != null ? literal : list(elements, sink);
+            default:
+                return list(elements, sink);
+        }
+    }
+
+    private static Value list(List<Value> elements, Consumer<Statement> sink) {
+        List<BNode> cells = new ArrayList<>(elements.size());
+        elements.forEach(e -> cells.add(v.createBNode()));
+        for (int i = 0; i < cells.size(); i++) {
+            Value element = elements.get(i);
+            sink.accept(v.createStatement(cells.get(i), RDF.FIRST, element != null ? element : NULL));
+            sink.accept(v.createStatement(cells.get(i), RDF.REST, i + 1 < cells.size() ? cells.get(i + 1) : RDF.NIL));
+        }
+        return cells.isEmpty() ? RDF.NIL : cells.get(0);
+    }
+
+    /**
+     * The array as {@code rdf:JSON} literal, or null if it holds values other than Booleans, numbers and Strings.
+     * Primitive arrays are read without boxing every element.
+     */
+    static Literal toJson(Object array) {
+        StringBuilder json = new StringBuilder(Array.getLength(array) * 8);
+        return appendJson(json, array) ? v.createLiteral(json.toString(), JSON) : null;
+    }
+
+    private static boolean appendJson(StringBuilder json, Object array) {
+        json.append('[');
+        if (array instanceof double[]) {
+            double[] values = (double[]) array;
+            for (int i = 0; i < values.length; i++) {
+                appendDouble(json.append(i > 0 ? "," : ""), values[i]);
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int i = 0; i < values.length; i++) {
+                appendFloat(json.append(i > 0 ? "," : ""), values[i]);
+            }
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof boolean[]) {
+            boolean[] values = (boolean[]) array;
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+            }
+        } else if (array instanceof Object[]) {
+            Object[] values = (Object[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                if (!appendJsonElement(json, values[i])) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        json.append(']');
+        return true;
+    }
+
+    private static boolean appendJsonElement(StringBuilder json, Object element) {
+        if (element == null) {
+            json.append("null");
+        } else if (element instanceof Double) {
+            appendDouble(json, (Double) element);
+        } else if (element instanceof Float) {
+            appendFloat(json, (Float) element);
+        } else if (element instanceof Number || element instanceof Boolean) {
+            // UByte, UShort, UInteger and ULong print their unsigned value
+            json.append(element);
+        } else if (element instanceof String) {
+            appendString(json, (String) element);
+        } else if (element.getClass().isArray()) {
+            return appendJson(json, element);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static Literal elementsToJson(List<Value> elements) {
+        StringBuilder json = new StringBuilder(elements.size() * 8).append('[');
+        for (int i = 0; i < elements.size(); i++) {
+            Value element = elements.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            if (element == null) {
+                json.append("null");
+            } else if (!(element instanceof Literal) || ((Literal) element).getLanguage().isPresent()) {
+                return null;
+            } else if (JSON_NUMBERS.contains(((Literal) element).getDatatype())) {
+                appendNumber(json, element.stringValue());
+            } else if (XSD.BOOLEAN.equals(((Literal) element).getDatatype())) {
+                json.append(((Literal) element).booleanValue());
+            } else {
+                appendString(json, element.stringValue());
+            }
+        }
+        return v.createLiteral(json.append(']').toString(), JSON);
+    }
+
+    private static void appendDouble(StringBuilder json, double d) {
+        if (Double.isFinite(d)) {
+            json.append(d);
+        } else {
+            // JSON has no NaN and infinities, written as their xsd:double lexical form instead
+            appendString(json, Double.isNaN(d) ? "NaN" : d > 0 ? "INF" : "-INF");
+        }
+    }
+
+    private static void appendFloat(StringBuilder json, float f) {
+        if (Float.isFinite(f)) {
+            json.append(f);
+        } else {
+            appendDouble(json, f);
+        }
+    }
+
+    private static void appendNumber(StringBuilder json, String lexical) {
+        if (lexical.equals("NaN") || lexical.endsWith("INF")) {
+            appendString(json, lexical);
+        } else {
+            json.append(lexical);
+        }
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -1,24 +1,56 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
 import de.fraunhofer.iwu.opcua.util.OpcuaContext;
-import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.milo.opcua.binaryschema.Struct;
 import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
 import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
+import org.eclipse.milo.opcua.stack.core.serialization.UaEnumeration;
+import org.eclipse.milo.opcua.stack.core.serialization.UaStructure;
+import org.eclipse.milo.opcua.stack.core.serialization.codecs.DataTypeCodec;
+import org.eclipse.milo.opcua.stack.core.serialization.codecs.OpcUaBinaryDataTypeCodec;
 import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
 
-import java.util.Arrays;
-import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+/**
+ * Maps OPC UA values to RDF values. A mapper is meant to be shared by all nodes of a transformation: it keeps the
+ * serialization context of the client, whose DataTypeManager looks up the codecs of the structures.
+ */
 public class DataTypeMapper {
+    private static final Map<Class<?>, Map<String, Method>> GETTERS = new ConcurrentHashMap<>();
+
     private final DataTypeTree tree;
     private final OpcuaContext ctx;
     private final ValueFactory v;
+    private volatile SerializationContext serializationContext;
+    private volatile Map<NodeId, NodeId> dataTypesByEncoding;
+    private ArrayEncoding arrayEncoding = ArrayEncoding.ELEMENTS;
 
     public DataTypeMapper(DataTypeTree dataTypeTree, OpcuaContext opcuaContext) {
         tree = dataTypeTree;
@@ -26,47 +58,94 @@ public class DataTypeMapper {
         ctx = opcuaContext;
     }
 
+    /**
+     * Encoding of array values and of array fields of structures, {@link ArrayEncoding#ELEMENTS} by default.
+     */
+    public void setArrayEncoding(ArrayEncoding arrayEncoding) {
+        this.arrayEncoding = Objects.requireNonNull(arrayEncoding);
+    }
+
+    public ArrayEncoding getArrayEncoding() {
+        return arrayEncoding;
+    }
+
+    // The numeric mappers read Milo's boxed and unsigned types directly and only fall back to parsing the string
+    // representation for values of an unexpected type. Unsigned types are widened to the next larger signed type.
+
     public Literal getLiteralFromBoolean(Object o) {
+        if (o instanceof Boolean) {
+            return TransformerUtils.getLiteralFromBoolean((Boolean) o);
+        }
         return v.createLiteral(Boolean.parseBoolean(o.toString()));
     }
 
     public Literal getLiteralFromSByte(Object o) {
+        if (o instanceof Byte) {
+            return v.createLiteral((byte) o);
+        }
         return v.createLiteral(Byte.parseByte(o.toString()));
     }
 
     public Literal getLiteralFromByte(Object o) {
+        if (o instanceof UByte) {
+            return v.createLiteral(((UByte) o).shortValue());
+        }
         return v.createLiteral(Short.parseShort(o.toString()));
     }
 
     public Literal getLiteralFromInt16(Object o) {
+        if (o instanceof Short) {
+            return v.createLiteral((short) o);
+        }
         return v.createLiteral(Short.parseShort(o.toString()));
     }
 
     public Literal getLiteralFromUInt16(Object o) {
+        if (o instanceof UShort) {
+            return TransformerUtils.getLiteralFromInt(((UShort) o).intValue());
+        }
         return v.createLiteral(Integer.parseInt(o.toString()));
     }
 
     public Literal getLiteralFromInt32(Object o) {
+        if (o instanceof Integer) {
+            return TransformerUtils.getLiteralFromInt((int) o);
+        }
         return v.createLiteral(Integer.parseInt(o.toString()));
     }
 
     public Literal getLiteralFromUInt32(Object o) {
+        if (o instanceof UInteger) {
+            return v.createLiteral(((UInteger) o).longValue());
+        }
         return v.createLiteral(Long.parseLong(o.toString()));
     }
 
     public Literal getLiteralFromInt64(Object o) {
+        if (o instanceof Long) {
+            return v.createLiteral((long) o);
+        }
         return v.createLiteral(Long.parseLong(o.toString()));
     }
 
     public Literal getLiteralFromUInt64(Object o) {
-        return v.createLiteral(Long.parseLong(o.toString()));
+        if (o instanceof ULong) {
+            return v.createLiteral(((ULong) o).toBigInteger());
+        }
+        return v.createLiteral(new BigInteger(o.toString()));
     }
 
     public Literal getLiteralFromFloat(Object o) {
+        if (o instanceof Float) {
+            return v.createLiteral((float) o);
+        }
         return v.createLiteral(Float.parseFloat(o.toString()));
     }
 
     public Literal getLiteralFromDouble(Object o) {
+        if (o instanceof Double) {
+            return v.createLiteral((double) o);
+        }
         return v.createLiteral(Double.parseDouble(o.toString()));
     }
 
@@ -83,7 +162,8 @@ public class DataTypeMapper {
     }
 
     public Literal getLiteralFromByteString(Object o) {
-        return v.createLiteral(Arrays.toString(((ByteString) o).bytes()));
+        byte[] bytes = ((ByteString) o).bytes();
+        return bytes == null ? null : v.createLiteral(Base64.getEncoder().encodeToString(bytes), XSD.BASE64BINARY);
     }
 
     public Literal getLiteralFromXmlElement(Object o) {
@@ -117,9 +197,185 @@ public class DataTypeMapper {
         }
     }
 
+    /**
+     * The decoded structure as a single literal of its string form. Use
+     * {@link #getValueFromExtensionObject(Object, Consumer)} to keep its fields.
+     */
     public Literal getLiteralFromExtensionObject(Object o) {
-        String decode = ((ExtensionObject) o).decode(ctx.getClient().getDynamicSerializationContext()).toString();
-        return v.createLiteral(decode);
+        return (Literal) getValueFromExtensionObject(o, null);
+    }
+
+    /**
+     * Maps a structure to a blank node, typed with its DataType, with one statement per field handed to the sink.
+     * Fields that are structures are expanded the same way, array fields get one statement per element. The predicate
+     * of a field is {@code <namespace of the DataType><DataType name>/<field name>}. Without a sink the structure is
+     * mapped to a single literal.
+     */
+    public Value getValueFromExtensionObject(Object o, Consumer<Statement> sink) {
+        ExtensionObject extensionObject = (ExtensionObject) o;
+        if (extensionObject.isNull()) {
+            return null;
+        }
+        if (ctx.getClient() == null && extensionObject.getBody() instanceof XmlElement) {
+            // read from a NodeSet, there is no server to look up the encoding of the structure
+            return v.createLiteral(String.valueOf(((XmlElement) extensionObject.getBody()).getFragment()));
+        }
+        Object decoded = decode(extensionObject);
+        if (sink == null) {
+            return v.createLiteral(String.valueOf(decoded));
+        }
+        NodeId encodingId = extensionObject.getEncodingId();
+        return getValueFromStructure(decoded, getDataTypesByEncoding().get(encodingId),
+                ctx.getNamespaces().getUri(encodingId.getNamespaceIndex()), sink);
+    }
+
+    /**
+     * Maps a decoded structure, either one of Milo's {@link UaStructure}s or a {@link Struct} of a dictionary read
+     * from the server. The namespace is used for the predicates if the DataType is unknown.
+     */
+    Value getValueFromStructure(Object structure, NodeId dataType, String namespace, Consumer<Statement> sink) {
+        if (structure instanceof UaStructure && dataType == null) {
+            dataType = ((UaStructure) structure).getTypeId().toNodeId(ctx.getNamespaces()).orElse(null);
+        }
+        String typeName = structure instanceof Struct ? ((Struct) structure).getName() : structure.getClass().getSimpleName();
+        if (dataType != null) {
+            namespace = ctx.getNamespaces().getUri(dataType.getNamespaceIndex());
+            DataTypeTree.DataType known = tree == null ? null : tree.getDataType(dataType);
+            if (known != null) {
+                typeName = known.getBrowseName().getName();
+            }
+        }
+        String fieldNamespace = (namespace.endsWith("/") ? namespace : namespace + "/")
+                + URLEncoder.encode(typeName, StandardCharsets.UTF_8) + "/";
+
+        BNode node = v.createBNode();
+        if (dataType != null) {
+            sink.accept(v.createStatement(node, RDF.TYPE, TransformerUtils.getIriFromNodeId(dataType, ctx.getNamespaces())));
+        }
+        String parentNamespace = namespace;
+        getFields(structure).forEach((name, value) -> {
+            IRI predicate = v.createIRI(fieldNamespace, URLEncoder.encode(name, StandardCharsets.UTF_8));
+            if (value != null && value.getClass().isArray() && arrayEncoding != ArrayEncoding.ELEMENTS) {
+                List<Value> elements = new ArrayList<>(Array.getLength(value));
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    elements.add(getValueFromField(Array.get(value, i), parentNamespace, sink));
+                }
+                sink.accept(v.createStatement(node, predicate, arrayEncoding.encode(elements, sink)));
+            } else if (value != null && value.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    addField(node, predicate, Array.get(value, i), parentNamespace, sink);
+                }
+            } else {
+                addField(node, predicate, value, parentNamespace, sink);
+            }
+        });
+        return node;
+    }
+
+    private void addField(BNode node, IRI predicate, Object value, String namespace, Consumer<Statement> sink) {
+        Value mapped = getValueFromField(value, namespace, sink);
+        if (mapped != null) {
+            sink.accept(v.createStatement(node, predicate, mapped));
+        }
+    }
+
+    private Value getValueFromField(Object value, String namespace, Consumer<Statement> sink) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof UaStructure || value instanceof Struct) {
+            return getValueFromStructure(value, null, namespace, sink);
+        } else if (value instanceof UaEnumeration) {
+            return TransformerUtils.getLiteralFromInt(((UaEnumeration) value).getValue());
+        } else if (value instanceof Variant) {
+            return getValueFromField(((Variant) value).getValue(), namespace, sink);
+        } else if (value instanceof DataValue) {
+            return getValueFromField(((DataValue) value).getValue().getValue(), namespace, sink);
+        }
+        return TransformerUtils.createValueFromObject(value, this, sink);
+    }
+
+    private Map<String, Object> getFields(Object structure) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        if (structure instanceof Struct) {
+            ((Struct) structure).getMembers().values().forEach(m -> fields.put(m.getName(), m.getValue()));
+            return fields;
+        }
+        for (Map.Entry<String, Method> getter : GETTERS.computeIfAbsent(structure.getClass(), DataTypeMapper::findGetters).entrySet()) {
+            try {
+                fields.put(getter.getKey(), getter.getValue().invoke(structure));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("unable to read field " + getter.getKey() + " of " + structure.getClass().getName(), e);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Getters of the fields of a generated structure class, superclass fields first, by field name as in the
+     * specification.
+     */
+    private static Map<String, Method> findGetters(Class<?> type) {
+        Map<String, Method> getters = new LinkedHashMap<>();
+        if (type.getSuperclass() != null && type.getSuperclass() != Object.class) {
+            getters.putAll(findGetters(type.getSuperclass()));
+        }
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            String name = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            try {
+                getters.put(name, type.getMethod("get" + name));
+            } catch (NoSuchMethodException e) {
+                // not part of the encoding
+            }
+        }
+        return getters;
+    }
+
+    private Object decode(ExtensionObject extensionObject) {
+        SerializationContext context = getSerializationContext();
+        if (extensionObject.getBodyType() == ExtensionObject.BodyType.ByteString) {
+            DataTypeCodec<?, ?, ?> codec = context.getDataTypeManager().getCodec(extensionObject.getEncodingId());
+            if (codec instanceof OpcUaBinaryDataTypeCodec) {
+                ByteBuf buffer = Unpooled.wrappedBuffer(((ByteString) extensionObject.getBody()).bytesOrEmpty());
+                try {
+                    return ((OpcUaBinaryDataTypeCodec<?>) codec).decode(context, new OpcUaBinaryStreamDecoder(context).setBuffer(buffer));
+                } finally {
+                    buffer.release();
+                }
+            }
+        }
+        return extensionObject.decode(context);
+    }
+
+    private SerializationContext getSerializationContext() {
+        SerializationContext context = serializationContext;
+        if (context == null) {
+            context = ctx.getClient().getDynamicSerializationContext();
+            serializationContext = context;
+        }
+        return context;
+    }
+
+    private Map<NodeId, NodeId> getDataTypesByEncoding() {
+        Map<NodeId, NodeId> dataTypes = dataTypesByEncoding;
+        if (dataTypes == null) {
+            dataTypes = new HashMap<>();
+            if (tree != null) {
+                Map<NodeId, NodeId> byEncoding = dataTypes;
+                tree.getTree().traverse(dataType -> {
+                    if (dataType.getBinaryEncodingId() != null) {
+                        byEncoding.put(dataType.getBinaryEncodingId(), dataType.getNodeId());
+                    }
+                    if (dataType.getXmlEncodingId() != null) {
+                        byEncoding.put(dataType.getXmlEncodingId(), dataType.getNodeId());
+                    }
+                });
+            }
+            dataTypesByEncoding = dataTypes;
+        }
+        return dataTypes;
     }
 
     public Literal getLiteralFromDiagnosticCode(Object o) {
@@ -127,18 +383,65 @@ public class DataTypeMapper {
         return v.createLiteral(((DiagnosticInfo) o).getLocalizedText());
     }
 
+    /**
+     * Maps an array value to a single value in the configured encoding, the statements of lists and sequences handed
+     * to the sink. Arrays of Booleans, numbers and Strings are written as {@link ArrayEncoding#LITERAL} without
+     * mapping every element.
+     */
+    public Value getValueFromArray(DataValue value, int backingDataType, Consumer<Statement> sink) {
+        Object array = value.getValue().getValue();
+        if (arrayEncoding == ArrayEncoding.LITERAL) {
+            Literal literal = ArrayEncoding.toJson(array);
+            if (literal != null) {
+                return literal;
+            }
+        }
+        List<Value> elements = TransformerUtils.createValueFromDataValue(value, backingDataType, this, sink).orElse(List.of());
+        return arrayEncoding.encode(elements, sink);
+    }
+
     public Value getLiteralFromVariant(DataValue node) {
-        Value ret = null;
-        try {
-            DataTypeTree dataTypeTree = (DataTypeTree) ctx.getClient().getSession().get().getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY);
-            DataTypeMapper dtm = new DataTypeMapper(dataTypeTree, ctx);
-            int builtinTypeId = BuiltinDataType.getBuiltinTypeId(dataTypeTree.getBackingClass(node.getValue().getDataType().get().toNodeId(ctx.getNamespaces()).get()));
-            ret = TransformerUtils.createValueFromDataValue(node, builtinTypeId, this).get().get(0);
+        return getValueFromVariant(node, null);
+    }
 
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+    /**
+     * Maps the value of a Variant, e.g. an element of a BaseDataType array, by the DataType it carries. An array held
+     * by the Variant is one element of the outer value and is written as one value in the array encoding, as
+     * {@link ArrayEncoding#LIST} for {@link ArrayEncoding#ELEMENTS}.
+     */
+    public Value getValueFromVariant(DataValue node, Consumer<Statement> sink) {
+        Object value = node.getValue().getValue();
+        if (value == null) {
+            return null;
+        }
+        int builtinTypeId = getBuiltinTypeId(node.getValue());
+        if (value.getClass().isArray() && sink == null) {
+            // without a sink the array is a single literal, like a structure
+            Literal literal = ArrayEncoding.toJson(value);
+            return literal != null ? literal : v.createLiteral(Arrays.deepToString((Object[]) value));
+        } else if (value.getClass().isArray()) {
+            return getValueFromArray(node, builtinTypeId, sink);
         }
-        return ret;
+        return TransformerUtils.createValueFromDataValue(node, builtinTypeId, this, sink).map(values -> values.get(0)).orElse(null);
+    }
 
+    /**
+     * The builtin type of the value of a Variant, taken from its DataType or, without a DataTypeTree or for a DataType
+     * unknown to it, from the class of the value. Values of classes that are no builtin type are mapped as Strings.
+     */
+    private int getBuiltinTypeId(Variant variant) {
+        Optional<NodeId> dataType = variant.getDataType().flatMap(t -> t.toNodeId(ctx.getNamespaces()));
+        if (tree != null && dataType.isPresent()) {
+            BuiltinDataType builtin = BuiltinDataType.fromBackingClass(tree.getBackingClass(dataType.get()));
+            if (builtin != null && builtin != BuiltinDataType.Variant && TransformerUtils.hasValueMapping(builtin.getTypeId())) {
+                return builtin.getTypeId();
+            }
+        }
+        Class<?> type = variant.getValue().getClass();
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        BuiltinDataType builtin = BuiltinDataType.fromBackingClass(type);
+        return builtin != null && TransformerUtils.hasValueMapping(builtin.getTypeId()) ? builtin.getTypeId() : BuiltinDataType.String.getTypeId();
     }
 }
@@ -0,0 +1,70 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
+import de.fraunhofer.iwu.opcua.util.TransformerMetrics;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes to a temporary file next to the target, which is moved into place by {@link #endRDF()} and removed if
+ * it is closed before, e.g. because the transformation failed.
+ */
+class FileSink extends AbstractRDFHandler implements AutoCloseable {
+    private final Path file;
+    private final Path tmp;
+    private final OutputStream out;
+    private final RDFWriter writer;
+
+    FileSink(Path file, OutputConfig outputConfig, TransformerMetrics metrics) {
+        try {
+            this.file = file;
+            this.tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            OutputStream stream = Files.newOutputStream(tmp);
+            this.out = outputConfig.wrap(metrics != null ? metrics.countBytes(outputConfig, stream) : stream);
+            this.writer = Rio.createWriter(outputConfig.getFormat(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void startRDF() {
+        writer.startRDF();
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        writer.handleNamespace(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(Statement st) {
+        writer.handleStatement(st);
+    }
+
+    @Override
+    public void endRDF() {
+        writer.endRDF();
+        try {
+            out.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        Files.deleteIfExists(tmp);
+    }
+}
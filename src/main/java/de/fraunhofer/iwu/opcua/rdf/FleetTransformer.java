@@ -0,0 +1,406 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.CrawlConfig;
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Transforms the address spaces of many servers concurrently. At most {@link #setMaxConcurrentServers(int)} servers
+ * are crawled and transformed at the same time, each within {@link #setTimeout(Duration)}; a server that fails or
+ * times out does not affect the others. All clients run on Milo's shared event loop, executor and timer, and the
+ * statements of all servers are generated on one executor, so the number of threads does not grow with the fleet.
+ * The statements of each server go to a sink of its own, e.g. a file or a named graph; a {@link Result} per server
+ * reports its outcome and throughput.
+ */
+public class FleetTransformer {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final List<Target> targets;
+    private int maxConcurrentServers = 8;
+    private Duration timeout = Duration.ofMinutes(10);
+    private CrawlConfig crawlConfig = CrawlConfig.defaults();
+    private Executor executor = RdfTransformer.DEFAULT_EXECUTOR;
+    private List<Result> results = List.of();
+
+    public FleetTransformer(List<Target> targets) {
+        this.targets = List.copyOf(targets);
+    }
+
+    /**
+     * Number of servers that are crawled and transformed at the same time, the global concurrency budget.
+     */
+    public void setMaxConcurrentServers(int maxConcurrentServers) {
+        if (maxConcurrentServers < 1) {
+            throw new IllegalArgumentException("maxConcurrentServers must be positive, was " + maxConcurrentServers);
+        }
+        this.maxConcurrentServers = maxConcurrentServers;
+    }
+
+    /**
+     * Time a single server may take from connecting until its last statement. A server exceeding it is interrupted
+     * and reported as {@link Result.Status#TIMED_OUT}; its sink is closed without being finished, so it leaves no file
+     * or graph.
+     */
+    public void setTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive, was " + timeout);
+        }
+        this.timeout = timeout;
+    }
+
+    public void setCrawlConfig(CrawlConfig crawlConfig) {
+        this.crawlConfig = Objects.requireNonNull(crawlConfig);
+    }
+
+    /**
+     * Executor the statements of all servers are generated on, see {@link RdfTransformer#setExecutor(Executor)}.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Results of the last run in the order of the targets.
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Writes each server to a file of its own in the given directory, named after its position in the target list
+     * and its endpoint. A file is only created once its server has been transformed completely.
+     */
+    public List<Result> transformToFiles(Path directory, RDFFormat format) throws IOException {
+        return transformToFiles(OutputConfig.builder().setDirectory(directory).setFormat(format).build());
+    }
+
+    /**
+     * Writes each server to a file of its own in the configured directory, format and compression.
+     */
+    public List<Result> transformToFiles(OutputConfig outputConfig) throws IOException {
+        Files.createDirectories(outputConfig.getDirectory());
+        return transform((index, target, ctx) -> new FileSink(outputConfig.getDirectory().resolve(String.format("%03d-%s%s",
+                index, target.getEndpointUrl().replaceAll("[^A-Za-z0-9.-]+", "_"), outputConfig.getFileExtension())),
+                outputConfig, ctx.getMetrics()));
+    }
+
+    /**
+     * Adds the statements of each server to the dataset in the named graph of its target. The statements of a server
+     * are added at once after it has been transformed completely, so a failed server leaves no partial graph.
+     */
+    public List<Result> transformToDataset(Model dataset) {
+        ValueFactory v = new ValidatingValueFactory();
+        return transform(target -> new AbstractRDFHandler() {
+            private final Model graph = new LinkedHashModel();
+
+            @Override
+            public void handleNamespace(String prefix, String uri) {
+                graph.setNamespace(prefix, uri);
+            }
+
+            @Override
+            public void handleStatement(Statement st) {
+                graph.add(v.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), target.getGraph()));
+            }
+
+            @Override
+            public void endRDF() {
+                synchronized (dataset) {
+                    graph.getNamespaces().forEach(dataset::setNamespace);
+                    dataset.addAll(graph);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes each server into the named graph of its target, replacing what the graph held before, see
+     * {@link RepositorySink}.
+     */
+    public List<Result> transformToRepository(Repository repository) {
+        return transform(target -> new RepositorySink(repository, target.getGraph()));
+    }
+
+    /**
+     * Transforms all targets, handing the statements of each server to the handler created for it. Handlers that are
+     * {@link AutoCloseable} are closed when their server is done, whether it succeeded or not.
+     */
+    public List<Result> transform(Function<Target, RDFHandler> sinks) {
+        return transform((index, target, ctx) -> sinks.apply(target));
+    }
+
+    private List<Result> transform(SinkFactory sinks) {
+        ExecutorService servers = Executors.newFixedThreadPool(maxConcurrentServers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "fleet-transformer-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fleet-transformer-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        try {
+            List<Future<Result>> futures = new ArrayList<>(targets.size());
+            for (int i = 0; i < targets.size(); i++) {
+                int index = i;
+                futures.add(servers.submit(() -> transform(index, targets.get(index), sinks, timer)));
+            }
+            List<Result> done = new ArrayList<>(targets.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    done.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    done.add(new Result(targets.get(i), Result.Status.FAILED, String.valueOf(e.getCause()), 0, 0, 0));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(f -> f.cancel(true));
+                    throw new IllegalStateException("interrupted while transforming the fleet", e);
+                }
+            }
+            results = Collections.unmodifiableList(done);
+        } finally {
+            servers.shutdownNow();
+            timer.shutdownNow();
+        }
+        long succeeded = results.stream().filter(r -> r.getStatus() == Result.Status.SUCCEEDED).count();
+        logger.info("transformed " + succeeded + " of " + targets.size() + " servers in "
+                + Duration.ofNanos(System.nanoTime() - start).toMillis() + " ms");
+        return results;
+    }
+
+    private Result transform(int index, Target target, SinkFactory sinks, ScheduledExecutorService timer) {
+        long start = System.nanoTime();
+        Thread worker = Thread.currentThread();
+        // set once: TIMED_OUT by the deadline, or SUCCEEDED by the last statement, after which the server is no longer
+        // interrupted so that its sink can finish the file or graph
+        AtomicReference<Result.Status> outcome = new AtomicReference<>();
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            if (outcome.compareAndSet(null, Result.Status.TIMED_OUT)) {
+                worker.interrupt();
+            }
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        OpcuaContext ctx = null;
+        RDFHandler sink = null;
+        try {
+            ctx = new OpcuaContext(target.getEndpointUrl(), crawlConfig);
+            if (outcome.get() == Result.Status.TIMED_OUT) {
+                return result(target, Result.Status.TIMED_OUT, "timed out after " + timeout, ctx, 0, start);
+            }
+            if (ctx.getClient() == null || ctx.getNodeRefMap() == null) {
+                return result(target, Result.Status.FAILED, "unable to connect to or crawl " + target.getEndpointUrl(), ctx, 0, start);
+            }
+            DataTypeTree dataTypeTree = (DataTypeTree) ctx.getClient().getSession().get()
+                    .getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY);
+            RdfTransformer transformer = new RdfTransformer(ctx, target.getAdaptionPoint(), dataTypeTree);
+            transformer.setExecutor(executor);
+            sink = sinks.create(index, target, ctx);
+            CountingHandler counter = new CountingHandler(sink, outcome);
+            transformer.transform(counter);
+            return result(target, Result.Status.SUCCEEDED, null, ctx, counter.count, start);
+        } catch (Exception e) {
+            boolean timedOut = outcome.get() == Result.Status.TIMED_OUT;
+            Result.Status status = timedOut ? Result.Status.TIMED_OUT : Result.Status.FAILED;
+            String error = timedOut ? "timed out after " + timeout : String.valueOf(e);
+            logger.error(target.getEndpointUrl() + ": " + error);
+            return result(target, status, error, ctx, 0, start);
+        } finally {
+            deadline.cancel(false);
+            Thread.interrupted();
+            if (ctx != null && ctx.getClient() != null) {
+                ctx.getClient().disconnect();
+            }
+            if (sink instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) sink).close();
+                } catch (Exception e) {
+                    logger.error("unable to close the sink of " + target.getEndpointUrl() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static Result result(Target target, Result.Status status, String error, OpcuaContext ctx, long statements, long start) {
+        int nodes = ctx != null && ctx.getNodeRefMap() != null ? ctx.getNodeRefMap().size() : 0;
+        return new Result(target, status, error, nodes, statements, System.nanoTime() - start);
+    }
+
+    /**
+     * Creates the sink of a server once it has been crawled, given its position in the target list.
+     */
+    private interface SinkFactory {
+        RDFHandler create(int index, Target target, OpcuaContext ctx);
+    }
+
+    /**
+     * Counts the statements and only lets the sink finish if the server has not timed out yet.
+     */
+    private static class CountingHandler extends AbstractRDFHandler {
+        private final RDFHandler delegate;
+        private final AtomicReference<Result.Status> outcome;
+        private long count;
+
+        CountingHandler(RDFHandler delegate, AtomicReference<Result.Status> outcome) {
+            this.delegate = delegate;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public void startRDF() {
+            delegate.startRDF();
+        }
+
+        @Override
+        public void endRDF() {
+            if (!outcome.compareAndSet(null, Result.Status.SUCCEEDED)) {
+                throw new IllegalStateException("timed out before the last statement");
+            }
+            delegate.endRDF();
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) {
+            delegate.handleNamespace(prefix, uri);
+        }
+
+        @Override
+        public void handleStatement(Statement st) {
+            count++;
+            delegate.handleStatement(st);
+        }
+    }
+
+    /**
+     * A server of the fleet: its endpoint, the adaption point its address space is attached to and the named graph
+     * its statements go to, by default the adaption point.
+     */
+    public static class Target {
+        private final String endpointUrl;
+        private final IRI adaptionPoint;
+        private final IRI graph;
+
+        public Target(String endpointUrl, IRI adaptionPoint) {
+            this(endpointUrl, adaptionPoint, adaptionPoint);
+        }
+
+        public Target(String endpointUrl, IRI adaptionPoint, IRI graph) {
+            this.endpointUrl = Objects.requireNonNull(endpointUrl);
+            this.adaptionPoint = Objects.requireNonNull(adaptionPoint);
+            this.graph = Objects.requireNonNull(graph);
+        }
+
+        public String getEndpointUrl() {
+            return endpointUrl;
+        }
+
+        public IRI getAdaptionPoint() {
+            return adaptionPoint;
+        }
+
+        public IRI getGraph() {
+            return graph;
+        }
+
+        @Override
+        public String toString() {
+            return endpointUrl + " -> " + graph;
+        }
+    }
+
+    /**
+     * Outcome of one server: status, error message if it did not succeed, number of nodes crawled and statements
+     * written, and the time from connecting until the last statement.
+     */
+    public static class Result {
+
+        public enum Status {
+            SUCCEEDED,
+            FAILED,
+            TIMED_OUT
+        }
+
+        private final Target target;
+        private final Status status;
+        private final String error;
+        private final int nodes;
+        private final long statements;
+        private final long nanos;
+
+        Result(Target target, Status status, String error, int nodes, long statements, long nanos) {
+            this.target = target;
+            this.status = status;
+            this.error = error;
+            this.nodes = nodes;
+            this.statements = statements;
+            this.nanos = nanos;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public Duration getDuration() {
+            return Duration.ofNanos(nanos);
+        }
+
+        public double getStatementsPerSecond() {
+            return nanos > 0 ? statements * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + target.getEndpointUrl() + ", " + status + (error != null ? " (" + error + ")" : "")
+                    + ", nodes=" + nodes + ", statements=" + statements + ", " + getDuration().toMillis() + " ms, "
+                    + String.format("%.0f", getStatementsPerSecond()) + " statements/s}";
+        }
+    }
+}
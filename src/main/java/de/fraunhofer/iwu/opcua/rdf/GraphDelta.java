@@ -0,0 +1,49 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Statements added to and removed from a graph by one incremental update.
+ */
+public class GraphDelta {
+
+    private final Model added = new LinkedHashModel();
+    private final Model removed = new LinkedHashModel();
+
+    /**
+     * Records the difference between the statements of a node before and after an update.
+     */
+    void diff(Collection<Statement> before, Collection<Statement> after) {
+        Set<Statement> previous = before instanceof Set ? (Set<Statement>) before : Set.copyOf(before);
+        Set<Statement> current = after instanceof Set ? (Set<Statement>) after : Set.copyOf(after);
+        after.stream().filter(st -> !previous.contains(st)).forEach(added::add);
+        before.stream().filter(st -> !current.contains(st)).forEach(removed::add);
+    }
+
+    public Model getAdded() {
+        return added;
+    }
+
+    public Model getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    public void applyTo(Model model) {
+        model.removeAll(removed);
+        model.addAll(added);
+    }
+
+    @Override
+    public String toString() {
+        return "GraphDelta{added=" + added.size() + ", removed=" + removed.size() + "}";
+    }
+}
@@ -0,0 +1,331 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.AddressSpaceCrawler;
+import de.fraunhofer.iwu.opcua.util.BatchBrowser;
+import de.fraunhofer.iwu.opcua.util.NodeAttributes;
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.OperationLimits;
+import de.fraunhofer.iwu.opcua.util.ReferenceTypeTree;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.FilterOperator;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.*;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Keeps the graph of a server up to date without crawling the whole address space again. The session of the
+ * transformer stays open and GeneralModelChangeEvents and SemanticChangeEvents of the Server object are subscribed.
+ * For every affected node its subtree and its parents are browsed again and the difference to the previous statements
+ * of these nodes is reported as a {@link GraphDelta}.
+ */
+public class IncrementalRdfTransformer implements AutoCloseable {
+
+    private static final QualifiedName EVENT_TYPE = new QualifiedName(0, "EventType");
+    private static final QualifiedName CHANGES = new QualifiedName(0, "Changes");
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final RdfTransformer transformer;
+    private final OpcuaContext ctx;
+    private final OpcUaClient client;
+    private final Map<NodeId, TrackedNode> nodes = new HashMap<>();
+    private final Map<NodeId, Set<NodeId>> parents = new HashMap<>();
+    private final Set<NodeId> pendingChanges = new LinkedHashSet<>();
+    private final ExecutorService updates = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "incremental-rdf-transformer");
+        t.setDaemon(true);
+        return t;
+    });
+    private ReferenceTypeTree referenceTypes;
+    private OperationLimits limits;
+    private Consumer<GraphDelta> listener = delta -> {
+    };
+    private UaSubscription subscription;
+    private double publishingInterval = 1000.0;
+
+    public IncrementalRdfTransformer(RdfTransformer transformer) {
+        this.transformer = transformer;
+        this.ctx = transformer.ctx;
+        this.client = ctx.getClient();
+    }
+
+    public void setPublishingInterval(double publishingInterval) {
+        this.publishingInterval = publishingInterval;
+    }
+
+    /**
+     * Transforms the address space crawled by the transformer and subscribes to model changes. Deltas against the
+     * returned graph are passed to the listener, on a single thread and in the order they are computed.
+     */
+    public synchronized Model start(Consumer<GraphDelta> listener) throws ExecutionException, InterruptedException {
+        this.listener = listener;
+        referenceTypes = ctx.getReferenceTypes() != null ? ctx.getReferenceTypes() : ReferenceTypeTree.read(client);
+        ctx.getNodeRefMap().forEach((node, references) -> track(node, references, new GraphDelta()));
+        Model model = getModel();
+        transformer.transformEndpointsAndAttach(model::add, transformer.entryPoint);
+        subscribe();
+        return model;
+    }
+
+    /**
+     * The statements of all tracked nodes, without the endpoint description.
+     */
+    public synchronized Model getModel() {
+        Model model = new LinkedHashModel();
+        nodes.values().forEach(n -> model.addAll(n.statements));
+        return model;
+    }
+
+    /**
+     * Browses the subtrees and parents of the given nodes again and returns the resulting changes, which are passed
+     * to the listener as well.
+     */
+    public synchronized GraphDelta refresh(Collection<NodeId> affected) throws ExecutionException, InterruptedException {
+        GraphDelta delta = new GraphDelta();
+        Map<NodeId, NodeClass> existing = readNodeClasses(affected);
+
+        Map<NodeId, NodeClass> parentClasses = new HashMap<>();
+        affected.forEach(a -> parents.getOrDefault(a, Set.of()).forEach(p -> {
+            if (nodes.containsKey(p)) {
+                parentClasses.put(p, nodes.get(p).node.getNodeClass());
+            }
+        }));
+        List<NodeId> existingIds = new ArrayList<>(existing.keySet());
+        List<BrowseDescription> inverse = new ArrayList<>();
+        existingIds.forEach(id -> inverse.add(BatchBrowser.inverse(id, Identifiers.HierarchicalReferences, true, 0)));
+        List<List<ReferenceDescription>> inverseResults = browse(inverse);
+        inverseResults.forEach(refs -> refs.forEach(r -> r.getNodeId().toNodeId(ctx.getNamespaces()).ifPresent(p -> parentClasses.put(p, r.getNodeClass()))));
+
+        Map<UaNode, List<ReferenceDescription>> crawled = new HashMap<>();
+        if (!existing.isEmpty()) {
+            crawled.putAll(new AddressSpaceCrawler(client, ctx.getCrawlConfig(), referenceTypes).crawl(existing, true));
+        }
+        existing.keySet().forEach(parentClasses::remove);
+        if (!parentClasses.isEmpty()) {
+            crawled.putAll(new AddressSpaceCrawler(client, ctx.getCrawlConfig(), referenceTypes).crawl(parentClasses, false));
+        }
+
+        Set<NodeId> seen = new HashSet<>();
+        crawled.forEach((node, references) -> {
+            seen.add(node.getNodeId());
+            track(node, references, delta);
+        });
+
+        Set<NodeId> candidates = new HashSet<>();
+        affected.forEach(a -> collectDescendants(a, candidates));
+        candidates.removeAll(seen);
+        Set<NodeId> stillExisting = readNodeClasses(candidates).keySet();
+        candidates.stream().filter(c -> !stillExisting.contains(c)).forEach(c -> untrack(c, delta));
+
+        if (!delta.isEmpty()) {
+            listener.accept(delta);
+        }
+        logger.info("refreshed " + affected.size() + " affected nodes: " + crawled.size() + " nodes browsed, " + delta);
+        return delta;
+    }
+
+    /**
+     * Stops the updates and deletes the subscription. The session belongs to the transformer and stays connected.
+     */
+    @Override
+    public void close() {
+        updates.shutdownNow();
+        if (subscription != null) {
+            client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId());
+        }
+    }
+
+    private void subscribe() throws ExecutionException, InterruptedException {
+        subscription = client.getSubscriptionManager().createSubscription(publishingInterval).get();
+        EventFilter filter = new EventFilter(new SimpleAttributeOperand[]{
+                new SimpleAttributeOperand(Identifiers.BaseEventType, new QualifiedName[]{EVENT_TYPE}, AttributeId.Value.uid(), null),
+                new SimpleAttributeOperand(Identifiers.GeneralModelChangeEventType, new QualifiedName[]{CHANGES}, AttributeId.Value.uid(), null),
+                new SimpleAttributeOperand(Identifiers.SemanticChangeEventType, new QualifiedName[]{CHANGES}, AttributeId.Value.uid(), null)
+        }, new ContentFilter(new ContentFilterElement[]{new ContentFilterElement(FilterOperator.OfType, new ExtensionObject[]{
+                ExtensionObject.encode(client.getStaticSerializationContext(), new LiteralOperand(new Variant(Identifiers.BaseModelChangeEventType)))
+        })}));
+        MonitoringParameters parameters = new MonitoringParameters(uint(1), 0.0,
+                ExtensionObject.encode(client.getStaticSerializationContext(), filter), uint(1000), true);
+        MonitoredItemCreateRequest request = new MonitoredItemCreateRequest(
+                new ReadValueId(Identifiers.Server, AttributeId.EventNotifier.uid(), null, QualifiedName.NULL_VALUE),
+                MonitoringMode.Reporting, parameters);
+        subscription.createMonitoredItems(TimestampsToReturn.Both, List.of(request),
+                (item, idx) -> item.setEventConsumer(this::onEvent)).get().forEach(item -> {
+            if (item.getStatusCode().isBad()) {
+                logger.error("unable to subscribe to model changes: " + item.getStatusCode());
+            }
+        });
+    }
+
+    private void onEvent(Variant[] fields) {
+        Set<NodeId> affected = new LinkedHashSet<>();
+        boolean hasChanges = false;
+        for (int i = 1; i < fields.length; i++) {
+            Object changes = fields[i].getValue();
+            if (changes instanceof ExtensionObject[]) {
+                hasChanges = true;
+                for (ExtensionObject change : (ExtensionObject[]) changes) {
+                    Object decoded = change.decode(client.getStaticSerializationContext());
+                    if (decoded instanceof ModelChangeStructureDataType) {
+                        affected.add(((ModelChangeStructureDataType) decoded).getAffected());
+                    } else if (decoded instanceof SemanticChangeStructureDataType) {
+                        affected.add(((SemanticChangeStructureDataType) decoded).getAffected());
+                    }
+                }
+            }
+        }
+        if (!hasChanges && Identifiers.BaseModelChangeEventType.equals(fields[0].getValue())) {
+            // a BaseModelChangeEvent without changes means that any part of the address space may have changed
+            affected.add(Identifiers.RootFolder);
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        synchronized (pendingChanges) {
+            pendingChanges.addAll(affected);
+        }
+        updates.execute(() -> {
+            Set<NodeId> batch;
+            synchronized (pendingChanges) {
+                batch = new LinkedHashSet<>(pendingChanges);
+                pendingChanges.clear();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                refresh(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("unable to refresh " + batch.size() + " changed nodes: " + e.getMessage());
+            }
+        });
+    }
+
+    private Map<NodeId, NodeClass> readNodeClasses(Collection<NodeId> nodeIds) throws ExecutionException, InterruptedException {
+        int maxNodesPerRead = OperationLimits.effective(ctx.getCrawlConfig().getMaxNodesPerRead(), operationLimits().getMaxNodesPerRead());
+        return NodeAttributes.readNodeClasses(client, nodeIds, maxNodesPerRead).get();
+    }
+
+    /**
+     * Browses the descriptions in BrowseRequests of at most MaxNodesPerBrowse nodes, one after another.
+     */
+    private List<List<ReferenceDescription>> browse(List<BrowseDescription> descriptions) throws ExecutionException, InterruptedException {
+        int nodesPerBrowse = Math.max(1, OperationLimits.effective(ctx.getCrawlConfig().getNodesPerBrowse(), operationLimits().getMaxNodesPerBrowse()));
+        BatchBrowser browser = new BatchBrowser(client);
+        List<List<ReferenceDescription>> results = new ArrayList<>(descriptions.size());
+        for (int from = 0; from < descriptions.size(); from += nodesPerBrowse) {
+            results.addAll(browser.browse(descriptions.subList(from, Math.min(from + nodesPerBrowse, descriptions.size()))).get());
+        }
+        return results;
+    }
+
+    private OperationLimits operationLimits() throws ExecutionException, InterruptedException {
+        if (limits == null) {
+            limits = OperationLimits.read(client).exceptionally(ex -> {
+                logger.info("unable to read OperationLimits, using configured batch sizes: " + ex.getMessage());
+                return new OperationLimits(0, 0);
+            }).get();
+        }
+        return limits;
+    }
+
+    private void track(UaNode node, List<ReferenceDescription> references, GraphDelta delta) {
+        NodeId nodeId = node.getNodeId();
+        Set<Statement> statements = new LinkedHashSet<>();
+        transformer.transformNode(node, references, statements::add);
+        TrackedNode previous = nodes.put(nodeId, new TrackedNode(node, references, statements));
+        if (previous != null) {
+            delta.diff(previous.statements, statements);
+            children(previous.references).forEach(c -> removeParent(c, nodeId));
+        } else {
+            delta.diff(Set.of(), statements);
+        }
+        children(references).forEach(c -> parents.computeIfAbsent(c, k -> new HashSet<>()).add(nodeId));
+    }
+
+    /**
+     * Removes the statements about the node, i.e. with the node or one of its blank nodes as subject. Statements about
+     * a referenced node, from inverse references, stay as long as that node is tracked and are handed over to it, so
+     * they are removed by its next refresh if the server no longer reports the reference.
+     */
+    private void untrack(NodeId nodeId, GraphDelta delta) {
+        TrackedNode previous = nodes.remove(nodeId);
+        if (previous != null) {
+            IRI subject = TransformerUtils.getIriFromNodeId(nodeId, ctx.getNamespaces());
+            Map<IRI, TrackedNode> targets = new HashMap<>();
+            previous.references.forEach(r -> r.getNodeId().toNodeId(ctx.getNamespaces()).filter(nodes::containsKey)
+                    .ifPresent(t -> targets.put(TransformerUtils.getIriFromNodeId(t, ctx.getNamespaces()), nodes.get(t))));
+            Set<Statement> removed = new LinkedHashSet<>();
+            for (Statement st : previous.statements) {
+                TrackedNode target = targets.get(st.getSubject());
+                if (st.getSubject().equals(subject) || st.getSubject() instanceof BNode || target == null) {
+                    removed.add(st);
+                } else {
+                    target.statements.add(st);
+                }
+            }
+            delta.diff(removed, Set.of());
+            children(previous.references).forEach(c -> removeParent(c, nodeId));
+        }
+    }
+
+    private void removeParent(NodeId child, NodeId parent) {
+        Set<NodeId> p = parents.get(child);
+        if (p != null && p.remove(parent) && p.isEmpty()) {
+            parents.remove(child);
+        }
+    }
+
+    private void collectDescendants(NodeId root, Set<NodeId> descendants) {
+        Deque<NodeId> queue = new ArrayDeque<>(List.of(root));
+        while (!queue.isEmpty()) {
+            NodeId current = queue.poll();
+            TrackedNode tracked = nodes.get(current);
+            if (descendants.add(current) && tracked != null) {
+                queue.addAll(children(tracked.references));
+            }
+        }
+    }
+
+    private List<NodeId> children(List<ReferenceDescription> references) {
+        List<NodeId> children = new ArrayList<>();
+        references.stream()
+                .filter(r -> r.getIsForward() && referenceTypes.isHierarchical(r.getReferenceTypeId()))
+                .forEach(r -> r.getNodeId().toNodeId(ctx.getNamespaces()).ifPresent(children::add));
+        return children;
+    }
+
+    private static class TrackedNode {
+        final UaNode node;
+        final List<ReferenceDescription> references;
+        final Set<Statement> statements;
+
+        TrackedNode(UaNode node, List<ReferenceDescription> references, Set<Statement> statements) {
+            this.node = node;
+            this.references = references;
+            this.statements = statements;
+        }
+    }
+}
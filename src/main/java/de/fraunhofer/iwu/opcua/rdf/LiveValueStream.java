@@ -0,0 +1,346 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.OperationLimits;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.rdf4j.model.*;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Streams the values of selected Variables into RDF. Every Variable is monitored on one subscription of the
+ * transformer's session; each notification becomes a value sample of the Variable:
+ * <pre>
+ * &lt;variable&gt; ua:hasValueSample _:sample .
+ * _:sample Attributes/Value "42" ; ua:sourceTimestamp "..."^^xsd:dateTime ; ua:serverTimestamp "..."^^xsd:dateTime .
+ * </pre>
+ * A Bad or Uncertain StatusCode is added as {@code ua:statusCode}. The DataType of every Variable is resolved once
+ * when it is subscribed, so notifications are converted without reading any attributes. Statements are collected in
+ * micro-batches that are handed to the sink on a single thread, in the order the notifications arrived, once a batch
+ * is full or the maximum batch delay has passed.
+ */
+public class LiveValueStream implements AutoCloseable {
+
+    private static final String UA_RDF = "http://iwu.fraunhofer.de/c32/ua/rdf/";
+    private static final ValueFactory vf = new ValidatingValueFactory();
+    public static final IRI HAS_VALUE_SAMPLE = vf.createIRI(UA_RDF, "hasValueSample");
+    public static final IRI SOURCE_TIMESTAMP = vf.createIRI(UA_RDF, "sourceTimestamp");
+    public static final IRI SERVER_TIMESTAMP = vf.createIRI(UA_RDF, "serverTimestamp");
+    public static final IRI STATUS_CODE = vf.createIRI(UA_RDF, "statusCode");
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final RdfTransformer transformer;
+    private final OpcuaContext ctx;
+    private final OpcUaClient client;
+    private final ValueFactory v = vf;
+    private final DataTypeMapper mapper;
+    private final IRI valueIri = TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value);
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder unmapped = new LongAdder();
+    private final Object batchLock = new Object();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "live-value-stream");
+        t.setDaemon(true);
+        return t;
+    });
+    private Consumer<List<Statement>> sink = batch -> {
+    };
+    private List<Statement> batch;
+    private UaSubscription subscription;
+    private double publishingInterval = 100.0;
+    private double samplingInterval = 100.0;
+    private int queueSize = 10;
+    private int batchSize = 10_000;
+    private long maxBatchDelay = 250;
+
+    public LiveValueStream(RdfTransformer transformer) {
+        this.transformer = transformer;
+        this.ctx = transformer.ctx;
+        this.client = ctx.getClient();
+        this.mapper = transformer.dataTypeMapper;
+    }
+
+    public void setPublishingInterval(double publishingInterval) {
+        this.publishingInterval = publishingInterval;
+    }
+
+    /**
+     * Requested sampling interval of the monitored items in milliseconds; 0 samples as fast as the server can, -1
+     * uses the publishing interval.
+     */
+    public void setSamplingInterval(double samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Number of values the server keeps per monitored item between two publish responses. The oldest value is
+     * discarded once the queue is full.
+     */
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be positive, was " + queueSize);
+        }
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Number of statements after which a batch is handed to the sink.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Milliseconds after which a batch that is not full yet is handed to the sink.
+     */
+    public void setMaxBatchDelay(long maxBatchDelay) {
+        if (maxBatchDelay < 1) {
+            throw new IllegalArgumentException("maxBatchDelay must be positive, was " + maxBatchDelay);
+        }
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    /**
+     * The Variables of the crawled address space that match the selection.
+     */
+    public List<NodeId> selectVariables(Predicate<UaVariableNode> selection) {
+        List<NodeId> variables = new ArrayList<>();
+        ctx.getNodeRefMap().keySet().stream()
+                .filter(node -> node instanceof UaVariableNode && selection.test((UaVariableNode) node))
+                .map(node -> node.getNodeId())
+                .sorted(TransformerUtils.NODE_ID_ORDER)
+                .forEach(variables::add);
+        return variables;
+    }
+
+    /**
+     * Subscribes to the values of the given Variables and passes the resulting statements to the sink. Returns the
+     * Variables that are monitored; Variables the server rejects or whose DataType has no mapping are logged and
+     * left out.
+     */
+    public synchronized List<NodeId> start(Collection<NodeId> variables, Consumer<List<Statement>> sink) throws ExecutionException, InterruptedException {
+        this.sink = sink;
+        this.batch = new ArrayList<>(batchSize);
+        List<LiveVariable> resolved = resolve(variables);
+
+        subscription = client.getSubscriptionManager().createSubscription(publishingInterval).get();
+        OperationLimits limits = OperationLimits.read(client).exceptionally(ex -> new OperationLimits(0, 0)).get();
+        int itemsPerCall = OperationLimits.effective(1000, limits.getMaxMonitoredItemsPerCall());
+        List<NodeId> monitored = new ArrayList<>();
+        for (int from = 0; from < resolved.size(); from += itemsPerCall) {
+            List<LiveVariable> chunk = resolved.subList(from, Math.min(from + itemsPerCall, resolved.size()));
+            List<MonitoredItemCreateRequest> requests = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                MonitoringParameters parameters = new MonitoringParameters(uint(from + i + 1), samplingInterval, null, uint(queueSize), true);
+                requests.add(new MonitoredItemCreateRequest(
+                        new ReadValueId(chunk.get(i).nodeId, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE),
+                        MonitoringMode.Reporting, parameters));
+            }
+            List<UaMonitoredItem> items = subscription.createMonitoredItems(TimestampsToReturn.Both, requests,
+                    (item, idx) -> {
+                        LiveVariable variable = chunk.get(idx);
+                        item.setValueConsumer(value -> onValue(variable, value));
+                    }).get();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getStatusCode().isGood()) {
+                    monitored.add(chunk.get(i).nodeId);
+                } else {
+                    logger.error("unable to monitor " + chunk.get(i).nodeId + ": " + items.get(i).getStatusCode());
+                }
+            }
+        }
+        flusher.scheduleWithFixedDelay(this::flush, maxBatchDelay, maxBatchDelay, TimeUnit.MILLISECONDS);
+        logger.info("monitoring " + monitored.size() + " of " + variables.size() + " variables");
+        return monitored;
+    }
+
+    /**
+     * Hands the statements collected so far to the sink, after all batches that are already pending.
+     */
+    public void flush() {
+        synchronized (batchLock) {
+            if (batch != null && !batch.isEmpty()) {
+                handOff();
+            }
+        }
+    }
+
+    /**
+     * Number of value notifications received so far.
+     */
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    /**
+     * Deletes the subscription and hands the last batch to the sink. The session belongs to the transformer and stays
+     * open.
+     */
+    @Override
+    public void close() {
+        if (subscription != null) {
+            try {
+                client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("unable to delete subscription: " + e.getMessage());
+            }
+        }
+        flush();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (unmapped.sum() > 0) {
+            logger.error(unmapped.sum() + " values could not be mapped to RDF");
+        }
+    }
+
+    private List<LiveVariable> resolve(Collection<NodeId> variables) throws ExecutionException, InterruptedException {
+        Map<NodeId, NodeId> dataTypes = new HashMap<>();
+        ctx.getNodeRefMap().keySet().forEach(node -> {
+            if (node instanceof UaVariableNode) {
+                dataTypes.put(node.getNodeId(), ((UaVariableNode) node).getDataType());
+            }
+        });
+        List<NodeId> unknown = new ArrayList<>();
+        variables.stream().filter(id -> !dataTypes.containsKey(id)).forEach(unknown::add);
+        if (!unknown.isEmpty()) {
+            List<ReadValueId> readValueIds = new ArrayList<>(unknown.size());
+            unknown.forEach(id -> readValueIds.add(new ReadValueId(id, AttributeId.DataType.uid(), null, QualifiedName.NULL_VALUE)));
+            DataValue[] results = client.read(0.0, TimestampsToReturn.Neither, readValueIds).get().getResults();
+            for (int i = 0; i < unknown.size() && results != null && i < results.length; i++) {
+                if (results[i].getStatusCode().isGood() && results[i].getValue().getValue() instanceof NodeId) {
+                    dataTypes.put(unknown.get(i), (NodeId) results[i].getValue().getValue());
+                }
+            }
+        }
+
+        List<LiveVariable> resolved = new ArrayList<>(variables.size());
+        for (NodeId id : variables) {
+            NodeId dataType = dataTypes.get(id);
+            if (dataType == null) {
+                logger.error("unable to read the DataType of " + id + ", not monitoring it");
+                continue;
+            }
+            int builtinTypeId = transformer.getBuiltinTypeId(dataType);
+            if (!TransformerUtils.hasValueMapping(builtinTypeId)) {
+                logger.error("no mapping for the DataType " + dataType + " of " + id + ", not monitoring it");
+                continue;
+            }
+            resolved.add(new LiveVariable(id, TransformerUtils.getIriFromNodeId(id, ctx.getNamespaces()), builtinTypeId));
+        }
+        return resolved;
+    }
+
+    private void onValue(LiveVariable variable, DataValue value) {
+        notifications.increment();
+        List<Value> values;
+        List<Statement> fields = new ArrayList<>();
+        try {
+            Object raw = value.getValue().getValue();
+            if (raw != null && raw.getClass().isArray() && mapper.getArrayEncoding() != ArrayEncoding.ELEMENTS) {
+                values = List.of(mapper.getValueFromArray(value, variable.builtinTypeId, fields::add));
+            } else {
+                values = TransformerUtils.createValueFromDataValue(value, variable.builtinTypeId, mapper, fields::add).orElse(List.of());
+            }
+        } catch (RuntimeException e) {
+            unmapped.increment();
+            values = List.of();
+            fields.clear();
+        }
+        BNode sample = v.createBNode();
+        Statement[] statements = new Statement[values.size() + 4];
+        int n = 0;
+        statements[n++] = v.createStatement(variable.subject, HAS_VALUE_SAMPLE, sample);
+        for (Value element : values) {
+            if (element != null) {
+                statements[n++] = v.createStatement(sample, valueIri, element);
+            }
+        }
+        if (value.getSourceTime() != null && !value.getSourceTime().isNull()) {
+            statements[n++] = v.createStatement(sample, SOURCE_TIMESTAMP, toLiteral(value.getSourceTime()));
+        }
+        if (value.getServerTime() != null && !value.getServerTime().isNull()) {
+            statements[n++] = v.createStatement(sample, SERVER_TIMESTAMP, toLiteral(value.getServerTime()));
+        }
+        if (value.getStatusCode() != null && !value.getStatusCode().isGood()) {
+            statements[n++] = v.createStatement(sample, STATUS_CODE, v.createLiteral(value.getStatusCode().getValue()));
+        }
+        synchronized (batchLock) {
+            for (int i = 0; i < n; i++) {
+                batch.add(statements[i]);
+            }
+            batch.addAll(fields);
+            if (batch.size() >= batchSize) {
+                handOff();
+            }
+        }
+    }
+
+    private void handOff() {
+        List<Statement> full = batch;
+        batch = new ArrayList<>(batchSize);
+        if (flusher.isShutdown()) {
+            logger.error("dropping " + full.size() + " statements received after close");
+            return;
+        }
+        flusher.execute(() -> {
+            try {
+                sink.accept(full);
+            } catch (Exception e) {
+                logger.error("sink failed on a batch of " + full.size() + " statements: " + e.getMessage());
+            }
+        });
+    }
+
+    private Literal toLiteral(DateTime dateTime) {
+        // the lexical form of an Instant is a valid xsd:dateTime and avoids a DatatypeFactory lookup per value
+        return v.createLiteral(dateTime.getJavaInstant().toString(), XSD.DATETIME);
+    }
+
+    private static class LiveVariable {
+        final NodeId nodeId;
+        final IRI subject;
+        final int builtinTypeId;
+
+        LiveVariable(NodeId nodeId, IRI subject, int builtinTypeId) {
+            this.nodeId = nodeId;
+            this.subject = subject;
+            this.builtinTypeId = builtinTypeId;
+        }
+    }
+}
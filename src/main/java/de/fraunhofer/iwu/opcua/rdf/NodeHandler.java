@@ -0,0 +1,26 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.rdf4j.model.Statement;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Emits the statements of a single node of one NodeClass. Registered per NodeClass at the {@link RdfTransformer},
+ * which hands every node of the address space to exactly one handler. Handlers are called concurrently for different
+ * nodes and must not keep per-node state; the sink passed in is confined to the calling thread.
+ */
+@FunctionalInterface
+public interface NodeHandler {
+
+    void handle(UaNode node, List<ReferenceDescription> references, Consumer<Statement> sink);
+
+    default NodeHandler andThen(NodeHandler after) {
+        return (node, references, sink) -> {
+            handle(node, references, sink);
+            after.handle(node, references, sink);
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.rdf4j.model.IRI;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded NodeId to IRI cache. Entries are spread over segments that each evict their least recently used entry once
+ * full, so that lookups from parallel statement generation rarely contend on the same lock.
+ */
+public class NodeIdIriCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public NodeIdIriCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public IRI computeIfAbsent(NodeId nodeId, Function<NodeId, IRI> mapping) {
+        Segment segment = segments[Math.floorMod(nodeId.hashCode() ^ (nodeId.hashCode() >>> 16), SEGMENTS)];
+        IRI iri;
+        synchronized (segment) {
+            iri = segment.get(nodeId);
+        }
+        if (iri != null) {
+            hits.increment();
+            return iri;
+        }
+        misses.increment();
+        iri = mapping.apply(nodeId);
+        synchronized (segment) {
+            segment.put(nodeId, iri);
+        }
+        return iri;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NodeIdIriCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    private class Segment extends LinkedHashMap<NodeId, IRI> {
+
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<NodeId, IRI> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
+import de.fraunhofer.iwu.opcua.util.TransformerMetrics;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.util.ModelBuilder;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.VOID;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Splits the statements by the OPC UA namespace of their subject, so that consumers can load only the namespaces they
+ * need. Each partition is written by a thread of its own; statements are handed over in batches through a bounded
+ * queue, so the writers run in parallel with each other and with the transformation. Subjects that are no node of
+ * the address space, e.g. the adaption point, go to the partition {@value #OTHER}. Statements about blank nodes go to
+ * the partition of the statement before them, so a value and its fields end up in the same file.
+ * <p>
+ * Written to files, each partition becomes a file in the configured directory, and a VoID manifest
+ * ({@value #MANIFEST}) lists the namespace, number of statements and file of every partition.
+ */
+public class PartitionedWriter extends AbstractRDFHandler implements AutoCloseable {
+
+    public static final String OTHER = "other";
+    public static final String MANIFEST = "manifest.ttl";
+    private static final int BATCH_SIZE = 1024;
+    private static final List<Statement> END = new ArrayList<>();
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Map<String, Integer> namespaceIndices = new HashMap<>();
+    private final Function<Partition, RDFHandler> sinks;
+    private final OutputConfig outputConfig;
+    private final Map<String, String> prefixes = new LinkedHashMap<>();
+    private final Map<String, Partition> byNamespace = new HashMap<>();
+    private final List<Partition> partitions = new ArrayList<>();
+    private String lastNamespace;
+    private Partition last;
+    private boolean ended;
+
+    /**
+     * Writes each partition to a file in the directory of the output config.
+     */
+    public PartitionedWriter(NamespaceTable namespaces, OutputConfig outputConfig) {
+        this(namespaces, outputConfig, (TransformerMetrics) null);
+    }
+
+    /**
+     * Writes each partition to a file in the directory of the output config, counting the bytes written in the
+     * metrics.
+     */
+    public PartitionedWriter(NamespaceTable namespaces, OutputConfig outputConfig, TransformerMetrics metrics) {
+        this(namespaces, outputConfig, p -> new FileSink(p.getFile(), outputConfig, metrics));
+    }
+
+    /**
+     * Hands each partition to the handler created for it, e.g. a {@link RepositorySink} per named graph. The handlers
+     * are called from the writer threads; handlers that are {@link AutoCloseable} are closed at the end.
+     */
+    public PartitionedWriter(NamespaceTable namespaces, Function<Partition, RDFHandler> sinks) {
+        this(namespaces, null, Objects.requireNonNull(sinks));
+    }
+
+    private PartitionedWriter(NamespaceTable namespaces, OutputConfig outputConfig, Function<Partition, RDFHandler> sinks) {
+        String[] uris = namespaces.toArray();
+        for (int i = 0; i < uris.length; i++) {
+            if (uris[i] != null) {
+                namespaceIndices.put(uris[i].endsWith("/") ? uris[i] : uris[i] + "/", i);
+            }
+        }
+        this.outputConfig = outputConfig;
+        this.sinks = sinks;
+    }
+
+    /**
+     * Partitions in the order of their first statement.
+     */
+    public List<Partition> getPartitions() {
+        return List.copyOf(partitions);
+    }
+
+    @Override
+    public void startRDF() {
+        if (outputConfig != null) {
+            try {
+                Files.createDirectories(outputConfig.getDirectory());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        prefixes.put(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(Statement st) {
+        Partition partition = partitionOf(st.getSubject());
+        partition.pending.add(st);
+        partition.statements++;
+        if (partition.pending.size() >= BATCH_SIZE) {
+            partition.flush();
+        }
+    }
+
+    @Override
+    public void endRDF() {
+        for (Partition partition : partitions) {
+            partition.flush();
+            partition.put(END);
+        }
+        for (Partition partition : partitions) {
+            partition.join();
+        }
+        ended = true;
+        for (Partition partition : partitions) {
+            if (partition.error != null) {
+                throw new RDFHandlerException("unable to write partition " + partition.name, partition.error);
+            }
+        }
+        if (outputConfig != null) {
+            writeManifest();
+        }
+        logger.info("wrote " + partitions.size() + " partitions");
+    }
+
+    /**
+     * Stops the writer threads. If called before {@link #endRDF()}, files of unfinished partitions are removed.
+     */
+    @Override
+    public void close() {
+        for (Partition partition : partitions) {
+            if (!ended) {
+                partition.thread.interrupt();
+                partition.join();
+            }
+            if (partition.sink instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) partition.sink).close();
+                } catch (Exception e) {
+                    logger.error("unable to close partition " + partition.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Partition partitionOf(Resource subject) {
+        if (subject instanceof BNode && last != null) {
+            // blank nodes of structured and array values follow the statements of their node
+            return last;
+        }
+        String key = subject instanceof IRI ? ((IRI) subject).getNamespace() : OTHER;
+        if (key.equals(lastNamespace)) {
+            return last;
+        }
+        Partition partition = byNamespace.get(key);
+        if (partition == null) {
+            Integer index = namespaceIndices.get(key);
+            if (index != null) {
+                partition = start(new Partition(key, index, key));
+            } else {
+                partition = byNamespace.get(OTHER);
+                if (partition == null) {
+                    partition = start(new Partition(OTHER, -1, null));
+                }
+            }
+            byNamespace.put(key, partition);
+        }
+        lastNamespace = key;
+        last = partition;
+        return partition;
+    }
+
+    private Partition start(Partition partition) {
+        partitions.add(partition);
+        byNamespace.put(partition.key, partition);
+        if (outputConfig != null) {
+            partition.file = outputConfig.getDirectory().resolve(partition.name + outputConfig.getFileExtension());
+        }
+        partition.sink = sinks.apply(partition);
+        Map<String, String> namespaces = new LinkedHashMap<>(prefixes);
+        partition.thread = new Thread(() -> partition.write(namespaces), "partition-writer-" + partition.name);
+        partition.thread.setDaemon(true);
+        partition.thread.start();
+        return partition;
+    }
+
+    private void writeManifest() {
+        ValueFactory v = new ValidatingValueFactory();
+        Path manifest = outputConfig.getDirectory().resolve(MANIFEST);
+        IRI dataset = v.createIRI(manifest.toAbsolutePath().toUri().toString());
+        ModelBuilder builder = new ModelBuilder().setNamespace("void", VOID.NAMESPACE).subject(dataset).add(RDF.TYPE, VOID.DATASET);
+        for (Partition partition : partitions) {
+            BNode subset = v.createBNode();
+            builder.add(dataset, VOID.SUBSET, subset)
+                    .add(subset, RDF.TYPE, VOID.DATASET)
+                    .add(subset, VOID.TRIPLES, partition.statements)
+                    .add(subset, VOID.DATA_DUMP, v.createIRI(partition.file.toAbsolutePath().toUri().toString()));
+            if (partition.namespaceUri != null) {
+                builder.add(subset, VOID.URI_SPACE, partition.namespaceUri);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(manifest)) {
+            Rio.write(builder.build(), out, RDFFormat.TURTLE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Statements whose subjects share one namespace.
+     */
+    public static class Partition {
+        private final String key;
+        private final String name;
+        private final int namespaceIndex;
+        private final String namespaceUri;
+        private final BlockingQueue<List<Statement>> queue = new ArrayBlockingQueue<>(8);
+        private List<Statement> pending = new ArrayList<>(BATCH_SIZE);
+        private long statements;
+        private Path file;
+        private RDFHandler sink;
+        private Thread thread;
+        private volatile Throwable error;
+
+        Partition(String key, int namespaceIndex, String namespaceUri) {
+            this.key = key;
+            this.namespaceIndex = namespaceIndex;
+            this.namespaceUri = namespaceUri;
+            this.name = namespaceUri == null ? OTHER
+                    : "ns" + namespaceIndex + "-" + namespaceUri.replaceAll("^[a-z]+:/*", "").replaceAll("[^A-Za-z0-9.-]+", "_").replaceAll("_$", "");
+        }
+
+        /**
+         * Name of the partition, also the name of its file: namespace index and URI, or {@value #OTHER}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Index of the namespace in the server's NamespaceArray, -1 for {@value #OTHER}.
+         */
+        public int getNamespaceIndex() {
+            return namespaceIndex;
+        }
+
+        /**
+         * Namespace the IRIs of the subjects start with, null for {@value #OTHER}.
+         */
+        public String getNamespaceUri() {
+            return namespaceUri;
+        }
+
+        public long getStatements() {
+            return statements;
+        }
+
+        /**
+         * File the partition is written to, null if it is handed to a handler.
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        private void flush() {
+            if (!pending.isEmpty()) {
+                put(pending);
+                pending = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        private void put(List<Statement> batch) {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (!thread.isAlive()) {
+                        throw new RDFHandlerException("writer of partition " + name + " stopped", error);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("interrupted while writing partition " + name, e);
+            }
+        }
+
+        private void write(Map<String, String> namespaces) {
+            try {
+                sink.startRDF();
+                namespaces.forEach(sink::handleNamespace);
+                for (List<Statement> batch = queue.take(); batch != END; batch = queue.take()) {
+                    batch.forEach(sink::handleStatement);
+                }
+                sink.endRDF();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        private void join() {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("interrupted while waiting for partition " + name, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Partition{" + name + ", statements=" + statements + "}";
+        }
+    }
+}
@@ -1,46 +1,92 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
+import de.fraunhofer.iwu.opcua.util.CrawlConfig;
 import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
+import de.fraunhofer.iwu.opcua.util.StreamingTransformer;
 import de.fraunhofer.iwu.opcua.util.Transformer;
+import de.fraunhofer.iwu.opcua.util.TransformerMetrics;
+import io.micrometer.core.instrument.Timer;
 import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
 import org.eclipse.milo.opcua.sdk.client.nodes.*;
 import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
 import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
 import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UNumber;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.eclipse.rdf4j.model.*;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
 import org.eclipse.rdf4j.model.util.ModelBuilder;
-import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-public class RdfTransformer implements Transformer<Model> {
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Transforms the address space of a context to RDF. The address space is crawled once and can be transformed any
+ * number of times, also by an {@link IncrementalRdfTransformer} or {@link LiveValueStream} on the same session; a
+ * client the transformer connected itself stays connected until {@link #close()}.
+ */
+public class RdfTransformer implements Transformer<Model>, StreamingTransformer<RDFHandler>, AutoCloseable {
+
+    /**
+     * Shared by all transformers without an executor of their own. Its daemon threads are started on demand, one per
+     * processor, so blocking node handlers do not stall the common fork-join pool.
+     */
+    static final Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "rdf-transformer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     OpcuaContext ctx;
-    IRI currentSubject;
     IRI entryPoint;
     Logger logger;
     ValueFactory v;
     DataTypeTree dataTypeTree;
-
+    DataTypeMapper dataTypeMapper;
+    final Map<NodeClass, NodeHandler> handlers = new EnumMap<>(NodeClass.class);
+    Executor executor = DEFAULT_EXECUTOR;
+    int chunkSize = 256;
+    OutputConfig outputConfig = OutputConfig.defaults();
+    StandardGraph standardGraph;
+    TransformerMetrics metrics;
+    private final boolean ownsContext;
 
     public RdfTransformer(String endpointUrl, IRI entry) {
-        ctx = new OpcuaContext(endpointUrl);
+        this(endpointUrl, entry, CrawlConfig.defaults());
+    }
+
+    public RdfTransformer(String endpointUrl, IRI entry, CrawlConfig crawlConfig) {
+        ctx = new OpcuaContext(endpointUrl, crawlConfig);
+        ownsContext = true;
         logger = LoggerFactory.getLogger(RdfTransformer.class);
         v = new ValidatingValueFactory();
         try {
@@ -50,305 +96,581 @@ public class RdfTransformer implements Transformer<Model> {
         } catch (ExecutionException e) {
             e.printStackTrace();
         }
+        dataTypeMapper = new DataTypeMapper(dataTypeTree, ctx);
+        metrics = ctx.getMetrics();
+        entryPoint = entry;
+        registerDefaultHandlers();
+    }
+
+    /**
+     * Transforms an address space that is already held in memory. Values of DataTypes that are not builtin are
+     * resolved with the given DataTypeTree. The client of the context, if any, is left connected.
+     */
+    public RdfTransformer(OpcuaContext ctx, IRI entry, DataTypeTree dataTypeTree) {
+        this.ctx = ctx;
+        ownsContext = false;
+        logger = LoggerFactory.getLogger(RdfTransformer.class);
+        v = new ValidatingValueFactory();
+        this.dataTypeTree = dataTypeTree;
+        dataTypeMapper = new DataTypeMapper(dataTypeTree, ctx);
+        metrics = ctx.getMetrics();
         entryPoint = entry;
+        registerDefaultHandlers();
+    }
+
+    private void registerDefaultHandlers() {
+        handlers.put(NodeClass.Object, (node, references, sink) -> transformObjectNode((UaObjectNode) node, references, sink));
+        handlers.put(NodeClass.ObjectType, (node, references, sink) -> transformObjectTypeNode((UaObjectTypeNode) node, references, sink));
+        handlers.put(NodeClass.Variable, (node, references, sink) -> transformVariableNode((UaVariableNode) node, references, sink));
+        handlers.put(NodeClass.VariableType, (node, references, sink) -> transformVariableTypeNode((UaVariableTypeNode) node, references, sink));
+        handlers.put(NodeClass.Method, (node, references, sink) -> transformMethodNode((UaMethodNode) node, references, sink));
+        handlers.put(NodeClass.ReferenceType, (node, references, sink) -> transformReferenceTypeNode((UaReferenceTypeNode) node, references, sink));
+        handlers.put(NodeClass.View, (node, references, sink) -> transformViewNode((UaViewNode) node, references, sink));
+        handlers.put(NodeClass.DataType, (node, references, sink) -> transformDataTypeNode((UaDataTypeNode) node, references, sink));
+    }
+
+    /**
+     * Replaces the handler for the given NodeClass. Use {@link #getHandler(NodeClass)} together with
+     * {@link NodeHandler#andThen(NodeHandler)} to emit additional statements next to the default ones.
+     */
+    public void registerHandler(NodeClass nodeClass, NodeHandler handler) {
+        handlers.put(nodeClass, handler);
+    }
 
+    public NodeHandler getHandler(NodeClass nodeClass) {
+        return handlers.get(nodeClass);
     }
 
+    /**
+     * Executor the statements of the nodes are generated on, defaults to a pool shared by all transformers. Pass
+     * {@code Runnable::run} to generate them on the calling thread.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Number of nodes handed to the executor as one task.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive, was " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Format, compression and directory of the files written by {@link #save(Model)} and {@link #transform(Path)}.
+     */
+    public void setOutputConfig(OutputConfig outputConfig) {
+        this.outputConfig = Objects.requireNonNull(outputConfig);
+    }
+
+    /**
+     * Encoding of array values, {@link ArrayEncoding#ELEMENTS} by default. Use {@link ArrayEncoding#LITERAL} for
+     * large numeric arrays like waveforms.
+     */
+    public void setArrayEncoding(ArrayEncoding arrayEncoding) {
+        dataTypeMapper.setArrayEncoding(arrayEncoding);
+    }
+
+    /**
+     * Statements of the standard nodes to emit in addition to the crawled ones, for crawls whose scope has
+     * {@link StandardGraph#getKnownNodes()} as known nodes.
+     */
+    public void setStandardGraph(StandardGraph standardGraph) {
+        this.standardGraph = standardGraph;
+    }
+
+    /**
+     * Meters the statements, cache lookups, bytes written and phases are recorded in, those of the context by default.
+     */
+    public void setMetrics(TransformerMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    public TransformerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Disconnects the client if the transformer connected it, a context passed in is left alone.
+     */
     @Override
-    public void save(Model model) {
-        String now = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME);
-        String lastNamespace = ctx.getNamespaces().getUri(ctx.getNamespaces().toArray().length - 1);
-        OutputStream output = OutputStream.nullOutputStream();
-        File file = new File("target/output/transformed/" + lastNamespace + now + ".ttl");
-        if (!file.exists()) {
-            file.getParentFile().mkdirs();
+    public void close() {
+        if (ownsContext && ctx.getClient() != null) {
+            ctx.getClient().disconnect();
         }
-        try (OutputStream os = new FileOutputStream(file, false)) {
-            Rio.write(model, os, RDFFormat.TURTLE);
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * Writes the model to a file in the configured output directory, named after the last namespace and the time.
+     */
+    @Override
+    public void save(Model model) {
+        save(model, getDefaultFile());
+    }
+
+    public void save(Model model, Path file) {
+        long start = System.nanoTime();
+        Timer.Sample write = metrics.start();
+        try (OutputStream os = outputConfig.open(file, metrics)) {
+            Rio.write(model, os, outputConfig.getFormat());
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("unable to write " + file + ": " + e.getMessage());
+            return;
         }
+        metrics.phaseDone(TransformerMetrics.Phase.WRITE, write);
+        logWritten(file, model.size(), start);
     }
 
-    @Override
-    public Model transform() {
-        ModelBuilder builder = new ModelBuilder();
-        NamespaceTable namespaces = ctx.getNamespaces();
-        Arrays.stream(namespaces.toArray()).forEach(ns -> {
-            builder.setNamespace(TransformerUtils.getLastIdentifierSegment(ns), ns);
-        });
+    /**
+     * Streams the statements of the address space into the given file in the configured format and compression,
+     * without collecting them in a model first.
+     */
+    public void transform(Path file) throws IOException {
+        long start = System.nanoTime();
+        long[] count = new long[1];
+        try (OutputStream os = outputConfig.open(file, metrics)) {
+            RDFWriter writer = Rio.createWriter(outputConfig.getFormat(), os);
+            transform(new AbstractRDFHandler() {
+                @Override
+                public void startRDF() {
+                    writer.startRDF();
+                }
 
-        Map<UaObjectNode, List<ReferenceDescription>> objects = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.Object)).collect(Collectors.toMap(e -> (UaObjectNode) e.getKey(), e -> e.getValue()));
-        transformObjectNodes(objects).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+                @Override
+                public void endRDF() {
+                    writer.endRDF();
+                }
+
+                @Override
+                public void handleNamespace(String prefix, String uri) {
+                    writer.handleNamespace(prefix, uri);
+                }
+
+                @Override
+                public void handleStatement(Statement st) {
+                    count[0]++;
+                    writer.handleStatement(st);
+                }
+            });
+        }
+        logWritten(file, count[0], start);
+    }
+
+    /**
+     * Streams the statements of the address space into the given stream in the configured format and compression.
+     * The stream is not closed.
+     */
+    public void transform(OutputStream out) throws IOException {
+        // closing the wrapper finishes and releases the compressor even if the transformation fails, but leaves out open
+        try (OutputStream os = outputConfig.wrap(metrics.countBytes(outputConfig, new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }))) {
+            transform(Rio.createWriter(outputConfig.getFormat(), os));
+        }
+    }
+
+    /**
+     * Writes the statements of the address space to one file per namespace in the configured output directory, see
+     * {@link PartitionedWriter}.
+     */
+    public List<PartitionedWriter.Partition> transformPartitioned() {
+        try (PartitionedWriter writer = new PartitionedWriter(ctx.getNamespaces(), outputConfig, metrics)) {
+            transform(writer);
+            return writer.getPartitions();
+        }
+    }
 
-        Map<UaObjectTypeNode, List<ReferenceDescription>> objectTypes = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.ObjectType)).collect(Collectors.toMap(e -> (UaObjectTypeNode) e.getKey(), e -> e.getValue()));
-        transformObjectTypeNodes(objectTypes).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+    Path getDefaultFile() {
+        String now = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME);
+        String lastNamespace = ctx.getNamespaces().getUri(ctx.getNamespaces().toArray().length - 1);
+        return outputConfig.getDirectory().resolve(lastNamespace + now + outputConfig.getFileExtension());
+    }
 
-        Map<UaVariableNode, List<ReferenceDescription>> variables = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.Variable)).collect(Collectors.toMap(e -> (UaVariableNode) e.getKey(), e -> e.getValue()));
-        transformVariableNodes(variables).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+    private void logWritten(Path file, long statements, long start) {
+        try {
+            logger.info("wrote " + statements + " statements to " + file + " (" + Files.size(file) + " bytes) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            logger.error("unable to read the size of " + file + ": " + e.getMessage());
+        }
+    }
 
-        Map<UaVariableTypeNode, List<ReferenceDescription>> variableTypes = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.VariableType)).collect(Collectors.toMap(e -> (UaVariableTypeNode) e.getKey(), e -> e.getValue()));
-        transformVariableTypeNodes(variableTypes).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+    @Override
+    public Model transform() {
+        Model model = new LinkedHashModel();
+        transform(new AbstractRDFHandler() {
+            @Override
+            public void handleNamespace(String prefix, String uri) {
+                model.setNamespace(prefix, uri);
+            }
 
-        Map<UaMethodNode, List<ReferenceDescription>> methods = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.Method)).collect(Collectors.toMap(e -> (UaMethodNode) e.getKey(), e -> e.getValue()));
-        transformMethodNodes(methods).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+            @Override
+            public void handleStatement(Statement st) {
+                model.add(st);
+            }
+        });
+        return model;
+    }
 
-        Map<UaReferenceTypeNode, List<ReferenceDescription>> referenceTypes = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.ReferenceType)).collect(Collectors.toMap(e -> (UaReferenceTypeNode) e.getKey(), e -> e.getValue()));
-        transformReferenceTypeNodes(referenceTypes).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+    /**
+     * Writes the statements of the address space into a named graph of the repository, replacing its previous
+     * content in one transaction, see {@link RepositorySink}.
+     */
+    public void transform(Repository repository, IRI graph) {
+        try (RepositorySink sink = new RepositorySink(repository, graph)) {
+            transform(sink);
+        }
+    }
 
-        Map<UaViewNode, List<ReferenceDescription>> views = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.View)).collect(Collectors.toMap(e -> (UaViewNode) e.getKey(), e -> e.getValue()));
-        transformViewNodes(views).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+    /**
+     * Streams the statements of the address space into the given handler. The statements are generated in chunks of
+     * nodes on the configured executor and handed to the handler in NodeId order, so the output does not depend on
+     * the number of threads; only a bounded number of chunks is held in memory. Namespaces are reported before the
+     * first statement. An interrupt of the calling thread stops the transformation before {@code endRDF()}.
+     */
+    @Override
+    public void transform(RDFHandler handler) {
+        Timer.Sample transform = metrics.start();
+        handler.startRDF();
+        NamespaceTable namespaces = ctx.getNamespaces();
+        NodeIdIriCache iris = TransformerUtils.getNodeIdIriCache(namespaces);
+        long hits = iris.getHitCount();
+        long misses = iris.getMissCount();
+        Arrays.stream(namespaces.toArray()).forEach(ns -> {
+            handler.handleNamespace(TransformerUtils.getLastIdentifierSegment(ns), ns);
+        });
+        Consumer<Statement> sink = handler::handleStatement;
+        if (standardGraph != null) {
+            standardGraph.transform(handler);
+        }
 
-        Map<UaDataTypeNode, List<ReferenceDescription>> dataTypes = ctx.getNodeRefMap().entrySet().stream().filter(k -> k.getKey().getNodeClass().equals(NodeClass.DataType)).collect(Collectors.toMap(e -> (UaDataTypeNode) e.getKey(), e -> e.getValue()));
-        transformDataTypeNodes(dataTypes).forEach(statement -> builder.add(statement.getSubject(), statement.getPredicate(), statement.getObject()));
+        List<Map.Entry<? extends UaNode, List<ReferenceDescription>>> nodes = new ArrayList<>(ctx.getNodeRefMap().entrySet());
+        nodes.sort(Comparator.comparing(e -> e.getKey().getNodeId(), TransformerUtils.NODE_ID_ORDER));
+        int window = 2 * Runtime.getRuntime().availableProcessors();
+        Deque<CompletableFuture<List<Statement>>> inFlight = new ArrayDeque<>();
+        try {
+            for (int from = 0; from < nodes.size(); from += chunkSize) {
+                List<Map.Entry<? extends UaNode, List<ReferenceDescription>>> chunk = nodes.subList(from, Math.min(from + chunkSize, nodes.size()));
+                inFlight.add(CompletableFuture.supplyAsync(() -> transformNodes(chunk), executor));
+                if (inFlight.size() >= window) {
+                    inFlight.poll().get().forEach(sink);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                inFlight.poll().get().forEach(sink);
+            }
+        } catch (ExecutionException e) {
+            inFlight.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            inFlight.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while transforming " + nodes.size() + " nodes", e);
+        }
+        logger.info("transformed " + nodes.size() + " nodes, " + iris);
+        metrics.cacheLookups("nodeIdIri", iris.getHitCount() - hits, iris.getMissCount() - misses);
 
-        ctx.getClient().disconnect();
-        return transformEndpointsAndAttach(builder, this.entryPoint).build();
+        transformEndpointsAndAttach(sink, this.entryPoint);
+        handler.endRDF();
+        metrics.phaseDone(TransformerMetrics.Phase.TRANSFORM, transform);
     }
 
     public ModelBuilder transformEndpointsAndAttach(ModelBuilder builder, Resource adaptionPoint) {
-        builder.add(adaptionPoint, v.createIRI("http://iwu.fraunhofer.de/c32/hasOpcuaAddressSpace"), v.createIRI("http://opcfoundation.org/UA/84"));
-        builder.add(adaptionPoint, v.createIRI("http://iwu.fraunhofer.de/c32/hasEndpoints"), v.createBNode("endpoints"));
+        transformEndpointsAndAttach(st -> builder.add(st.getSubject(), st.getPredicate(), st.getObject()), adaptionPoint);
+        return builder;
+    }
+
+    public void transformEndpointsAndAttach(Consumer<Statement> sink, Resource adaptionPoint) {
+        sink.accept(v.createStatement(adaptionPoint, v.createIRI("http://iwu.fraunhofer.de/c32/hasOpcuaAddressSpace"), v.createIRI("http://opcfoundation.org/UA/84")));
+        sink.accept(v.createStatement(adaptionPoint, v.createIRI("http://iwu.fraunhofer.de/c32/hasEndpoints"), v.createBNode("endpoints")));
         ctx.getEndpoints().forEach(endp -> {
             IRI endpointInQuestion = TransformerUtils.getIriFromEndpointDescription(endp);
-            builder.add(v.createBNode("endpoints"),
+            sink.accept(v.createStatement(v.createBNode("endpoints"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasEndpoint"),
-                    endpointInQuestion);
-            builder.add(endpointInQuestion,
+                    endpointInQuestion));
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasEndpointUrl"),
-                    v.createLiteral(endp.getEndpointUrl()));
+                    v.createLiteral(endp.getEndpointUrl())));
 
             // Server ApplicationDescription
-            builder.add(endpointInQuestion,
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasServer"),
                     v.createBNode("serverApplicationDescription")
-            );
-            builder.add(v.createBNode("serverApplicationDescription"),
+            ));
+            sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/applicationUri"),
                     v.createLiteral(endp.getServer().getApplicationUri())
-            );
-            builder.add(v.createBNode("serverApplicationDescription"),
+            ));
+            sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/productUri"),
                     v.createLiteral(endp.getServer().getProductUri())
-            );
-            builder.add(v.createBNode("serverApplicationDescription"),
+            ));
+            sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/applicationName"),
                     TransformerUtils.getOptionalLiteralFromLocalizedText(endp.getServer().getApplicationName()).get()
-            );
-            builder.add(v.createBNode("serverApplicationDescription"),
+            ));
+            sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/applicationType"),
                     v.createLiteral(endp.getServer().getApplicationType().name())
-            );
-            Optional.ofNullable(endp.getServer().getGatewayServerUri()).ifPresent(gsu -> builder.add(v.createBNode("serverApplicationDescription"),
+            ));
+            Optional.ofNullable(endp.getServer().getGatewayServerUri()).ifPresent(gsu -> sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/gatewayServerUri"),
-                    v.createLiteral(gsu))
+                    v.createLiteral(gsu)))
             );
 
-            Optional.ofNullable(endp.getServer().getDiscoveryProfileUri()).ifPresent(dpu -> builder.add(v.createBNode("serverApplicationDescription"),
+            Optional.ofNullable(endp.getServer().getDiscoveryProfileUri()).ifPresent(dpu -> sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/discoveryProfileUri"),
-                    v.createLiteral(dpu))
+                    v.createLiteral(dpu)))
             );
             Arrays.stream(endp.getServer().getDiscoveryUrls()).forEach(durl -> {
-                builder.add(v.createBNode("serverApplicationDescription"),
+                sink.accept(v.createStatement(v.createBNode("serverApplicationDescription"),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/discoveryUrls"),
                         v.createLiteral(durl)
-                );
+                ));
             });
             //End server ApplicationDescription
-            builder.add(endpointInQuestion,
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasServerCertificate"),
-                    v.createLiteral(endp.getServerCertificate().toString()));
-            builder.add(endpointInQuestion,
+                    v.createLiteral(endp.getServerCertificate().toString())));
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasSecurityMode"),
-                    v.createLiteral(endp.getSecurityMode().name()));
-            builder.add(endpointInQuestion,
+                    v.createLiteral(endp.getSecurityMode().name())));
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasSecurityPolicyUri"),
-                    v.createLiteral(endp.getSecurityPolicyUri()));
+                    v.createLiteral(endp.getSecurityPolicyUri())));
             // UserIdentityTokens
             Arrays.stream(endp.getUserIdentityTokens()).forEach(uit -> {
-                builder.add(endpointInQuestion,
+                sink.accept(v.createStatement(endpointInQuestion,
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasUserIdentityToken"),
-                        v.createBNode("uit" + uit.hashCode()));
-                builder.add(v.createBNode("uit" + uit.hashCode()),
+                        v.createBNode("uit" + uit.hashCode())));
+                sink.accept(v.createStatement(v.createBNode("uit" + uit.hashCode()),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/policyId"),
-                        v.createLiteral(uit.getPolicyId()));
-                builder.add(v.createBNode("uit" + uit.hashCode()),
+                        v.createLiteral(uit.getPolicyId())));
+                sink.accept(v.createStatement(v.createBNode("uit" + uit.hashCode()),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/tokenType"),
-                        v.createLiteral(uit.getTokenType().name()));
-                Optional.ofNullable(uit.getIssuedTokenType()).ifPresent(itt -> builder.add(v.createBNode("uit" + uit.hashCode()),
+                        v.createLiteral(uit.getTokenType().name())));
+                Optional.ofNullable(uit.getIssuedTokenType()).ifPresent(itt -> sink.accept(v.createStatement(v.createBNode("uit" + uit.hashCode()),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/issuedTokenType"),
-                        v.createLiteral(itt)));
+                        v.createLiteral(itt))));
 
-                Optional.ofNullable(uit.getIssuerEndpointUrl()).ifPresent(ieu -> builder.add(v.createBNode("uit" + uit.hashCode()),
+                Optional.ofNullable(uit.getIssuerEndpointUrl()).ifPresent(ieu -> sink.accept(v.createStatement(v.createBNode("uit" + uit.hashCode()),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/issuerEndpointUrl"),
-                        v.createLiteral(ieu)));
+                        v.createLiteral(ieu))));
 
-                Optional.ofNullable(uit.getSecurityPolicyUri()).ifPresent(spu -> builder.add(v.createBNode("uit" + uit.hashCode()),
+                Optional.ofNullable(uit.getSecurityPolicyUri()).ifPresent(spu -> sink.accept(v.createStatement(v.createBNode("uit" + uit.hashCode()),
                         v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/securityPolicyUri"),
-                        v.createLiteral(spu)));
+                        v.createLiteral(spu))));
             });
             //End UserIdentityTokens
 
-            builder.add(endpointInQuestion,
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasTransportProfileUri"),
-                    v.createLiteral(endp.getTransportProfileUri()));
-            builder.add(endpointInQuestion,
+                    v.createLiteral(endp.getTransportProfileUri())));
+            sink.accept(v.createStatement(endpointInQuestion,
                     v.createIRI("http://iwu.fraunhofer.de/c32/ua/rdf/hasSecurityLevel"),
-                    v.createLiteral(endp.getSecurityLevel().intValue()));
+                    v.createLiteral(endp.getSecurityLevel().intValue())));
         });
-        return builder;
+    }
+
+    private List<Statement> transformNodes(List<Map.Entry<? extends UaNode, List<ReferenceDescription>>> nodes) {
+        List<Statement> statements = new ArrayList<>();
+        long[] perNodeClass = new long[NodeClass.values().length];
+        nodes.forEach(e -> {
+            int before = statements.size();
+            transformNode(e.getKey(), e.getValue(), statements::add);
+            perNodeClass[e.getKey().getNodeClass().ordinal()] += statements.size() - before;
+        });
+        for (NodeClass nodeClass : NodeClass.values()) {
+            if (perNodeClass[nodeClass.ordinal()] > 0) {
+                metrics.statements(nodeClass, perNodeClass[nodeClass.ordinal()]);
+            }
+        }
+        return statements;
+    }
+
+    void transformNode(UaNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        NodeHandler nodeHandler = handlers.get(node.getNodeClass());
+        if (nodeHandler != null) {
+            nodeHandler.handle(node, references, sink);
+        } else {
+            logger.info("no handler registered for NodeClass " + node.getNodeClass() + " of " + node.getNodeId().toParseableString() + ". Skipping.");
+        }
+    }
+
+    private void transformObjectNode(UaObjectNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.EventNotifier), TransformerUtils.getLiteralFromInt(node.getEventNotifier().intValue())));
+        statements.forEach(sink);
+    }
 
+    private void transformObjectTypeNode(UaObjectTypeNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), TransformerUtils.getLiteralFromBoolean(node.getIsAbstract())));
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformObjectNodes(Map<UaObjectNode, List<ReferenceDescription>> objectNodes) {
-        Function<Map.Entry<UaObjectNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.EventNotifier), v.createLiteral(e.getKey().getEventNotifier().intValue())));
-            return statements.stream();
-        };
-        return objectNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
-    }
-
-    private List<Statement> transformObjectTypeNodes(Map<UaObjectTypeNode, List<ReferenceDescription>> objectTypeNodes) {
-        Function<Map.Entry<UaObjectTypeNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), v.createLiteral(e.getKey().getIsAbstract())));
-            return statements.stream();
-        };
-        return objectTypeNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
-    }
-
-    private List<Statement> transformVariableNodes(Map<UaVariableNode, List<ReferenceDescription>> variableNodes) {
-        Function<Map.Entry<UaVariableNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DataType), TransformerUtils.getIriFromNodeId(e.getKey().getDataType(), ctx.getNamespaces())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ValueRank), v.createLiteral(e.getKey().getValueRank())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.AccessLevel), v.createLiteral(e.getKey().getAccessLevel().intValue())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserAccessLevel), v.createLiteral(e.getKey().getUserAccessLevel().intValue())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Historizing), v.createLiteral(e.getKey().getHistorizing())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ArrayDimensions), v.createLiteral(Arrays.toString(e.getKey().getArrayDimensions()))));
-
-
-            DataTypeMapper dtm = new DataTypeMapper(dataTypeTree, ctx);
-            Class<?> backingClass = dataTypeTree.getBackingClass(e.getKey().getDataType());
-            if (backingClass.equals(UNumber.class)) {
-                backingClass = UInteger.class;
-            } else if (backingClass.equals(Number.class)) {
-                backingClass = Integer.class;
-            } else if (backingClass.equals(Object.class)) {
-                logger.info("found a backingclass Object<?>");
+    private void transformVariableNode(UaVariableNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DataType), TransformerUtils.getIriFromNodeId(node.getDataType(), ctx.getNamespaces())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ValueRank), TransformerUtils.getLiteralFromInt(node.getValueRank())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.AccessLevel), TransformerUtils.getLiteralFromInt(node.getAccessLevel().intValue())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserAccessLevel), TransformerUtils.getLiteralFromInt(node.getUserAccessLevel().intValue())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Historizing), TransformerUtils.getLiteralFromBoolean(node.getHistorizing())));
+
+        int builtinTypeId = getBuiltinTypeId(node.getDataType());
+        addValueStatements(subject, node.getValue(), node.getArrayDimensions(), builtinTypeId, statements);
+
+        statements.forEach(sink);
+    }
+
+    /**
+     * Adds the Value and ArrayDimensions statements of a Variable or VariableType. The ArrayDimensions are an rdf:List.
+     * Blank nodes of structures and arrays are named after the subject and their position, so an unchanged node yields
+     * the same statements when it is transformed again.
+     */
+    private void addValueStatements(IRI subject, DataValue value, UInteger[] arrayDimensions, int builtinTypeId, List<Statement> statements) {
+        IRI predicate = TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value);
+        List<Statement> generated = new ArrayList<>();
+        Object raw = value.getValue().getValue();
+        if (raw != null && raw.getClass().isArray() && dataTypeMapper.getArrayEncoding() != ArrayEncoding.ELEMENTS) {
+            generated.add(v.createStatement(subject, predicate, dataTypeMapper.getValueFromArray(value, builtinTypeId, generated::add)));
+        } else {
+            TransformerUtils.createValueFromDataValue(value, builtinTypeId, dataTypeMapper, generated::add).ifPresent(l ->
+                    l.stream().filter(Objects::nonNull).forEach(en -> generated.add(v.createStatement(subject, predicate, en))));
+        }
+        if (arrayDimensions != null) {
+            List<Value> dimensions = new ArrayList<>(arrayDimensions.length);
+            for (UInteger dimension : arrayDimensions) {
+                dimensions.add(dataTypeMapper.getLiteralFromUInt32(dimension));
             }
+            generated.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ArrayDimensions),
+                    ArrayEncoding.LIST.encode(dimensions, generated::add)));
+        }
+        nameBlankNodes(subject, generated);
+        statements.addAll(generated);
+    }
 
-            int builtinTypeId = BuiltinDataType.getBuiltinTypeId(backingClass);
-            Optional<List<Value>> valueFromDataValue = TransformerUtils.createValueFromDataValue(e.getKey().getValue(), builtinTypeId, dtm);
-            valueFromDataValue.ifPresent(l ->
-                    l.stream().filter(Objects::nonNull).forEach(en -> statements.add(v.createStatement(
-                            currentSubject,
-                            TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value),
-                            en))));
-
-            return statements.stream();
-        };
-
-        return variableNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
-    }
-
-    private List<Statement> transformVariableTypeNodes(Map<UaVariableTypeNode, List<ReferenceDescription>> variableTypeNodes) {
-        Function<Map.Entry<UaVariableTypeNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DataType), TransformerUtils.getIriFromNodeId(e.getKey().getDataType(), ctx.getNamespaces())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ValueRank), v.createLiteral(e.getKey().getValueRank())));
-
-            DataTypeMapper dtm = new DataTypeMapper(dataTypeTree, ctx);
-            Class<?> backingClass = dataTypeTree.getBackingClass(e.getKey().getDataType());
-            logger.info("is backingclass: " + backingClass + ", name: " + e.getKey().getDisplayName().toString());
-            if (backingClass.equals(UNumber.class)) {
-                backingClass = UInteger.class;
-            } else if (backingClass.equals(Number.class)) {
-                backingClass = Integer.class;
+    private void nameBlankNodes(IRI subject, List<Statement> statements) {
+        Map<BNode, BNode> names = new HashMap<>();
+        String prefix = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Statement st = statements.get(i);
+            if (st.getSubject() instanceof BNode || st.getObject() instanceof BNode) {
+                if (prefix == null) {
+                    prefix = UUID.nameUUIDFromBytes(subject.stringValue().getBytes(StandardCharsets.UTF_8)).toString().replace("-", "") + "_";
+                }
+                statements.set(i, v.createStatement((Resource) name(prefix, st.getSubject(), names), st.getPredicate(), name(prefix, st.getObject(), names)));
             }
+        }
+    }
 
-            int builtinTypeId = BuiltinDataType.getBuiltinTypeId(backingClass);
-            Optional<List<Value>> valueFromDataValue = TransformerUtils.createValueFromDataValue(e.getKey().getValue(), builtinTypeId, dtm);
-            valueFromDataValue.ifPresent(l ->
-                    l.stream().filter(Objects::nonNull).forEach(en -> statements.add(v.createStatement(
-                            currentSubject,
-                            TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value),
-                            en))));
+    private Value name(String prefix, Value value, Map<BNode, BNode> names) {
+        if (!(value instanceof BNode)) {
+            return value;
+        }
+        BNode name = names.get(value);
+        if (name == null) {
+            name = v.createBNode(prefix + names.size());
+            names.put((BNode) value, name);
+        }
+        return name;
+    }
 
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ArrayDimensions), v.createLiteral(Arrays.toString(e.getKey().getArrayDimensions()))));
+    /**
+     * The builtin type id the values of a Variable with the given DataType are mapped by.
+     */
+    int getBuiltinTypeId(NodeId dataType) {
+        Class<?> backingClass = dataTypeTree.getBackingClass(dataType);
+        if (backingClass.equals(UNumber.class)) {
+            backingClass = UInteger.class;
+        } else if (backingClass.equals(Number.class)) {
+            backingClass = Integer.class;
+        } else if (backingClass.equals(Object.class)) {
+            // DataType unknown to the tree, e.g. a subtype from namespace 0 missing in a NodeSet: map the value by
+            // its own type
+            backingClass = Variant.class;
+        }
+        return BuiltinDataType.getBuiltinTypeId(backingClass);
+    }
 
-            return statements.stream();
-        };
+    private void transformVariableTypeNode(UaVariableTypeNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DataType), TransformerUtils.getIriFromNodeId(node.getDataType(), ctx.getNamespaces())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ValueRank), TransformerUtils.getLiteralFromInt(node.getValueRank())));
 
+        int builtinTypeId = getBuiltinTypeId(node.getDataType());
+        addValueStatements(subject, node.getValue(), node.getArrayDimensions(), builtinTypeId, statements);
 
-        return variableTypeNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformMethodNodes(Map<UaMethodNode, List<ReferenceDescription>> methodNodes) {
-        Function<Map.Entry<UaMethodNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Executable), v.createLiteral(e.getKey().isExecutable())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserExecutable), v.createLiteral(e.getKey().isUserExecutable())));
-            return statements.stream();
-        };
-        return methodNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
+    private void transformMethodNode(UaMethodNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Executable), TransformerUtils.getLiteralFromBoolean(node.isExecutable())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserExecutable), TransformerUtils.getLiteralFromBoolean(node.isUserExecutable())));
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformDataTypeNodes(Map<UaDataTypeNode, List<ReferenceDescription>> dataTypeNodes) {
-        Function<Map.Entry<UaDataTypeNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), v.createLiteral(e.getKey().getIsAbstract())));
-            return statements.stream();
-        };
-        return dataTypeNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
+    private void transformDataTypeNode(UaDataTypeNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), TransformerUtils.getLiteralFromBoolean(node.getIsAbstract())));
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformReferenceTypeNodes(Map<UaReferenceTypeNode, List<ReferenceDescription>> referenceTypeNodes) {
-        Function<Map.Entry<UaReferenceTypeNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            TransformerUtils.getOptionalLiteralFromLocalizedText(e.getKey().getInverseName()).ifPresent(invName -> statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.InverseName), invName)));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), v.createLiteral(e.getKey().getIsAbstract())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Symmetric), v.createLiteral(e.getKey().getSymmetric())));
-            return statements.stream();
-        };
-        return referenceTypeNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
+    private void transformReferenceTypeNode(UaReferenceTypeNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        TransformerUtils.getOptionalLiteralFromLocalizedText(node.getInverseName()).ifPresent(invName -> statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.InverseName), invName)));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.IsAbstract), TransformerUtils.getLiteralFromBoolean(node.getIsAbstract())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Symmetric), TransformerUtils.getLiteralFromBoolean(node.getSymmetric())));
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformViewNodes(Map<UaViewNode, List<ReferenceDescription>> viewNodes) {
-        Function<Map.Entry<UaViewNode, List<ReferenceDescription>>, Stream<Statement>> pred = e -> {
-            List<Statement> statements = transformGenericNode(e.getKey(), e.getValue());
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ContainsNoLoops), v.createLiteral(e.getKey().getContainsNoLoops())));
-            statements.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.EventNotifier), v.createLiteral(e.getKey().getEventNotifier().intValue())));
-            return statements.stream();
-        };
-        return viewNodes.entrySet().stream().flatMap(pred).collect(Collectors.toList());
+    private void transformViewNode(UaViewNode node, List<ReferenceDescription> references, Consumer<Statement> sink) {
+        IRI subject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
+        List<Statement> statements = transformGenericNode(node, subject, references);
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ContainsNoLoops), TransformerUtils.getLiteralFromBoolean(node.getContainsNoLoops())));
+        statements.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.EventNotifier), TransformerUtils.getLiteralFromInt(node.getEventNotifier().intValue())));
+        statements.forEach(sink);
     }
 
-    private List<Statement> transformGenericNode(UaNode node, List<ReferenceDescription> references) {
+    private List<Statement> transformGenericNode(UaNode node, IRI subject, List<ReferenceDescription> references) {
         ArrayList<Statement> l = new ArrayList<>();
-        currentSubject = TransformerUtils.getIriFromNodeId(node.getNodeId(), ctx.getNamespaces());
 
-        l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.NodeClass), TransformerUtils.getIriFromNodeClass(node.getNodeClass())));
-        TransformerUtils.getOptionalLiteralFromLocalizedText(node.getDisplayName()).ifPresent(literal -> l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DisplayName), literal)));
-        l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.BrowseName), v.createLiteral(node.getBrowseName().toParseableString())));
-        l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.NodeId), v.createLiteral(node.getNodeId().toParseableString())));
-        TransformerUtils.getOptionalLiteralFromLocalizedText(node.getDescription()).ifPresent(literal -> l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Description), literal)));
+        l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.NodeClass), TransformerUtils.getIriFromNodeClass(node.getNodeClass())));
+        TransformerUtils.getOptionalLiteralFromLocalizedText(node.getDisplayName()).ifPresent(literal -> l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.DisplayName), literal)));
+        l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.BrowseName), v.createLiteral(node.getBrowseName().toParseableString())));
+        l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.NodeId), v.createLiteral(node.getNodeId().toParseableString())));
+        TransformerUtils.getOptionalLiteralFromLocalizedText(node.getDescription()).ifPresent(literal -> l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Description), literal)));
 
         // TODO check what happens here when optional attributes not used
-        l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserWriteMask), v.createLiteral(node.getUserWriteMask().intValue())));
-        l.add(v.createStatement(currentSubject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.WriteMask), v.createLiteral(node.getWriteMask().intValue())));
+        l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.UserWriteMask), TransformerUtils.getLiteralFromInt(node.getUserWriteMask().intValue())));
+        l.add(v.createStatement(subject, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.WriteMask), TransformerUtils.getLiteralFromInt(node.getWriteMask().intValue())));
 
         references.forEach(r -> {
             r.getNodeId().toNodeId(ctx.getNamespaces()).ifPresentOrElse(target -> {
                 IRI predicate = TransformerUtils.getIriFromNodeId(r.getReferenceTypeId(), ctx.getNamespaces());
                 if (r.getIsForward()) {
-                    l.add(v.createStatement(currentSubject, predicate, TransformerUtils.getIriFromNodeId(target, ctx.getNamespaces())));
+                    l.add(v.createStatement(subject, predicate, TransformerUtils.getIriFromNodeId(target, ctx.getNamespaces())));
                 } else {
-                    l.add(v.createStatement(TransformerUtils.getIriFromNodeId(target, ctx.getNamespaces()), predicate, currentSubject));
+                    l.add(v.createStatement(TransformerUtils.getIriFromNodeId(target, ctx.getNamespaces()), predicate, subject));
                 }
             }, () -> logger.info("The target Node with " + r.getNodeId().toParseableString() + "could not be found. Connection with " + node.getNodeId().toParseableString()));
         });
@@ -0,0 +1,170 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.rdf4j.RDF4JException;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Writes statements directly into a named graph of an RDF4J {@link Repository}, committing every
+ * {@link #setBatchSize(int)} statements so that no transaction grows with the size of the address space.
+ * <p>
+ * By default the graph is replaced: the batches are committed to a staging graph, which is moved onto the graph in a
+ * single transaction by {@link #endRDF()}. Readers of the graph see either the old or the new address space, never a
+ * half-populated one, and a transformation that fails before its end leaves the graph untouched. With
+ * {@link #setReplace(boolean)} set to false the batches are committed straight into the graph instead.
+ */
+public class RepositorySink extends AbstractRDFHandler implements AutoCloseable {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Repository repository;
+    private final IRI graph;
+    private int batchSize = 10_000;
+    private boolean replace = true;
+    private RepositoryConnection connection;
+    private IRI staging;
+    private List<Statement> batch;
+    private long count;
+
+    public RepositorySink(Repository repository, IRI graph) {
+        this.repository = Objects.requireNonNull(repository);
+        this.graph = Objects.requireNonNull(graph);
+    }
+
+    /**
+     * Number of statements committed as one transaction.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Whether the graph is replaced as a whole (default) or the statements are added to it.
+     */
+    public void setReplace(boolean replace) {
+        this.replace = replace;
+    }
+
+    public IRI getGraph() {
+        return graph;
+    }
+
+    /**
+     * Number of statements written since the last {@link #startRDF()}.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void startRDF() {
+        close();
+        try {
+            connection = repository.getConnection();
+            if (replace) {
+                ValueFactory v = connection.getValueFactory();
+                staging = v.createIRI("urn:uuid:" + UUID.randomUUID());
+            }
+        } catch (RepositoryException e) {
+            throw new RDFHandlerException("unable to connect to the repository", e);
+        }
+        batch = new ArrayList<>(batchSize);
+        count = 0;
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        connection().setNamespace(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(Statement st) {
+        connection();
+        batch.add(st);
+        count++;
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void endRDF() {
+        RepositoryConnection con = connection();
+        flush();
+        if (replace) {
+            try {
+                con.begin();
+                con.clear(graph);
+                con.prepareUpdate("MOVE SILENT <" + staging + "> TO <" + graph + ">").execute();
+                con.commit();
+            } catch (RDF4JException e) {
+                throw new RDFHandlerException("unable to replace graph " + graph, e);
+            }
+            staging = null;
+        }
+        logger.info("wrote " + count + " statements to graph " + graph);
+        close();
+    }
+
+    /**
+     * Releases the connection. If called before {@link #endRDF()}, e.g. because the transformation failed, the
+     * statements committed so far are removed from the staging graph and the graph keeps its previous content.
+     */
+    @Override
+    public void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (connection.isActive()) {
+                connection.rollback();
+            }
+            if (staging != null) {
+                connection.clear(staging);
+            }
+        } catch (RepositoryException e) {
+            logger.error("unable to discard staging graph " + staging + ": " + e.getMessage());
+        } finally {
+            connection.close();
+            connection = null;
+            staging = null;
+            batch = null;
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            connection.begin();
+            connection.add(batch, replace ? staging : graph);
+            connection.commit();
+        } catch (RepositoryException e) {
+            throw new RDFHandlerException("unable to write to graph " + graph, e);
+        }
+        batch.clear();
+    }
+
+    private RepositoryConnection connection() {
+        if (connection == null) {
+            throw new IllegalStateException("startRDF has not been called");
+        }
+        return connection;
+    }
+}
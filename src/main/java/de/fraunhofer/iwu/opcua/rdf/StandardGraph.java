@@ -0,0 +1,272 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.KnownNode;
+import de.fraunhofer.iwu.opcua.util.NodeSetReader;
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.ReferenceTypeTree;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Precomputed statements of the standard nodes of namespace 0. Every server exposes the same few thousand type nodes
+ * of the specification; with {@link de.fraunhofer.iwu.opcua.util.CrawlScope.Builder#setKnownNodes(Map)} set to
+ * {@link #getKnownNodes()} the crawler skips reading them and takes their references from the graph, and
+ * {@link RdfTransformer#setStandardGraph(StandardGraph)} emits these statements instead.
+ * <p>
+ * The graph of a version of the specification is a classpath resource {@code /ns0/Opc.Ua.<version>.brf} in
+ * {@link RDFFormat#BINARY}, generated from a NodeSet2 file with the nodes of namespace 0 with {@link #main(String[])}.
+ * The Server object and its descendants are left out, their values differ from server to server and are still
+ * crawled, and so are references to nodes of other namespaces.
+ */
+public class StandardGraph {
+
+    public static final String DEFAULT_VERSION = "1.04";
+    static final String RESOURCE = "/ns0/Opc.Ua.%s.brf";
+    private static final Logger logger = LoggerFactory.getLogger(StandardGraph.class);
+    private static final String NAMESPACE = "http://opcfoundation.org/UA/";
+    private static final Set<ExpandedNodeId> NOT_EXTENDED_TYPES = Set.of(Identifiers.DataTypeEncodingType.expanded(), Identifiers.ModellingRuleType.expanded());
+
+    private final String version;
+    private final Model model;
+    private final Map<NodeId, KnownNode> knownNodes;
+
+    private StandardGraph(String version, Model model) {
+        this.version = version;
+        this.model = model;
+        Map<NodeId, NodeClass> nodeClasses = new HashMap<>();
+        model.filter(null, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.NodeClass), null).forEach(st -> {
+            NodeId nodeId = nodeId(st.getSubject());
+            if (nodeId != null && st.getObject() instanceof IRI) {
+                nodeClasses.put(nodeId, NodeClass.valueOf(((IRI) st.getObject()).getLocalName()));
+            }
+        });
+        Map<NodeId, List<ReferenceDescription>> references = new HashMap<>();
+        Map<NodeId, NodeId> supertypes = new HashMap<>();
+        model.forEach(st -> {
+            NodeId source = nodeId(st.getSubject());
+            NodeId type = nodeId(st.getPredicate());
+            NodeId target = nodeId(st.getObject());
+            if (source == null || target == null || nodeClasses.get(type) != NodeClass.ReferenceType) {
+                return;
+            }
+            references.computeIfAbsent(source, s -> new ArrayList<>()).add(new ReferenceDescription(type, true, target.expanded(),
+                    QualifiedName.NULL_VALUE, LocalizedText.NULL_VALUE, nodeClasses.getOrDefault(target, NodeClass.Unspecified), ExpandedNodeId.NULL_VALUE));
+            if (type.equals(Identifiers.HasSubtype) && nodeClasses.get(source) == NodeClass.ReferenceType) {
+                supertypes.put(target, source);
+            }
+        });
+        ReferenceTypeTree referenceTypes = new ReferenceTypeTree(supertypes);
+        Map<NodeId, KnownNode> known = new HashMap<>();
+        nodeClasses.forEach((nodeId, nodeClass) -> {
+            List<ReferenceDescription> all = references.getOrDefault(nodeId, List.of());
+            List<ReferenceDescription> children = all.stream().filter(r -> referenceTypes.isHierarchical(r.getReferenceTypeId())).collect(Collectors.toList());
+            known.put(nodeId, new KnownNode(nodeClass, all, children, isExtended(nodeClass, all)));
+        });
+        this.knownNodes = Collections.unmodifiableMap(known);
+    }
+
+    /**
+     * Graph of the default version, if it is on the classpath.
+     */
+    public static Optional<StandardGraph> load() {
+        return load(DEFAULT_VERSION);
+    }
+
+    public static Optional<StandardGraph> load(String version) {
+        String resource = String.format(RESOURCE, version);
+        try (InputStream in = StandardGraph.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                logger.info("no standard graph " + resource + " on the classpath, namespace 0 is crawled");
+                return Optional.empty();
+            }
+            return Optional.of(read(in, version));
+        } catch (IOException e) {
+            logger.error("unable to read standard graph " + resource + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public static StandardGraph read(InputStream in, String version) throws IOException {
+        Model model = Rio.parse(new BufferedInputStream(in), "", RDFFormat.BINARY);
+        StandardGraph graph = new StandardGraph(version, model);
+        logger.info("loaded standard graph " + version + " with " + graph.knownNodes.size() + " nodes and " + model.size() + " statements");
+        return graph;
+    }
+
+    /**
+     * Transforms the nodes of namespace 0 read from a NodeSet, except the Server object and its descendants, and
+     * writes their statements in {@link RDFFormat#BINARY}. References to nodes of other namespaces are dropped, so the
+     * NodeSet may as well be exported from a server with {@link de.fraunhofer.iwu.opcua.util.NodeSetTransformer}.
+     */
+    public static void generate(NodeSetReader reader, OutputStream out) {
+        NamespaceTable namespaces = reader.getNamespaces();
+        Map<UaNode, List<ReferenceDescription>> nodes = new HashMap<>();
+        reader.getNodeRefMap().forEach((node, references) -> {
+            if (node.getNodeId().getNamespaceIndex().intValue() == 0) {
+                nodes.put(node, references);
+            }
+        });
+        Set<NodeId> serverSpecific = descendants(Identifiers.Server, nodes, namespaces);
+        nodes.keySet().removeIf(node -> serverSpecific.contains(node.getNodeId()));
+
+        OpcuaContext ctx = new OpcuaContext(namespaces, nodes, List.of());
+        RdfTransformer transformer = new RdfTransformer(ctx, new ValidatingValueFactory().createIRI(NAMESPACE), reader.getDataTypeTree());
+        RDFWriter writer = Rio.createWriter(RDFFormat.BINARY, out);
+        transformer.transform(new AbstractRDFHandler() {
+            @Override
+            public void startRDF() {
+                writer.startRDF();
+            }
+
+            @Override
+            public void endRDF() {
+                writer.endRDF();
+            }
+
+            @Override
+            public void handleNamespace(String prefix, String uri) {
+                writer.handleNamespace(prefix, uri);
+            }
+
+            @Override
+            public void handleStatement(Statement st) {
+                boolean standardSubject = st.getSubject() instanceof BNode || nodeId(st.getSubject()) != null;
+                boolean standardObject = !(st.getObject() instanceof IRI) || st.getObject().stringValue().startsWith(NAMESPACE);
+                if (standardSubject && standardObject) {
+                    writer.handleStatement(st);
+                }
+            }
+        });
+        logger.info("generated standard graph of " + nodes.size() + " nodes");
+    }
+
+    /**
+     * Generates the resource of a version: {@code <Opc.Ua.NodeSet2.xml> <version> [<resource directory>]}, the
+     * directory defaulting to {@code src/main/resources}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: StandardGraph <Opc.Ua.NodeSet2.xml> <version> [<resource directory>]");
+            System.exit(1);
+        }
+        Path file = Path.of(args.length > 2 ? args[2] : "src/main/resources", String.format(RESOURCE, args[1]).substring(1));
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            generate(NodeSetReader.of(Path.of(args[0])), out);
+        }
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public Set<NodeId> getNodeIds() {
+        return knownNodes.keySet();
+    }
+
+    /**
+     * NodeClass and references of the nodes described by the graph, to be passed to the crawl scope as known nodes.
+     */
+    public Map<NodeId, KnownNode> getKnownNodes() {
+        return knownNodes;
+    }
+
+    /**
+     * Hands the statements to the handler, without starting or ending it.
+     */
+    public void transform(RDFHandler handler) {
+        model.forEach(handler::handleStatement);
+    }
+
+    /**
+     * NodeId of a node IRI of namespace 0, null for other values.
+     */
+    private static NodeId nodeId(Value value) {
+        if (!(value instanceof IRI) || !((IRI) value).getNamespace().equals(NAMESPACE)) {
+            return null;
+        }
+        String id = ((IRI) value).getLocalName();
+        if (id.isEmpty() || !id.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return new NodeId(0, uint(Long.parseLong(id)));
+    }
+
+    /**
+     * Whether servers attach their own nodes to the node: objects, views and types are extended, variables, methods,
+     * the instance declarations of types, encodings and modelling rules are not.
+     */
+    private static boolean isExtended(NodeClass nodeClass, List<ReferenceDescription> references) {
+        if (nodeClass == NodeClass.Variable || nodeClass == NodeClass.Method) {
+            return false;
+        }
+        return references.stream().noneMatch(r -> r.getReferenceTypeId().equals(Identifiers.HasModellingRule)
+                || r.getReferenceTypeId().equals(Identifiers.HasTypeDefinition) && NOT_EXTENDED_TYPES.contains(r.getNodeId()));
+    }
+
+    private static Set<NodeId> descendants(NodeId root, Map<UaNode, List<ReferenceDescription>> nodes, NamespaceTable namespaces) {
+        Map<NodeId, NodeId> supertypes = new HashMap<>();
+        Map<NodeId, List<ReferenceDescription>> byNodeId = new HashMap<>();
+        nodes.forEach((node, references) -> {
+            byNodeId.put(node.getNodeId(), references);
+            if (node.getNodeClass() == NodeClass.ReferenceType) {
+                references.stream().filter(r -> r.getReferenceTypeId().equals(Identifiers.HasSubtype))
+                        .forEach(r -> r.getNodeId().toNodeId(namespaces).ifPresent(other -> {
+                            if (r.getIsForward()) {
+                                supertypes.put(other, node.getNodeId());
+                            } else {
+                                supertypes.put(node.getNodeId(), other);
+                            }
+                        }));
+            }
+        });
+        ReferenceTypeTree referenceTypes = new ReferenceTypeTree(supertypes);
+        Set<NodeId> descendants = new HashSet<>();
+        Deque<NodeId> queue = new ArrayDeque<>(List.of(root));
+        while (!queue.isEmpty()) {
+            NodeId nodeId = queue.poll();
+            if (descendants.add(nodeId)) {
+                byNodeId.getOrDefault(nodeId, List.of()).stream()
+                        .filter(r -> r.getIsForward() && referenceTypes.isHierarchical(r.getReferenceTypeId()))
+                        .forEach(r -> r.getNodeId().toNodeId(namespaces).ifPresent(queue::add));
+            }
+        }
+        return descendants;
+    }
+}
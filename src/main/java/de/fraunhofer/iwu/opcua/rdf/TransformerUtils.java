@@ -1,9 +1,9 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
 import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
-import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.NamespaceTable;
 import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
@@ -11,17 +11,81 @@ import org.eclipse.rdf4j.model.*;
 import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
 import org.eclipse.rdf4j.model.util.ModelBuilder;
 
+import java.lang.reflect.Array;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 
 
 public class TransformerUtils {
 
     private final static ValueFactory v = new ValidatingValueFactory();
 
+    private static final Map<NodeAttributesMask, IRI> ATTRIBUTE_IRIS = new EnumMap<>(NodeAttributesMask.class);
+    private static final Map<NodeClass, IRI> NODE_CLASS_IRIS = new EnumMap<>(NodeClass.class);
+    private static final Map<NamespaceTable, NodeIdIriCache> NODE_ID_IRIS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final int SHARED_INT_MIN = -128;
+    private static final Literal[] SHARED_INTS = new Literal[1024 - SHARED_INT_MIN];
+    private static final Literal TRUE = v.createLiteral(true);
+    private static final Literal FALSE = v.createLiteral(false);
+
+    private static final ValueMapping[] VALUE_MAPPINGS = new ValueMapping[BuiltinDataType.DiagnosticInfo.getTypeId() + 1];
+
+    static {
+        VALUE_MAPPINGS[BuiltinDataType.Boolean.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromBoolean(e);
+        VALUE_MAPPINGS[BuiltinDataType.SByte.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromSByte(e);
+        VALUE_MAPPINGS[BuiltinDataType.Byte.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromByte(e);
+        VALUE_MAPPINGS[BuiltinDataType.Int16.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromInt16(e);
+        VALUE_MAPPINGS[BuiltinDataType.UInt16.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromUInt16(e);
+        VALUE_MAPPINGS[BuiltinDataType.Int32.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromInt32(e);
+        VALUE_MAPPINGS[BuiltinDataType.UInt32.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromUInt32(e);
+        VALUE_MAPPINGS[BuiltinDataType.Int64.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromInt64(e);
+        VALUE_MAPPINGS[BuiltinDataType.UInt64.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromUInt64(e);
+        VALUE_MAPPINGS[BuiltinDataType.Float.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromFloat(e);
+        VALUE_MAPPINGS[BuiltinDataType.Double.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromDouble(e);
+        VALUE_MAPPINGS[BuiltinDataType.String.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromString(e);
+        VALUE_MAPPINGS[BuiltinDataType.DateTime.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromDateTime(e);
+        VALUE_MAPPINGS[BuiltinDataType.Guid.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromGuid(e);
+        VALUE_MAPPINGS[BuiltinDataType.ByteString.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromByteString(e);
+        VALUE_MAPPINGS[BuiltinDataType.XmlElement.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromXmlElement(e);
+        VALUE_MAPPINGS[BuiltinDataType.NodeId.getTypeId()] = (m, dv, e, s) -> m.getIriFromNodeId(e);
+        VALUE_MAPPINGS[BuiltinDataType.ExpandedNodeId.getTypeId()] = (m, dv, e, s) -> m.getIriFromExpandedNodeId(e);
+        VALUE_MAPPINGS[BuiltinDataType.StatusCode.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromStatusCode(e);
+        VALUE_MAPPINGS[BuiltinDataType.QualifiedName.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromQualifiedName(e);
+        VALUE_MAPPINGS[BuiltinDataType.LocalizedText.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromLocalizedText(e);
+        VALUE_MAPPINGS[BuiltinDataType.ExtensionObject.getTypeId()] = (m, dv, e, s) -> m.getValueFromExtensionObject(e, s);
+        VALUE_MAPPINGS[BuiltinDataType.DiagnosticInfo.getTypeId()] = (m, dv, e, s) -> m.getLiteralFromDiagnosticCode(e);
+        // elements of an array are mapped one by one, each by its own type
+        VALUE_MAPPINGS[BuiltinDataType.Variant.getTypeId()] = (m, dv, e, s) -> m.getValueFromVariant(
+                new DataValue(e instanceof Variant ? (Variant) e : new Variant(e), dv.getStatusCode(), null, null), s);
+    }
+
+    static {
+        Arrays.stream(NodeAttributesMask.values()).forEach(a -> ATTRIBUTE_IRIS.put(a, v.createIRI("http://opcfoundation.org/UA/Attributes/" + a.name())));
+        Arrays.stream(NodeClass.values()).forEach(c -> NODE_CLASS_IRIS.put(c, v.createIRI("http://opcfoundation.org/UA/NodeClasses/" + c.name())));
+        for (int i = 0; i < SHARED_INTS.length; i++) {
+            SHARED_INTS[i] = v.createLiteral(i + SHARED_INT_MIN);
+        }
+    }
+
+    /**
+     * Total order over NodeIds: namespace index, identifier type, then identifier. Numeric identifiers are compared
+     * numerically, all others by their string form.
+     */
+    public static final Comparator<NodeId> NODE_ID_ORDER = Comparator
+            .comparingInt((NodeId n) -> n.getNamespaceIndex().intValue())
+            .thenComparing(NodeId::getType)
+            .thenComparing(TransformerUtils::compareIdentifiers);
+
+    private static int compareIdentifiers(NodeId a, NodeId b) {
+        if (a.getIdentifier() instanceof UInteger && b.getIdentifier() instanceof UInteger) {
+            return ((UInteger) a.getIdentifier()).compareTo((UInteger) b.getIdentifier());
+        }
+        return a.getIdentifier().toString().compareTo(b.getIdentifier().toString());
+    }
+
     public static String getLastIdentifierSegment(String string) throws RuntimeException {
         String parsedUri = string;
         if (!string.contains("/")) {
@@ -55,7 +119,19 @@ public class TransformerUtils {
                 + LocalDateTime.now().hashCode()+"/"+nodeId.getIdentifier().toString());
     }
 
+    /**
+     * Returns the IRI of the NodeId, cached per NamespaceTable. Clear the cache of a table via
+     * {@link #getNodeIdIriCache(NamespaceTable)} when its namespace indices change.
+     */
     public static IRI getIriFromNodeId(NodeId nodeId, NamespaceTable uaNst) {
+        return getNodeIdIriCache(uaNst).computeIfAbsent(nodeId, n -> createIriFromNodeId(n, uaNst));
+    }
+
+    public static NodeIdIriCache getNodeIdIriCache(NamespaceTable uaNst) {
+        return NODE_ID_IRIS.computeIfAbsent(uaNst, n -> new NodeIdIriCache(NodeIdIriCache.DEFAULT_CAPACITY));
+    }
+
+    private static IRI createIriFromNodeId(NodeId nodeId, NamespaceTable uaNst) {
         String uncheckedNsUri = uaNst.getUri(nodeId.getNamespaceIndex());
         String checkedNsUri = uncheckedNsUri.endsWith("/") ? uncheckedNsUri : uncheckedNsUri + "/";
         String segment = nodeId.getIdentifier().toString();
@@ -66,6 +142,9 @@ public class TransformerUtils {
     }
 
     public static Optional<Literal> getOptionalLiteralFromLocalizedText(LocalizedText localizedText) {
+        if (localizedText == null) {
+            return Optional.empty();
+        }
         Optional<Literal> literal = Optional.ofNullable(localizedText.getText()).map(text ->
                 Optional.ofNullable(localizedText.getLocale()).map(locale ->
                         v.createLiteral(text, locale)
@@ -75,11 +154,20 @@ public class TransformerUtils {
     }
 
     public static IRI getIriFromAttributeMask(NodeAttributesMask attribute) {
-        return v.createIRI("http://opcfoundation.org/UA/Attributes/" + attribute.name());
+        return ATTRIBUTE_IRIS.get(attribute);
     }
 
     public static IRI getIriFromNodeClass(NodeClass id) {
-        return v.createIRI("http://opcfoundation.org/UA/NodeClasses/" + id.name());
+        return NODE_CLASS_IRIS.get(id);
+    }
+
+    public static Literal getLiteralFromInt(int i) {
+        int idx = i - SHARED_INT_MIN;
+        return idx >= 0 && idx < SHARED_INTS.length ? SHARED_INTS[idx] : v.createLiteral(i);
+    }
+
+    public static Literal getLiteralFromBoolean(boolean b) {
+        return b ? TRUE : FALSE;
     }
 
     public static IRI getIriFromEndpointDescription(EndpointDescription e){
@@ -88,70 +176,68 @@ public class TransformerUtils {
 
 
 
+    static boolean hasValueMapping(int backingDataType) {
+        return backingDataType > 0 && backingDataType < VALUE_MAPPINGS.length && VALUE_MAPPINGS[backingDataType] != null;
+    }
+
+    /**
+     * Maps the value, structures to single literals.
+     */
     public static Optional<List<Value>> createValueFromDataValue(DataValue value, int backingDataType, DataTypeMapper mapper) {
+        return createValueFromDataValue(value, backingDataType, mapper, null);
+    }
 
+    /**
+     * Maps the value, structures to blank nodes whose statements are handed to the sink. Null elements of an array
+     * are not mapped and stay null at their position.
+     */
+    public static Optional<List<Value>> createValueFromDataValue(DataValue value, int backingDataType, DataTypeMapper mapper, Consumer<Statement> sink) {
         return Optional.ofNullable(value.getValue().getValue()).map(val -> {
-                    List<Value> result = new ArrayList<>();
-                    Stream<Object> stream;
-                    if (value.getValue().getValue().getClass().isArray() && !value.getValue().getValue().getClass().equals(ByteString.class)) {
-                        stream = Arrays.stream(((Object[]) value.getValue().getValue()));
-                    } else {
-                        stream = Stream.of(value.getValue().getValue());
-                    }
-
-                    if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Boolean)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromBoolean(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.SByte)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromSByte(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Byte)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromByte(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Int16)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromInt16(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Int32)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromInt32(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Int64)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromInt64(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.UInt16)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromUInt16(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.UInt32)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromUInt32(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.UInt64)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromUInt64(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Float)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromFloat(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Double)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromDouble(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.String)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromString(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.DateTime)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromDateTime(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.Guid)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromGuid(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.ByteString)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromByteString(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.XmlElement)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromXmlElement(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.NodeId)) {
-                        stream.forEach(e -> result.add(mapper.getIriFromNodeId(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.ExpandedNodeId)) {
-                        stream.forEach(e -> result.add(mapper.getIriFromExpandedNodeId(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.StatusCode)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromStatusCode(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.QualifiedName)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromQualifiedName(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.LocalizedText)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromLocalizedText(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(BuiltinDataType.ExtensionObject.getNodeId())) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromExtensionObject(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(Identifiers.DiagnosticInfo)) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromDiagnosticCode(e)));
-                    } else if (NodeId.parse("i=" + backingDataType).equals(BuiltinDataType.Variant.getNodeId())) {
-                        stream.forEach(e -> result.add(mapper.getLiteralFromVariant(value)));
-                    } else {
-                        throw new RuntimeException("Datatype: i=" + backingDataType);
-                    }
-                    return result;
-                }
-        );
+            ValueMapping mapping = backingDataType > 0 && backingDataType < VALUE_MAPPINGS.length ? VALUE_MAPPINGS[backingDataType] : null;
+            if (mapping == null) {
+                String name = BuiltinDataType.isBuiltin(backingDataType) ? BuiltinDataType.fromNodeId(new NodeId(0, backingDataType)).name() + " " : "";
+                throw new IllegalArgumentException("no mapping for builtin DataType " + name + "(i=" + backingDataType + ")");
+            }
+            if (val.getClass().isArray()) {
+                List<Value> result = new ArrayList<>(Array.getLength(val));
+                forEachElement(val, element -> result.add(element != null ? mapping.map(mapper, value, element, sink) : null));
+                return result;
+            }
+            List<Value> result = new ArrayList<>(1);
+            result.add(mapping.map(mapper, value, val, sink));
+            return result;
+        });
+    }
+
+    /**
+     * Elements of a possibly multi-dimensional array in row-major order, the order of the ArrayDimensions.
+     */
+    private static void forEachElement(Object array, Consumer<Object> action) {
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            Object element = Array.get(array, i);
+            if (element != null && element.getClass().isArray()) {
+                forEachElement(element, action);
+            } else {
+                action.accept(element);
+            }
+        }
+    }
+
+    /**
+     * Maps a single value by its own class, e.g. a field of a structure. Values of classes that are no builtin type
+     * are mapped to their string form.
+     */
+    static Value createValueFromObject(Object element, DataTypeMapper mapper, Consumer<Statement> sink) {
+        BuiltinDataType type = BuiltinDataType.fromBackingClass(element.getClass());
+        if (type == null || !hasValueMapping(type.getTypeId())) {
+            return mapper.getLiteralFromString(element);
+        }
+        return VALUE_MAPPINGS[type.getTypeId()].map(mapper, new DataValue(Variant.NULL_VALUE), element, sink);
+    }
+
+    @FunctionalInterface
+    private interface ValueMapping {
+        Value map(DataTypeMapper mapper, DataValue value, Object element, Consumer<Statement> sink);
     }
 }
@@ -0,0 +1,425 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Breadth-first crawler on top of the async browse and read services. A single dispatcher thread batches pending nodes
+ * into BrowseRequests and their attributes into ReadRequests, sized from the server's OperationLimits, and keeps at most
+ * {@link CrawlConfig#getMaxRequestsInFlight()} requests outstanding; completions only enqueue work and never block.
+ * The {@link CrawlScope} of the config restricts the BrowseDescriptions and the nodes that are read; its known nodes
+ * are not read, and not browsed either where the scope takes their references as they are.
+ */
+public class AddressSpaceCrawler {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final OpcUaClient client;
+    private final NamespaceTable nst;
+    private final CrawlConfig config;
+    private final Semaphore permits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object signal = new Object();
+    // smallest depth each node was discovered at, and the nodes whose children were discovered already
+    private final Map<NodeId, Integer> depths = new ConcurrentHashMap<>();
+    private final Set<NodeId> browsed = ConcurrentHashMap.newKeySet();
+    private final Queue<PendingNode> readQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<PendingNode> browseQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<PendingNode> resolveQueue = new ConcurrentLinkedQueue<>();
+    private final Map<UaNode, List<ReferenceDescription>> nodeMap = new ConcurrentHashMap<>();
+    private final BatchBrowser browser;
+    private final ReferenceTypeTree referenceTypes;
+    private final CrawlScope scope;
+    private final TransformerMetrics metrics;
+    private final Predicate<NodeId> inScope;
+    private final Map<NodeId, KnownNode> knownNodes;
+    private final Map<NodeId, List<ReferenceDescription>> fromKnownNodes = new ConcurrentHashMap<>();
+    private OperationLimits limits;
+    private int nodesPerBrowse;
+    private int attributesPerRead;
+    private boolean descend = true;
+
+    public AddressSpaceCrawler(OpcUaClient client, CrawlConfig config) {
+        this(client, config, null);
+    }
+
+    /**
+     * @param referenceTypes if given, each node is browsed once and hierarchical references are filtered locally
+     */
+    public AddressSpaceCrawler(OpcUaClient client, CrawlConfig config, ReferenceTypeTree referenceTypes) {
+        this(client, config, referenceTypes, null);
+    }
+
+    /**
+     * @param metrics if given, the requests and discovered nodes are recorded in it
+     */
+    public AddressSpaceCrawler(OpcUaClient client, CrawlConfig config, ReferenceTypeTree referenceTypes, TransformerMetrics metrics) {
+        this.client = client;
+        this.nst = client.getNamespaceTable();
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxRequestsInFlight());
+        this.browser = new BatchBrowser(client, metrics);
+        this.referenceTypes = referenceTypes;
+        this.scope = config.getScope();
+        this.inScope = scope.namespaceFilter(nst);
+        this.knownNodes = scope.getKnownNodes();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Crawls the start nodes of the configured scope and their descendants.
+     */
+    public Map<UaNode, List<ReferenceDescription>> crawl() throws InterruptedException, ExecutionException {
+        List<NodeId> unknown = scope.getStartNodes().stream().filter(n -> !knownNodes.containsKey(n)).collect(Collectors.toList());
+        int maxNodesPerRead = OperationLimits.effective(config.getMaxNodesPerRead(), operationLimits().getMaxNodesPerRead());
+        Map<NodeId, NodeClass> read = unknown.isEmpty() ? Map.of()
+                : send(TransformerMetrics.Service.READ, () -> NodeAttributes.readNodeClasses(client, unknown, maxNodesPerRead)).get();
+        Map<NodeId, NodeClass> roots = new LinkedHashMap<>();
+        scope.getStartNodes().forEach(n -> {
+            NodeClass nodeClass = knownNodes.containsKey(n) ? knownNodes.get(n).getNodeClass() : read.get(n);
+            if (nodeClass != null) {
+                roots.put(n, nodeClass);
+            }
+        });
+        if (roots.size() < scope.getStartNodes().size()) {
+            logger.info("start nodes " + scope.getStartNodes().stream().filter(n -> !roots.containsKey(n)).map(NodeId::toParseableString)
+                    .collect(Collectors.joining(", ")) + " not found. Skipping.");
+        }
+        return crawl(roots, true);
+    }
+
+    public Map<UaNode, List<ReferenceDescription>> crawl(NodeId root) throws InterruptedException, ExecutionException {
+        return crawl(Map.of(root, NodeClass.Object), true);
+    }
+
+    /**
+     * Reads and browses the given nodes. Their hierarchical descendants are crawled as well if {@code descend} is set,
+     * otherwise only the given nodes are returned. The maximum depth of the scope counts from the given nodes. A
+     * crawler instance is meant to be used for one crawl.
+     */
+    public Map<UaNode, List<ReferenceDescription>> crawl(Map<NodeId, NodeClass> roots, boolean descend) throws InterruptedException, ExecutionException {
+        this.descend = descend;
+        OperationLimits limits = operationLimits();
+        nodesPerBrowse = Math.max(1, OperationLimits.effective(config.getNodesPerBrowse() * descriptionsPerNode(), limits.getMaxNodesPerBrowse()) / descriptionsPerNode());
+        attributesPerRead = OperationLimits.effective(config.getMaxNodesPerRead(), limits.getMaxNodesPerRead());
+        logger.info("crawling with " + nodesPerBrowse + " nodes per BrowseRequest and " + attributesPerRead + " attributes per ReadRequest");
+
+        roots.forEach((root, nodeClass) -> {
+            if (depths.putIfAbsent(root, 0) == null) {
+                enqueue(new PendingNode(root, nodeClass, 0));
+            }
+        });
+        while (true) {
+            List<PendingNode> batch = drainBrowseQueue();
+            if (!batch.isEmpty()) {
+                submit(() -> browseNodes(batch));
+                continue;
+            }
+            List<PendingNode> toRead = drainReadQueue();
+            if (!toRead.isEmpty()) {
+                submit(() -> readNodes(toRead));
+                continue;
+            }
+            List<PendingNode> toResolve = drainResolveQueue();
+            if (!toResolve.isEmpty()) {
+                submit(() -> resolveNodeClasses(toResolve));
+                continue;
+            }
+            synchronized (signal) {
+                if (readQueue.isEmpty() && browseQueue.isEmpty() && resolveQueue.isEmpty()) {
+                    if (pending.get() == 0) {
+                        break;
+                    }
+                    signal.wait();
+                }
+            }
+        }
+        CrawlScope.attach(nodeMap, fromKnownNodes);
+        return nodeMap;
+    }
+
+    private OperationLimits operationLimits() throws InterruptedException, ExecutionException {
+        if (limits == null) {
+            limits = OperationLimits.read(client).exceptionally(ex -> {
+                logger.info("unable to read OperationLimits, using configured batch sizes: " + ex.getMessage());
+                return new OperationLimits(0, 0);
+            }).get();
+        }
+        return limits;
+    }
+
+    private void submit(Supplier<CompletableFuture<?>> request) throws InterruptedException {
+        permits.acquire();
+        pending.incrementAndGet();
+        request.get().whenComplete((r, ex) -> {
+            permits.release();
+            pending.decrementAndGet();
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        });
+    }
+
+    private List<PendingNode> drainBrowseQueue() {
+        List<PendingNode> batch = new ArrayList<>();
+        PendingNode node;
+        while (batch.size() < nodesPerBrowse && (node = browseQueue.poll()) != null) {
+            batch.add(node);
+        }
+        return batch;
+    }
+
+    private List<PendingNode> drainReadQueue() {
+        List<PendingNode> batch = new ArrayList<>();
+        int attributes = 0;
+        PendingNode next;
+        while ((next = readQueue.peek()) != null) {
+            int size = NodeAttributes.of(next.nodeClass).size();
+            if (!batch.isEmpty() && attributes + size > attributesPerRead) {
+                break;
+            }
+            readQueue.poll();
+            batch.add(next);
+            attributes += size;
+        }
+        return batch;
+    }
+
+    private List<PendingNode> drainResolveQueue() {
+        List<PendingNode> batch = new ArrayList<>();
+        PendingNode node;
+        while (batch.size() < attributesPerRead && (node = resolveQueue.poll()) != null) {
+            batch.add(node);
+        }
+        return batch;
+    }
+
+    /**
+     * Reads the NodeClass of targets the server reported as Unspecified and queues them for their attributes. Nodes
+     * whose NodeClass cannot be read are skipped.
+     */
+    private CompletableFuture<?> resolveNodeClasses(List<PendingNode> batch) {
+        List<NodeId> nodeIds = batch.stream().map(p -> p.nodeId).collect(Collectors.toList());
+        return send(TransformerMetrics.Service.READ, () -> NodeAttributes.readNodeClasses(client, nodeIds)).thenAccept(nodeClasses -> {
+            for (PendingNode p : batch) {
+                NodeClass nodeClass = nodeClasses.get(p.nodeId);
+                if (nodeClass == null || nodeClass == NodeClass.Unspecified) {
+                    logger.info("unable to read the NodeClass of " + p.nodeId.toParseableString() + ". Skipping.");
+                } else {
+                    readQueue.add(new PendingNode(p.nodeId, nodeClass, p.depth));
+                }
+            }
+        }).exceptionally(ex -> {
+            logger.error("read of the NodeClass of " + batch.size() + " nodes failed: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<?> readNodes(List<PendingNode> batch) {
+        List<ReadValueId> readValueIds = new ArrayList<>();
+        batch.forEach(p -> readValueIds.addAll(NodeAttributes.readValueIds(p.nodeId, p.nodeClass)));
+        return send(TransformerMetrics.Service.READ, () -> client.read(0.0, TimestampsToReturn.Both, readValueIds)).thenAccept(response -> {
+            List<DataValue> values = response.getResults() == null ? List.of() : Arrays.asList(response.getResults());
+            if (values.size() != readValueIds.size()) {
+                logger.error("read of " + readValueIds.size() + " attributes returned " + values.size() + " results");
+            }
+            int offset = 0;
+            for (PendingNode p : batch) {
+                int size = NodeAttributes.of(p.nodeClass).size();
+                if (offset + size > values.size()) {
+                    logger.info("no attributes returned for node " + p.nodeId.toParseableString() + ". Skipping.");
+                    continue;
+                }
+                try {
+                    p.node = NodeAttributes.createNode(client, p.nodeId, p.nodeClass, values.subList(offset, offset + size));
+                    browseQueue.add(p);
+                } catch (UaException e) {
+                    logger.info("unable to fetch node " + p.nodeId.toParseableString() + ". Skipping.");
+                }
+                offset += size;
+            }
+        }).exceptionally(ex -> {
+            logger.error("read of " + batch.size() + " nodes failed: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<?> browseNodes(List<PendingNode> batch) {
+        int mask = scope.getNodeClassMask();
+        List<BrowseDescription> descriptions = new ArrayList<>(batch.size() * descriptionsPerNode());
+        batch.forEach(p -> {
+            scope.getReferenceTypes().forEach(type -> descriptions.add(BatchBrowser.forward(p.nodeId, type, true, mask)));
+            if (referenceTypes == null) {
+                descriptions.add(BatchBrowser.forward(p.nodeId, Identifiers.HierarchicalReferences, true, mask));
+            }
+        });
+        return browser.browse(descriptions).thenAccept(results -> {
+            int stride = descriptionsPerNode();
+            int types = scope.getReferenceTypes().size();
+            int discovered = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                PendingNode p = batch.get(i);
+                List<ReferenceDescription> references = CrawlScope.merge(results.subList(stride * i, stride * i + types));
+                if (p.node != null) {
+                    nodeMap.put(p.node, references);
+                    discovered++;
+                } else if (!p.redescend) {
+                    keepReferencesFromKnownNode(p, references);
+                }
+                browsed.add(p.nodeId);
+                int depth = depths.get(p.nodeId);
+                if (!descend || !scope.descendsFrom(depth)) {
+                    continue;
+                }
+                if (referenceTypes == null) {
+                    List<ReferenceDescription> hierarchical = results.get(stride * i + types);
+                    (scope.isAllReferenceTypes() ? hierarchical : CrawlScope.retain(hierarchical, references))
+                            .forEach(r -> discover(r, depth + 1));
+                } else {
+                    references.stream()
+                            .filter(r -> r.getIsForward() && referenceTypes.isHierarchical(r.getReferenceTypeId()))
+                            .forEach(r -> discover(r, depth + 1));
+                }
+            }
+            if (metrics != null) {
+                metrics.nodesDiscovered(discovered);
+            }
+        }).exceptionally(ex -> {
+            logger.error("browse of " + batch.size() + " nodes failed: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Remote targets are skipped, local ones reported without a NodeClass are resolved first. With a maximum depth, a
+     * node reached again on a shorter path gets the smaller depth, and its children are discovered again if it has
+     * been browsed already, so the nodes within the depth do not depend on the order the responses arrive in.
+     */
+    private void discover(ReferenceDescription reference, int depth) {
+        reference.getNodeId().local(nst).filter(inScope).ifPresent(target -> {
+            Integer previous = depths.putIfAbsent(target, depth);
+            if (previous == null) {
+                PendingNode p = new PendingNode(target, reference.getNodeClass(), depth);
+                if (p.nodeClass == NodeClass.Unspecified && !knownNodes.containsKey(target)) {
+                    resolveQueue.add(p);
+                } else {
+                    enqueue(p);
+                }
+            } else if (scope.getMaxDepth() < Integer.MAX_VALUE && lower(target, depth) && browsed.contains(target)) {
+                browse(new PendingNode(target, reference.getNodeClass(), depth, true));
+            }
+        });
+    }
+
+    private boolean lower(NodeId nodeId, int depth) {
+        while (true) {
+            int current = depths.get(nodeId);
+            if (depth >= current) {
+                return false;
+            }
+            if (depths.replace(nodeId, current, depth)) {
+                return true;
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> send(TransformerMetrics.Service service, Supplier<CompletableFuture<T>> request) {
+        return metrics != null ? metrics.request(service, request) : request.get();
+    }
+
+    /**
+     * Known nodes skip the read and are browsed right away.
+     */
+    private void enqueue(PendingNode p) {
+        if (knownNodes.containsKey(p.nodeId)) {
+            browse(p);
+        } else {
+            readQueue.add(p);
+        }
+    }
+
+    /**
+     * Queues the node for browsing, or takes the references of a known node from the scope without a request.
+     */
+    private void browse(PendingNode p) {
+        KnownNode known = knownNodes.get(p.nodeId);
+        if (!scope.usesReferencesOf(known)) {
+            browseQueue.add(p);
+            return;
+        }
+        if (!p.redescend) {
+            keepReferencesFromKnownNode(p, known.getReferences());
+        }
+        browsed.add(p.nodeId);
+        int depth = depths.get(p.nodeId);
+        if (descend && scope.descendsFrom(depth)) {
+            known.getChildren().forEach(r -> discover(r, depth + 1));
+        }
+    }
+
+    private void keepReferencesFromKnownNode(PendingNode p, List<ReferenceDescription> references) {
+        NodeClass nodeClass = knownNodes.get(p.nodeId).getNodeClass();
+        references.forEach(r -> r.getNodeId().toNodeId(nst).ifPresent(target -> {
+            if (!knownNodes.containsKey(target)) {
+                fromKnownNodes.computeIfAbsent(target, t -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(CrawlScope.inverse(p.nodeId, nodeClass, r));
+            }
+        }));
+    }
+
+    /**
+     * One description per reference type of the scope. Without a ReferenceTypeTree every node is browsed a second time
+     * for HierarchicalReferences only.
+     */
+    private int descriptionsPerNode() {
+        return scope.getReferenceTypes().size() + (referenceTypes == null ? 1 : 0);
+    }
+
+    private static class PendingNode {
+        final NodeId nodeId;
+        final NodeClass nodeClass;
+        final int depth;
+        final boolean redescend;
+        UaNode node;
+
+        PendingNode(NodeId nodeId, NodeClass nodeClass, int depth) {
+            this(nodeId, nodeClass, depth, false);
+        }
+
+        PendingNode(NodeId nodeId, NodeClass nodeClass, int depth, boolean redescend) {
+            this.nodeId = nodeId;
+            this.nodeClass = nodeClass;
+            this.depth = depth;
+            this.redescend = redescend;
+        }
+    }
+}
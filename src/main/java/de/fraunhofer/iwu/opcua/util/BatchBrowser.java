@@ -0,0 +1,139 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.OpcUaSession;
+import org.eclipse.milo.opcua.stack.client.UaStackClient;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseResultMask;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.ViewDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Sends several BrowseDescriptions in one BrowseRequest and follows BrowseNext continuation points until every
+ * description is complete. Results are returned in the order of the descriptions.
+ */
+public class BatchBrowser {
+
+    private static final ViewDescription DEFAULT_VIEW = new ViewDescription(NodeId.NULL_VALUE, DateTime.MIN_VALUE, uint(0));
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final OpcUaClient client;
+    private final UaStackClient stackClient;
+    private final OpcUaSession session;
+    private final TransformerMetrics metrics;
+
+    public BatchBrowser(OpcUaClient client) {
+        this(client, null);
+    }
+
+    /**
+     * @param metrics if given, the Browse and BrowseNext requests are recorded in it
+     */
+    public BatchBrowser(OpcUaClient client, TransformerMetrics metrics) {
+        this.client = client;
+        this.stackClient = null;
+        this.session = null;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Browses in the given session, e.g. from a SessionInitializer while the client is not connected yet.
+     */
+    public BatchBrowser(UaStackClient stackClient, OpcUaSession session) {
+        this.client = null;
+        this.stackClient = stackClient;
+        this.session = session;
+        this.metrics = null;
+    }
+
+    public static BrowseDescription forward(NodeId nodeId, NodeId referenceType, boolean includeSubtypes, int nodeClassMask) {
+        return new BrowseDescription(nodeId, BrowseDirection.Forward, referenceType, includeSubtypes,
+                uint(nodeClassMask), uint(BrowseResultMask.All.getValue()));
+    }
+
+    public static BrowseDescription inverse(NodeId nodeId, NodeId referenceType, boolean includeSubtypes, int nodeClassMask) {
+        return new BrowseDescription(nodeId, BrowseDirection.Inverse, referenceType, includeSubtypes,
+                uint(nodeClassMask), uint(BrowseResultMask.All.getValue()));
+    }
+
+    public CompletableFuture<List<List<ReferenceDescription>>> browse(List<BrowseDescription> descriptions) {
+        if (descriptions.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return send(TransformerMetrics.Service.BROWSE, () -> browseRequest(descriptions))
+                .thenCompose(response -> followContinuationPoints(Arrays.asList(response.getResults())));
+    }
+
+    private CompletableFuture<List<List<ReferenceDescription>>> followContinuationPoints(List<BrowseResult> results) {
+        List<List<ReferenceDescription>> references = new ArrayList<>(results.size());
+        List<Integer> continued = new ArrayList<>();
+        List<ByteString> continuationPoints = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            BrowseResult result = results.get(i);
+            if (result.getStatusCode().isBad()) {
+                logger.info("browse returned " + result.getStatusCode() + ". Skipping references.");
+                references.add(Collections.emptyList());
+                continue;
+            }
+            references.add(result.getReferences() == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(result.getReferences())));
+            ByteString cp = result.getContinuationPoint();
+            if (cp != null && cp.isNotNull() && cp.length() > 0) {
+                continued.add(i);
+                continuationPoints.add(cp);
+            }
+        }
+        if (continuationPoints.isEmpty()) {
+            return CompletableFuture.completedFuture(references);
+        }
+        return send(TransformerMetrics.Service.BROWSE_NEXT, () -> browseNextRequest(continuationPoints))
+                .thenCompose(next -> followContinuationPoints(Arrays.asList(next.getResults())))
+                .thenApply(nextReferences -> {
+                    for (int i = 0; i < continued.size(); i++) {
+                        references.get(continued.get(i)).addAll(nextReferences.get(i));
+                    }
+                    return references;
+                });
+    }
+
+    private CompletableFuture<BrowseResponse> browseRequest(List<BrowseDescription> descriptions) {
+        if (client != null) {
+            return client.browse(DEFAULT_VIEW, uint(0), descriptions);
+        }
+        BrowseRequest request = new BrowseRequest(stackClient.newRequestHeader(session.getAuthenticationToken()),
+                DEFAULT_VIEW, uint(0), descriptions.toArray(new BrowseDescription[0]));
+        return stackClient.sendRequest(request).thenApply(BrowseResponse.class::cast);
+    }
+
+    private CompletableFuture<BrowseNextResponse> browseNextRequest(List<ByteString> continuationPoints) {
+        if (client != null) {
+            return client.browseNext(false, continuationPoints);
+        }
+        BrowseNextRequest request = new BrowseNextRequest(stackClient.newRequestHeader(session.getAuthenticationToken()),
+                false, continuationPoints.toArray(new ByteString[0]));
+        return stackClient.sendRequest(request).thenApply(BrowseNextResponse.class::cast);
+    }
+
+    private <T> CompletableFuture<T> send(TransformerMetrics.Service service, Supplier<CompletableFuture<T>> request) {
+        return metrics != null ? metrics.request(service, request) : request.get();
+    }
+}
@@ -0,0 +1,255 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamEncoder;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Browse result of a server saved in OPC UA binary encoding, so that a restart can skip the crawl. Per node the
+ * attributes of {@link NodeAttributes#of(NodeClass)} and the ReferenceDescriptions are stored. The file starts with
+ * the {@link Key} of the server it was taken from; a snapshot is only loaded while the server still has the same key.
+ * Snapshots are written to a temporary file first and moved into place, and loaded memory-mapped.
+ */
+public class BrowseSnapshot {
+
+    private static final int MAGIC = 0x55415253;
+    private static final int VERSION = 1;
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+    private static final ReferenceDescription.Codec REFERENCE_CODEC = new ReferenceDescription.Codec();
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final OpcUaClient client;
+    private final Path file;
+    private final Key key;
+
+    public BrowseSnapshot(OpcUaClient client, Path file, Key key) {
+        this.client = client;
+        this.file = file;
+        this.key = key;
+    }
+
+    /**
+     * Snapshot of the connected server in the given directory, named after its ApplicationUri.
+     */
+    public static BrowseSnapshot inDirectory(OpcUaClient client, Path directory) throws ExecutionException, InterruptedException {
+        Key key = Key.read(client);
+        return new BrowseSnapshot(client, directory.resolve(key.getFileName()), key);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * Loads the snapshot if it exists and was taken from a server with the same key. A missing, stale or unreadable
+     * snapshot yields an empty result.
+     */
+    public Optional<Map<UaNode, List<ReferenceDescription>>> load() {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            OpcUaBinaryStreamDecoder decoder = new OpcUaBinaryStreamDecoder(client.getStaticSerializationContext());
+            decoder.setBuffer(Unpooled.wrappedBuffer(mapped));
+            if (decoder.readInt32() != MAGIC || decoder.readInt32() != VERSION) {
+                logger.info("ignoring snapshot " + file + " of an unknown format");
+                return Optional.empty();
+            }
+            Key stored = Key.decode(decoder);
+            if (!key.equals(stored)) {
+                logger.info("ignoring stale snapshot " + file + ": " + stored + " does not match " + key);
+                return Optional.empty();
+            }
+            int size = decoder.readInt32();
+            Map<UaNode, List<ReferenceDescription>> nodeRefMap = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                NodeId nodeId = decoder.readNodeId();
+                NodeClass nodeClass = NodeClass.from(decoder.readInt32());
+                int attributes = NodeAttributes.of(nodeClass).size();
+                List<DataValue> values = new ArrayList<>(attributes);
+                values.add(new DataValue(new Variant(nodeId), StatusCode.GOOD, null, null));
+                values.add(new DataValue(new Variant(nodeClass.getValue()), StatusCode.GOOD, null, null));
+                for (int a = 2; a < attributes; a++) {
+                    values.add(decoder.readDataValue());
+                }
+                int referenceCount = decoder.readInt32();
+                List<ReferenceDescription> references = new ArrayList<>(referenceCount);
+                for (int r = 0; r < referenceCount; r++) {
+                    references.add(REFERENCE_CODEC.decode(client.getStaticSerializationContext(), decoder));
+                }
+                nodeRefMap.put(NodeAttributes.createNode(client, nodeId, nodeClass, values), references);
+            }
+            logger.info("loaded " + size + " nodes from snapshot " + file);
+            return Optional.of(nodeRefMap);
+        } catch (Exception e) {
+            logger.error("unable to load snapshot " + file + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void save(Map<? extends UaNode, List<ReferenceDescription>> nodeRefMap) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        ByteBuf buffer = Unpooled.buffer(FLUSH_THRESHOLD + (FLUSH_THRESHOLD >> 2));
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OpcUaBinaryStreamEncoder encoder = new OpcUaBinaryStreamEncoder(client.getStaticSerializationContext());
+            encoder.setBuffer(buffer);
+            encoder.writeInt32(MAGIC);
+            encoder.writeInt32(VERSION);
+            key.encode(encoder);
+            encoder.writeInt32(nodeRefMap.size());
+            for (Map.Entry<? extends UaNode, List<ReferenceDescription>> entry : nodeRefMap.entrySet()) {
+                List<DataValue> values = NodeAttributes.values(entry.getKey());
+                encoder.writeNodeId(entry.getKey().getNodeId());
+                encoder.writeInt32(entry.getKey().getNodeClass().getValue());
+                for (int a = 2; a < values.size(); a++) {
+                    encoder.writeDataValue(values.get(a));
+                }
+                encoder.writeInt32(entry.getValue().size());
+                for (ReferenceDescription reference : entry.getValue()) {
+                    REFERENCE_CODEC.encode(client.getStaticSerializationContext(), encoder, reference);
+                }
+                if (buffer.readableBytes() >= FLUSH_THRESHOLD) {
+                    drain(buffer, channel);
+                }
+            }
+            drain(buffer, channel);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        } finally {
+            buffer.release();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("saved " + nodeRefMap.size() + " nodes to snapshot " + file);
+    }
+
+    private static void drain(ByteBuf buffer, FileChannel channel) throws IOException {
+        while (buffer.isReadable()) {
+            buffer.readBytes(channel, buffer.readableBytes());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Identity of a server's address space: ApplicationUri, NamespaceArray, the StartTime of the server and its
+     * software version and build number. OPC UA defines no general model version counter, so a snapshot is
+     * considered current until the server restarts or is updated; changes at runtime are covered by the incremental
+     * mode.
+     */
+    public static class Key {
+        private final String applicationUri;
+        private final String[] namespaces;
+        private final DateTime startTime;
+        private final String softwareVersion;
+        private final String buildNumber;
+
+        public Key(String applicationUri, String[] namespaces, DateTime startTime, String softwareVersion, String buildNumber) {
+            this.applicationUri = applicationUri;
+            this.namespaces = namespaces;
+            this.startTime = startTime;
+            this.softwareVersion = softwareVersion;
+            this.buildNumber = buildNumber;
+        }
+
+        public static Key read(OpcUaClient client) throws ExecutionException, InterruptedException {
+            List<DataValue> values = client.readValues(0.0, TimestampsToReturn.Neither, List.of(
+                    Identifiers.Server_ServerArray,
+                    Identifiers.Server_NamespaceArray,
+                    Identifiers.Server_ServerStatus_StartTime,
+                    Identifiers.Server_ServerStatus_BuildInfo_SoftwareVersion,
+                    Identifiers.Server_ServerStatus_BuildInfo_BuildNumber)).get();
+            String[] servers = get(values.get(0), String[].class);
+            String applicationUri = servers != null && servers.length > 0 ? servers[0]
+                    : client.getConfig().getEndpoint().getServer().getApplicationUri();
+            return new Key(applicationUri, get(values.get(1), String[].class), get(values.get(2), DateTime.class),
+                    get(values.get(3), String.class), get(values.get(4), String.class));
+        }
+
+        private static <T> T get(DataValue value, Class<T> clazz) {
+            Object o = value.getValue().getValue();
+            return value.getStatusCode() != null && value.getStatusCode().isGood() && clazz.isInstance(o) ? clazz.cast(o) : null;
+        }
+
+        static Key decode(OpcUaBinaryStreamDecoder decoder) {
+            return new Key(decoder.readString(), decoder.readStringArray(null), decoder.readDateTime(),
+                    decoder.readString(), decoder.readString());
+        }
+
+        void encode(OpcUaBinaryStreamEncoder encoder) {
+            encoder.writeString(applicationUri);
+            encoder.writeStringArray(null, namespaces);
+            encoder.writeDateTime(startTime);
+            encoder.writeString(softwareVersion);
+            encoder.writeString(buildNumber);
+        }
+
+        public String getApplicationUri() {
+            return applicationUri;
+        }
+
+        public DateTime getStartTime() {
+            return startTime;
+        }
+
+        public String getFileName() {
+            String uri = applicationUri != null ? applicationUri : "";
+            return UUID.nameUUIDFromBytes(uri.getBytes(StandardCharsets.UTF_8)) + ".snapshot";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(applicationUri, other.applicationUri) && Arrays.equals(namespaces, other.namespaces)
+                    && Objects.equals(startTime, other.startTime) && Objects.equals(softwareVersion, other.softwareVersion)
+                    && Objects.equals(buildNumber, other.buildNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(applicationUri, Arrays.hashCode(namespaces), startTime, softwareVersion, buildNumber);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{applicationUri=" + applicationUri + ", namespaces=" + Arrays.toString(namespaces)
+                    + ", startTime=" + startTime + ", softwareVersion=" + softwareVersion + ", buildNumber=" + buildNumber + "}";
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+public class CrawlConfig {
+
+    public enum Mode {
+        SEQUENTIAL,
+        PIPELINED
+    }
+
+    private final Mode mode;
+    private final int maxRequestsInFlight;
+    private final int nodesPerBrowse;
+    private final int maxNodesPerRead;
+    private final boolean singleBrowse;
+    private final Path snapshotDirectory;
+    private final Path dataTypeCacheDirectory;
+    private final CrawlScope scope;
+    private final MeterRegistry meterRegistry;
+
+    private CrawlConfig(Builder builder) {
+        this.mode = builder.mode;
+        this.maxRequestsInFlight = builder.maxRequestsInFlight;
+        this.nodesPerBrowse = builder.nodesPerBrowse;
+        this.maxNodesPerRead = builder.maxNodesPerRead;
+        this.singleBrowse = builder.singleBrowse;
+        this.snapshotDirectory = builder.snapshotDirectory;
+        this.dataTypeCacheDirectory = builder.dataTypeCacheDirectory;
+        this.scope = builder.scope;
+        this.meterRegistry = builder.meterRegistry;
+    }
+
+    public static CrawlConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getMaxRequestsInFlight() {
+        return maxRequestsInFlight;
+    }
+
+    public int getNodesPerBrowse() {
+        return nodesPerBrowse;
+    }
+
+    public int getMaxNodesPerRead() {
+        return maxNodesPerRead;
+    }
+
+    public boolean isSingleBrowse() {
+        return singleBrowse;
+    }
+
+    public Path getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    public Path getDataTypeCacheDirectory() {
+        return dataTypeCacheDirectory;
+    }
+
+    public CrawlScope getScope() {
+        return scope;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    public static class Builder {
+        private Mode mode = Mode.SEQUENTIAL;
+        private int maxRequestsInFlight = 8;
+        private int nodesPerBrowse = 100;
+        private int maxNodesPerRead = 1000;
+        private boolean singleBrowse = false;
+        private Path snapshotDirectory;
+        private Path dataTypeCacheDirectory;
+        private CrawlScope scope = CrawlScope.all();
+        private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+        public Builder setMode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder setMaxRequestsInFlight(int maxRequestsInFlight) {
+            if (maxRequestsInFlight < 1) {
+                throw new IllegalArgumentException("maxRequestsInFlight must be positive: " + maxRequestsInFlight);
+            }
+            this.maxRequestsInFlight = maxRequestsInFlight;
+            return this;
+        }
+
+        public Builder setNodesPerBrowse(int nodesPerBrowse) {
+            if (nodesPerBrowse < 1) {
+                throw new IllegalArgumentException("nodesPerBrowse must be positive: " + nodesPerBrowse);
+            }
+            this.nodesPerBrowse = nodesPerBrowse;
+            return this;
+        }
+
+        /**
+         * Upper bound for the attribute reads (node/attribute pairs) in one ReadRequest. The server's
+         * MaxNodesPerRead is applied on top if it announces a lower one.
+         */
+        public Builder setMaxNodesPerRead(int maxNodesPerRead) {
+            if (maxNodesPerRead < 1) {
+                throw new IllegalArgumentException("maxNodesPerRead must be positive: " + maxNodesPerRead);
+            }
+            this.maxNodesPerRead = maxNodesPerRead;
+            return this;
+        }
+
+        /**
+         * Browse each node once with all references and pick the hierarchical ones locally from the server's
+         * ReferenceType hierarchy, read once per crawl, instead of browsing HierarchicalReferences a second time.
+         * Off by default, which browses every node twice as before.
+         */
+        public Builder setSingleBrowse(boolean singleBrowse) {
+            this.singleBrowse = singleBrowse;
+            return this;
+        }
+
+        /**
+         * Directory the browse result is saved to as a {@link BrowseSnapshot}, one file per server. As long as the
+         * identity of the server is unchanged, later starts load the snapshot instead of crawling. {@code null}
+         * (the default) always crawls.
+         */
+        public Builder setSnapshotDirectory(Path snapshotDirectory) {
+            this.snapshotDirectory = snapshotDirectory;
+            return this;
+        }
+
+        /**
+         * Directory the DataTypeTree and data type dictionaries are cached in as a {@link DataTypeCache}, one file
+         * per server. Sessions of servers with the same ApplicationUri, NamespaceArray and dictionary versions load
+         * them from there instead of browsing and downloading them. {@code null} (the default) reads them on every
+         * connect.
+         */
+        public Builder setDataTypeCacheDirectory(Path dataTypeCacheDirectory) {
+            this.dataTypeCacheDirectory = dataTypeCacheDirectory;
+            return this;
+        }
+
+        /**
+         * Part of the address space to crawl, the whole address space by default. Snapshots are only used for the
+         * whole address space.
+         */
+        public Builder setScope(CrawlScope scope) {
+            this.scope = Objects.requireNonNull(scope);
+            return this;
+        }
+
+        /**
+         * Registry the {@link TransformerMetrics} of the crawl and its transformation are registered in, Micrometer's
+         * global registry by default. Without a registry added to the global one, the meters record nothing.
+         */
+        public Builder setMeterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = Objects.requireNonNull(meterRegistry);
+            return this;
+        }
+
+        public CrawlConfig build() {
+            return new CrawlConfig(this);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Part of the address space a crawl covers. The crawl starts at the start nodes and follows hierarchical references
+ * up to the maximum depth, the start nodes having depth 0.
+ * <p>
+ * Reference types and NodeClasses are passed to the server in the BrowseDescriptions: only references of the given
+ * types (and their subtypes) to nodes of the given NodeClasses are returned, recorded and followed. Namespace filters
+ * and depth are evaluated by the crawler before a node is read: nodes outside the namespaces are neither read nor
+ * browsed, though references to them are kept. Start nodes are always crawled.
+ * <p>
+ * Known nodes, e.g. the standard nodes of namespace 0 loaded from a precomputed graph, are neither read nor returned.
+ * Their references are taken from the graph; only those servers may attach their own nodes to, like folders and types,
+ * are browsed as well. References of known nodes to nodes that are not known are attached to those nodes as inverse
+ * references, so links like ObjectsFolder to a machine are kept.
+ */
+public class CrawlScope {
+
+    private static final CrawlScope ALL = builder().build();
+
+    private final List<NodeId> startNodes;
+    private final int maxDepth;
+    private final Set<String> includedNamespaces;
+    private final Set<String> excludedNamespaces;
+    private final int nodeClassMask;
+    private final List<NodeId> referenceTypes;
+    private final Map<NodeId, KnownNode> knownNodes;
+
+    private CrawlScope(Builder builder) {
+        this.startNodes = List.copyOf(builder.startNodes);
+        this.maxDepth = builder.maxDepth;
+        this.includedNamespaces = Set.copyOf(builder.includedNamespaces);
+        this.excludedNamespaces = Set.copyOf(builder.excludedNamespaces);
+        this.nodeClassMask = builder.nodeClassMask;
+        this.referenceTypes = List.copyOf(builder.referenceTypes);
+        this.knownNodes = builder.knownNodes;
+    }
+
+    /**
+     * The whole address space below the RootFolder.
+     */
+    public static CrawlScope all() {
+        return ALL;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<NodeId> getStartNodes() {
+        return startNodes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public Set<String> getIncludedNamespaces() {
+        return includedNamespaces;
+    }
+
+    public Set<String> getExcludedNamespaces() {
+        return excludedNamespaces;
+    }
+
+    /**
+     * NodeClassMask of the BrowseDescriptions, 0 for all NodeClasses.
+     */
+    public int getNodeClassMask() {
+        return nodeClassMask;
+    }
+
+    public List<NodeId> getReferenceTypes() {
+        return referenceTypes;
+    }
+
+    public Map<NodeId, KnownNode> getKnownNodes() {
+        return knownNodes;
+    }
+
+    /**
+     * Whether the references of a known node are taken as they are instead of browsing it. Nodes servers attach
+     * their own nodes to are browsed, and so are all known nodes if the scope filters references by type or NodeClass,
+     * as only the server resolves the subtypes.
+     */
+    public boolean usesReferencesOf(KnownNode known) {
+        return known != null && !known.isBrowsed() && isAllReferenceTypes() && nodeClassMask == 0;
+    }
+
+    /**
+     * Whether references of all types are browsed.
+     */
+    public boolean isAllReferenceTypes() {
+        return referenceTypes.equals(List.of(Identifiers.References));
+    }
+
+    /**
+     * Whether nodes at the given depth are followed to their children.
+     */
+    public boolean descendsFrom(int depth) {
+        return depth < maxDepth;
+    }
+
+    /**
+     * Filter over NodeIds by the namespace filters, resolved against the NamespaceArray of a server. Namespaces the
+     * server does not know are ignored.
+     */
+    public Predicate<NodeId> namespaceFilter(NamespaceTable namespaces) {
+        if (includedNamespaces.isEmpty() && excludedNamespaces.isEmpty()) {
+            return n -> true;
+        }
+        Set<Integer> included = indices(includedNamespaces, namespaces);
+        Set<Integer> excluded = indices(excludedNamespaces, namespaces);
+        return n -> {
+            int index = n.getNamespaceIndex().intValue();
+            return (includedNamespaces.isEmpty() || included.contains(index)) && !excluded.contains(index);
+        };
+    }
+
+    /**
+     * References in {@code hierarchical} that are part of {@code references} as well, matched by type and target. Used
+     * when hierarchical references are browsed separately but the scope restricts the reference types.
+     */
+    static List<ReferenceDescription> retain(List<ReferenceDescription> hierarchical, List<ReferenceDescription> references) {
+        Set<List<Object>> keys = new HashSet<>();
+        references.forEach(r -> keys.add(List.of(r.getReferenceTypeId(), r.getNodeId())));
+        List<ReferenceDescription> retained = new ArrayList<>();
+        hierarchical.forEach(r -> {
+            if (keys.contains(List.of(r.getReferenceTypeId(), r.getNodeId()))) {
+                retained.add(r);
+            }
+        });
+        return retained;
+    }
+
+    /**
+     * Concatenates the references browsed per reference type, dropping those returned for more than one type.
+     */
+    static List<ReferenceDescription> merge(List<List<ReferenceDescription>> perType) {
+        if (perType.size() == 1) {
+            return perType.get(0);
+        }
+        Set<List<Object>> keys = new HashSet<>();
+        List<ReferenceDescription> merged = new ArrayList<>();
+        perType.forEach(references -> references.forEach(r -> {
+            if (keys.add(List.of(r.getReferenceTypeId(), r.getIsForward(), r.getNodeId()))) {
+                merged.add(r);
+            }
+        }));
+        return merged;
+    }
+
+    /**
+     * The reference as seen from its target: an inverse reference of the same type back to the source.
+     */
+    static ReferenceDescription inverse(NodeId source, NodeClass sourceClass, ReferenceDescription reference) {
+        return new ReferenceDescription(reference.getReferenceTypeId(), !reference.getIsForward(), source.expanded(),
+                QualifiedName.NULL_VALUE, LocalizedText.NULL_VALUE, sourceClass, ExpandedNodeId.NULL_VALUE);
+    }
+
+    /**
+     * Adds the references collected from known nodes to the nodes they point to, if those were crawled.
+     */
+    static void attach(Map<UaNode, List<ReferenceDescription>> nodeMap, Map<NodeId, List<ReferenceDescription>> fromKnownNodes) {
+        if (fromKnownNodes.isEmpty()) {
+            return;
+        }
+        nodeMap.replaceAll((node, references) -> {
+            List<ReferenceDescription> inverse = fromKnownNodes.get(node.getNodeId());
+            if (inverse == null) {
+                return references;
+            }
+            List<ReferenceDescription> all = new ArrayList<>(references);
+            all.addAll(inverse);
+            return all;
+        });
+    }
+
+    private static Set<Integer> indices(Set<String> uris, NamespaceTable namespaces) {
+        Set<Integer> indices = new HashSet<>();
+        uris.forEach(uri -> {
+            if (namespaces.getIndex(uri) != null) {
+                indices.add(namespaces.getIndex(uri).intValue());
+            }
+        });
+        return indices;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CrawlScope)) {
+            return false;
+        }
+        CrawlScope other = (CrawlScope) o;
+        return maxDepth == other.maxDepth && nodeClassMask == other.nodeClassMask && startNodes.equals(other.startNodes)
+                && includedNamespaces.equals(other.includedNamespaces) && excludedNamespaces.equals(other.excludedNamespaces)
+                && referenceTypes.equals(other.referenceTypes) && knownNodes.equals(other.knownNodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startNodes, maxDepth, includedNamespaces, excludedNamespaces, nodeClassMask, referenceTypes, knownNodes);
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlScope{startNodes=" + startNodes + ", maxDepth=" + maxDepth + ", includedNamespaces=" + includedNamespaces
+                + ", excludedNamespaces=" + excludedNamespaces + ", nodeClassMask=" + nodeClassMask + ", referenceTypes=" + referenceTypes + ", knownNodes=" + knownNodes.size() + "}";
+    }
+
+    public static class Builder {
+        private List<NodeId> startNodes = List.of(Identifiers.RootFolder);
+        private int maxDepth = Integer.MAX_VALUE;
+        private final Set<String> includedNamespaces = new LinkedHashSet<>();
+        private final Set<String> excludedNamespaces = new LinkedHashSet<>();
+        private int nodeClassMask = 0;
+        private List<NodeId> referenceTypes = List.of(Identifiers.References);
+        private Map<NodeId, KnownNode> knownNodes = Map.of();
+
+        public Builder setStartNodes(NodeId... startNodes) {
+            if (startNodes.length == 0) {
+                throw new IllegalArgumentException("startNodes must not be empty");
+            }
+            this.startNodes = List.of(startNodes);
+            return this;
+        }
+
+        public Builder setMaxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("maxDepth must not be negative, was " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Only nodes in these namespaces are crawled. Can be called several times.
+         */
+        public Builder includeNamespaces(String... namespaceUris) {
+            Collections.addAll(includedNamespaces, namespaceUris);
+            return this;
+        }
+
+        /**
+         * Nodes in these namespaces are not crawled. Can be called several times.
+         */
+        public Builder excludeNamespaces(String... namespaceUris) {
+            Collections.addAll(excludedNamespaces, namespaceUris);
+            return this;
+        }
+
+        /**
+         * Only references to nodes of these NodeClasses are browsed. No NodeClass (the default) means all.
+         */
+        public Builder setNodeClasses(NodeClass... nodeClasses) {
+            int mask = 0;
+            for (NodeClass nodeClass : nodeClasses) {
+                mask |= nodeClass.getValue();
+            }
+            this.nodeClassMask = mask;
+            return this;
+        }
+
+        /**
+         * Only references of these types and their subtypes are browsed, by default References, i.e. all.
+         */
+        public Builder setReferenceTypes(NodeId... referenceTypes) {
+            if (referenceTypes.length == 0) {
+                throw new IllegalArgumentException("referenceTypes must not be empty");
+            }
+            this.referenceTypes = List.of(referenceTypes);
+            return this;
+        }
+
+        /**
+         * Nodes whose attributes and references are already known, e.g. {@code StandardGraph#getKnownNodes()}.
+         */
+        public Builder setKnownNodes(Map<NodeId, KnownNode> knownNodes) {
+            this.knownNodes = Map.copyOf(knownNodes);
+            return this;
+        }
+
+        public CrawlScope build() {
+            return new CrawlScope(this);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.milo.opcua.binaryschema.parser.BsdParser;
+import org.eclipse.milo.opcua.binaryschema.parser.CodecDescription;
+import org.eclipse.milo.opcua.binaryschema.parser.DictionaryDescription;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeBuilder;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import org.eclipse.milo.opcua.sdk.client.OpcUaSession;
+import org.eclipse.milo.opcua.sdk.client.session.SessionFsm;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.client.UaStackClient;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.OpcUaBinaryStreamEncoder;
+import org.eclipse.milo.opcua.stack.core.types.OpcUaBinaryDataTypeDictionary;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.milo.opcua.stack.core.util.Tree;
+import org.eclipse.milo.opcua.stack.core.util.Unit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * DataTypeTree and OPC Binary data type dictionaries of a server saved to disk, so that later sessions neither browse
+ * the DataType hierarchy nor download the dictionaries. Registered as SessionInitializer in place of
+ * {@link DataTypeTreeSessionInitializer} and the DataTypeDictionarySessionInitializer: the tree is stored as the same
+ * session attribute and the dictionaries are registered with the client's dynamic DataTypeManager.
+ * <p>
+ * Entries are keyed by the ApplicationUri, the NamespaceArray and the NodeVersion of every dictionary. Dictionaries
+ * without NodeVersion are downloaded to compare a hash of their content, the rest of the work is still skipped.
+ */
+public class DataTypeCache implements SessionFsm.SessionInitializer {
+
+    private static final int MAGIC = 0x55414454;
+    private static final int VERSION = 1;
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Path directory;
+    private final BsdParser parser;
+    private final TransformerMetrics metrics;
+    private volatile Entry entry;
+
+    public DataTypeCache(Path directory, BsdParser parser) {
+        this(directory, parser, null);
+    }
+
+    /**
+     * @param metrics if given, every session records whether its entry was loaded from the cache
+     */
+    public DataTypeCache(Path directory, BsdParser parser, TransformerMetrics metrics) {
+        this.directory = directory;
+        this.parser = parser;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads the data types for a new session, including the sessions the client creates when it reconnects. Errors
+     * are logged and leave the session without DataTypeTree and dictionaries.
+     */
+    @Override
+    public CompletableFuture<Unit> initialize(UaStackClient stackClient, OpcUaSession session) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                entry = new Loader(stackClient, session).apply();
+                if (metrics != null) {
+                    metrics.cacheLookups("dataTypes", entry.isCached() ? 1 : 0, entry.isCached() ? 0 : 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("unable to load the data types of the session: " + e.getMessage());
+            }
+            return Unit.VALUE;
+        });
+    }
+
+    /**
+     * Entry of the latest session, null before the first session or if it could not be loaded.
+     */
+    public Entry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Requests of one session, sent before the session is handed to the client.
+     */
+    private class Loader {
+        private final UaStackClient stackClient;
+        private final OpcUaSession session;
+        private final BatchBrowser browser;
+
+        Loader(UaStackClient stackClient, OpcUaSession session) {
+            this.stackClient = stackClient;
+            this.session = session;
+            this.browser = new BatchBrowser(stackClient, session);
+        }
+
+        /**
+         * Loads the entry of the server, from the cache if it is current and from the server otherwise, makes the
+         * DataTypeTree and dictionaries available to the session, and updates the cache.
+         */
+        Entry apply() throws ExecutionException, InterruptedException {
+            Map<NodeId, ByteString> downloaded = new HashMap<>();
+            Key key = readKey(downloaded);
+            Path file = directory.resolve(key.getFileName());
+            Entry loaded = load(file, key).orElse(null);
+            if (loaded == null) {
+                loaded = fetch(key, downloaded);
+                try {
+                    save(file, loaded);
+                } catch (IOException e) {
+                    logger.error("unable to save data types to " + file + ": " + e.getMessage());
+                }
+            }
+            session.setAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY, loaded.tree);
+            loaded.dictionaries.forEach(this::register);
+            return loaded;
+        }
+
+        private Key readKey(Map<NodeId, ByteString> downloaded) throws ExecutionException, InterruptedException {
+            List<DataValue> values = readValues(List.of(Identifiers.Server_ServerArray, Identifiers.Server_NamespaceArray));
+            String[] servers = get(values.get(0), String[].class);
+            String applicationUri = servers != null && servers.length > 0 ? servers[0]
+                    : stackClient.getConfig().getEndpoint().getServer().getApplicationUri();
+
+            // the structures of namespace 0 have builtin codecs, their dictionary is neither needed nor downloaded
+            List<NodeId> dictionaries = targets(browser.browse(List.of(BatchBrowser.forward(Identifiers.OPCBinarySchema_TypeSystem,
+                    Identifiers.HasComponent, true, NodeClass.Variable.getValue()))).get().get(0));
+            dictionaries.removeIf(d -> d.getNamespaceIndex().intValue() == 0);
+            List<BrowseDescription> properties = new ArrayList<>();
+            dictionaries.forEach(d -> properties.add(BatchBrowser.forward(d, Identifiers.HasProperty, true, NodeClass.Variable.getValue())));
+            List<List<ReferenceDescription>> results = browser.browse(properties).get();
+            Map<NodeId, NodeId> nodeVersions = new LinkedHashMap<>();
+            for (int i = 0; i < dictionaries.size(); i++) {
+                NodeId dictionary = dictionaries.get(i);
+                results.get(i).stream().filter(r -> r.getBrowseName().getName().equals("NodeVersion")).findFirst()
+                        .flatMap(r -> r.getNodeId().toNodeId(stackClient.getNamespaceTable()))
+                        .ifPresent(nodeVersion -> nodeVersions.put(dictionary, nodeVersion));
+            }
+            List<DataValue> versions = readValues(new ArrayList<>(nodeVersions.values()));
+            Map<String, String> dictionaryVersions = new TreeMap<>();
+            Iterator<DataValue> version = versions.iterator();
+            for (NodeId dictionary : dictionaries) {
+                String nodeVersion = nodeVersions.containsKey(dictionary) ? get(version.next(), String.class) : null;
+                if (nodeVersion == null || nodeVersion.isEmpty()) {
+                    ByteString bytes = readDictionary(dictionary);
+                    downloaded.put(dictionary, bytes);
+                    nodeVersion = "sha256:" + sha256(bytes);
+                }
+                dictionaryVersions.put(dictionary.toParseableString(), nodeVersion);
+            }
+            return new Key(applicationUri, get(values.get(1), String[].class), dictionaryVersions);
+        }
+
+        private Entry fetch(Key key, Map<NodeId, ByteString> downloaded) throws ExecutionException, InterruptedException {
+            DataTypeTree tree = DataTypeTreeBuilder.buildAsync(stackClient, session).get();
+            List<Dictionary> dictionaries = new ArrayList<>();
+            for (String id : key.dictionaryVersions.keySet()) {
+                NodeId nodeId = NodeId.parse(id);
+                ByteString bytes = downloaded.containsKey(nodeId) ? downloaded.get(nodeId) : readDictionary(nodeId);
+                dictionaries.add(new Dictionary(nodeId, bytes, readTypes(nodeId)));
+            }
+            logger.info("read DataTypeTree and " + dictionaries.size() + " dictionaries from " + key.applicationUri);
+            return new Entry(key, tree, dictionaries, false);
+        }
+
+        private ByteString readDictionary(NodeId dictionary) throws ExecutionException, InterruptedException {
+            DataValue value = readValues(List.of(dictionary)).get(0);
+            ByteString bytes = get(value, ByteString.class);
+            return bytes != null ? bytes : ByteString.NULL_VALUE;
+        }
+
+        /**
+         * DataTypeDescriptions of a dictionary with the encoding they describe and the DataType of the encoding.
+         */
+        private List<Type> readTypes(NodeId dictionary) throws ExecutionException, InterruptedException {
+            List<NodeId> descriptions = targets(browser.browse(List.of(BatchBrowser.forward(dictionary, Identifiers.HasComponent,
+                    true, NodeClass.Variable.getValue()))).get().get(0));
+            List<DataValue> names = readValues(descriptions);
+            List<BrowseDescription> toEncodings = new ArrayList<>();
+            descriptions.forEach(d -> toEncodings.add(BatchBrowser.inverse(d, Identifiers.HasDescription, false, NodeClass.Object.getValue())));
+            List<NodeId> encodings = new ArrayList<>();
+            browser.browse(toEncodings).get().forEach(references -> encodings.add(targets(references).stream().findFirst().orElse(null)));
+            List<BrowseDescription> toDataTypes = new ArrayList<>();
+            encodings.stream().filter(Objects::nonNull)
+                    .forEach(e -> toDataTypes.add(BatchBrowser.inverse(e, Identifiers.HasEncoding, false, NodeClass.DataType.getValue())));
+            Iterator<List<ReferenceDescription>> dataTypes = browser.browse(toDataTypes).get().iterator();
+
+            List<Type> types = new ArrayList<>();
+            for (int i = 0; i < descriptions.size(); i++) {
+                if (encodings.get(i) == null) {
+                    continue;
+                }
+                String name = get(names.get(i), String.class);
+                NodeId dataType = targets(dataTypes.next()).stream().findFirst().orElse(null);
+                if (name != null && dataType != null) {
+                    types.add(new Type(name, dataType, encodings.get(i)));
+                }
+            }
+            return types;
+        }
+
+        private void register(Dictionary dictionary) {
+            try {
+                DictionaryDescription description = parser.parse(new ByteArrayInputStream(dictionary.bytes.bytesOrEmpty()));
+                OpcUaBinaryDataTypeDictionary registered = new OpcUaBinaryDataTypeDictionary(description.getNamespaceUri());
+                Map<String, Type> types = new HashMap<>();
+                dictionary.types.forEach(t -> types.put(t.description, t));
+                for (CodecDescription codec : description.getEnumCodecs()) {
+                    registered.registerEnumCodec(codec.getCodec(), codec.getDescription());
+                }
+                for (CodecDescription codec : description.getStructCodecs()) {
+                    Type type = types.get(codec.getDescription());
+                    if (type != null) {
+                        registered.registerStructCodec(codec.getCodec(), codec.getDescription(), type.dataTypeId, type.encodingId);
+                    }
+                }
+                stackClient.getDynamicDataTypeManager().registerTypeDictionary(registered);
+            } catch (Exception e) {
+                logger.error("unable to register dictionary " + dictionary.nodeId.toParseableString() + ": " + e.getMessage());
+            }
+        }
+
+        private Optional<Entry> load(Path file, Key key) {
+            if (!Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+            try {
+                OpcUaBinaryStreamDecoder decoder = new OpcUaBinaryStreamDecoder(stackClient.getStaticSerializationContext());
+                decoder.setBuffer(Unpooled.wrappedBuffer(Files.readAllBytes(file)));
+                if (decoder.readInt32() != MAGIC || decoder.readInt32() != VERSION) {
+                    logger.info("ignoring data type cache " + file + " of an unknown format");
+                    return Optional.empty();
+                }
+                Key stored = Key.decode(decoder);
+                if (!key.equals(stored)) {
+                    logger.info("ignoring stale data type cache " + file + ": " + stored + " does not match " + key);
+                    return Optional.empty();
+                }
+                Map<NodeId, Tree<DataTypeTree.DataType>> built = new HashMap<>();
+                Tree<DataTypeTree.DataType> root = null;
+                int size = decoder.readInt32();
+                for (int i = 0; i < size; i++) {
+                    NodeId parent = decoder.readNodeId();
+                    DataTypeTree.DataType dataType = new DataTypeTree.DataType(decoder.readQualifiedName(), decoder.readNodeId(),
+                            orNull(decoder.readNodeId()), orNull(decoder.readNodeId()));
+                    Tree<DataTypeTree.DataType> node = root == null ? new Tree<>(null, dataType) : built.get(parent).addChild(dataType);
+                    if (root == null) {
+                        root = node;
+                    }
+                    built.put(dataType.getNodeId(), node);
+                }
+                int dictionaryCount = decoder.readInt32();
+                List<Dictionary> dictionaries = new ArrayList<>(dictionaryCount);
+                for (int i = 0; i < dictionaryCount; i++) {
+                    NodeId nodeId = decoder.readNodeId();
+                    ByteString bytes = decoder.readByteString();
+                    int typeCount = decoder.readInt32();
+                    List<Type> types = new ArrayList<>(typeCount);
+                    for (int t = 0; t < typeCount; t++) {
+                        types.add(new Type(decoder.readString(), decoder.readNodeId(), decoder.readNodeId()));
+                    }
+                    dictionaries.add(new Dictionary(nodeId, bytes, types));
+                }
+                logger.info("loaded DataTypeTree of " + size + " types and " + dictionaryCount + " dictionaries from " + file);
+                return Optional.of(new Entry(key, new DataTypeTree(root), dictionaries, true));
+            } catch (Exception e) {
+                logger.error("unable to load data type cache " + file + ": " + e.getMessage());
+                return Optional.empty();
+            }
+        }
+
+        private void save(Path file, Entry entry) throws IOException {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            ByteBuf buffer = Unpooled.buffer();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OpcUaBinaryStreamEncoder encoder = new OpcUaBinaryStreamEncoder(stackClient.getStaticSerializationContext());
+                encoder.setBuffer(buffer);
+                encoder.writeInt32(MAGIC);
+                encoder.writeInt32(VERSION);
+                entry.key.encode(encoder);
+                List<Tree<DataTypeTree.DataType>> nodes = new ArrayList<>();
+                entry.tree.getTree().traverseNodes(nodes::add);
+                encoder.writeInt32(nodes.size());
+                for (Tree<DataTypeTree.DataType> node : nodes) {
+                    DataTypeTree.DataType dataType = node.getValue();
+                    encoder.writeNodeId(node.getParent() != null ? node.getParent().getValue().getNodeId() : NodeId.NULL_VALUE);
+                    encoder.writeQualifiedName(dataType.getBrowseName());
+                    encoder.writeNodeId(dataType.getNodeId());
+                    encoder.writeNodeId(orNullValue(dataType.getBinaryEncodingId()));
+                    encoder.writeNodeId(orNullValue(dataType.getXmlEncodingId()));
+                }
+                encoder.writeInt32(entry.dictionaries.size());
+                for (Dictionary dictionary : entry.dictionaries) {
+                    encoder.writeNodeId(dictionary.nodeId);
+                    encoder.writeByteString(dictionary.bytes);
+                    encoder.writeInt32(dictionary.types.size());
+                    for (Type type : dictionary.types) {
+                        encoder.writeString(type.description);
+                        encoder.writeNodeId(type.dataTypeId);
+                        encoder.writeNodeId(type.encodingId);
+                    }
+                }
+                while (buffer.isReadable()) {
+                    buffer.readBytes(channel, buffer.readableBytes());
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            } finally {
+                buffer.release();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("saved data types to " + file);
+        }
+
+        private List<DataValue> readValues(List<NodeId> nodeIds) throws ExecutionException, InterruptedException {
+            if (nodeIds.isEmpty()) {
+                return List.of();
+            }
+            ReadValueId[] readValueIds = nodeIds.stream()
+                    .map(n -> new ReadValueId(n, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE)).toArray(ReadValueId[]::new);
+            ReadRequest request = new ReadRequest(stackClient.newRequestHeader(session.getAuthenticationToken()), 0.0,
+                    TimestampsToReturn.Neither, readValueIds);
+            DataValue[] results = ((ReadResponse) stackClient.sendRequest(request).get()).getResults();
+            return results != null ? Arrays.asList(results) : List.of();
+        }
+
+        private List<NodeId> targets(List<ReferenceDescription> references) {
+            List<NodeId> targets = new ArrayList<>(references.size());
+            references.forEach(r -> r.getNodeId().toNodeId(stackClient.getNamespaceTable()).ifPresent(targets::add));
+            return targets;
+        }
+    }
+
+    private static <T> T get(DataValue value, Class<T> clazz) {
+        Object o = value.getValue().getValue();
+        return value.getStatusCode() != null && value.getStatusCode().isGood() && clazz.isInstance(o) ? clazz.cast(o) : null;
+    }
+
+    private static NodeId orNull(NodeId nodeId) {
+        return nodeId == null || nodeId.isNull() ? null : nodeId;
+    }
+
+    private static NodeId orNullValue(NodeId nodeId) {
+        return nodeId == null ? NodeId.NULL_VALUE : nodeId;
+    }
+
+    private static String sha256(ByteString bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.bytesOrEmpty());
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * DataTypeTree and dictionaries of a server, and whether they were loaded from the cache.
+     */
+    public static class Entry {
+        private final Key key;
+        private final DataTypeTree tree;
+        private final List<Dictionary> dictionaries;
+        private final boolean cached;
+
+        Entry(Key key, DataTypeTree tree, List<Dictionary> dictionaries, boolean cached) {
+            this.key = key;
+            this.tree = tree;
+            this.dictionaries = dictionaries;
+            this.cached = cached;
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+        public DataTypeTree getTree() {
+            return tree;
+        }
+
+        public List<Dictionary> getDictionaries() {
+            return dictionaries;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+    }
+
+    /**
+     * Content of a DataTypeDictionary variable and the DataTypes and encodings its descriptions belong to.
+     */
+    public static class Dictionary {
+        private final NodeId nodeId;
+        private final ByteString bytes;
+        private final List<Type> types;
+
+        Dictionary(NodeId nodeId, ByteString bytes, List<Type> types) {
+            this.nodeId = nodeId;
+            this.bytes = bytes;
+            this.types = types;
+        }
+
+        public NodeId getNodeId() {
+            return nodeId;
+        }
+
+        public ByteString getBytes() {
+            return bytes;
+        }
+
+        public int getTypeCount() {
+            return types.size();
+        }
+    }
+
+    private static class Type {
+        final String description;
+        final NodeId dataTypeId;
+        final NodeId encodingId;
+
+        Type(String description, NodeId dataTypeId, NodeId encodingId) {
+            this.description = description;
+            this.dataTypeId = dataTypeId;
+            this.encodingId = encodingId;
+        }
+    }
+
+    /**
+     * ApplicationUri, NamespaceArray and the versions of the dictionaries by NodeId, either their NodeVersion or a
+     * hash of their content.
+     */
+    public static class Key {
+        private final String applicationUri;
+        private final String[] namespaces;
+        private final Map<String, String> dictionaryVersions;
+
+        public Key(String applicationUri, String[] namespaces, Map<String, String> dictionaryVersions) {
+            this.applicationUri = applicationUri;
+            this.namespaces = namespaces;
+            this.dictionaryVersions = new TreeMap<>(dictionaryVersions);
+        }
+
+        static Key decode(OpcUaBinaryStreamDecoder decoder) {
+            String applicationUri = decoder.readString();
+            String[] namespaces = decoder.readStringArray(null);
+            String[] ids = decoder.readStringArray(null);
+            String[] versions = decoder.readStringArray(null);
+            Map<String, String> dictionaryVersions = new TreeMap<>();
+            for (int i = 0; ids != null && i < ids.length; i++) {
+                dictionaryVersions.put(ids[i], versions[i]);
+            }
+            return new Key(applicationUri, namespaces, dictionaryVersions);
+        }
+
+        void encode(OpcUaBinaryStreamEncoder encoder) {
+            encoder.writeString(applicationUri);
+            encoder.writeStringArray(null, namespaces);
+            encoder.writeStringArray(null, dictionaryVersions.keySet().toArray(new String[0]));
+            encoder.writeStringArray(null, dictionaryVersions.values().toArray(new String[0]));
+        }
+
+        public String getApplicationUri() {
+            return applicationUri;
+        }
+
+        public Map<String, String> getDictionaryVersions() {
+            return Collections.unmodifiableMap(dictionaryVersions);
+        }
+
+        public String getFileName() {
+            String uri = applicationUri != null ? applicationUri : "";
+            return UUID.nameUUIDFromBytes(uri.getBytes(StandardCharsets.UTF_8)) + ".datatypes";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(applicationUri, other.applicationUri) && Arrays.equals(namespaces, other.namespaces)
+                    && dictionaryVersions.equals(other.dictionaryVersions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(applicationUri, Arrays.hashCode(namespaces), dictionaryVersions);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{applicationUri=" + applicationUri + ", namespaces=" + Arrays.toString(namespaces)
+                    + ", dictionaryVersions=" + dictionaryVersions + "}";
+        }
+    }
+}
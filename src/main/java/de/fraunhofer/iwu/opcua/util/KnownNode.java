@@ -0,0 +1,46 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+import java.util.List;
+
+/**
+ * NodeClass and forward references of a node whose attributes and references are known before the crawl, e.g. a
+ * standard node of namespace 0 taken from a {@code StandardGraph}. The crawl neither reads nor returns it, and only
+ * browses it if servers may attach their own nodes below it.
+ */
+public class KnownNode {
+
+    private final NodeClass nodeClass;
+    private final List<ReferenceDescription> references;
+    private final List<ReferenceDescription> children;
+    private final boolean browsed;
+
+    /**
+     * @param children the hierarchical ones of the references
+     * @param browsed  whether servers may add references to their own nodes, so the node is browsed anyway
+     */
+    public KnownNode(NodeClass nodeClass, List<ReferenceDescription> references, List<ReferenceDescription> children, boolean browsed) {
+        this.nodeClass = nodeClass;
+        this.references = List.copyOf(references);
+        this.children = List.copyOf(children);
+        this.browsed = browsed;
+    }
+
+    public NodeClass getNodeClass() {
+        return nodeClass;
+    }
+
+    public List<ReferenceDescription> getReferences() {
+        return references;
+    }
+
+    public List<ReferenceDescription> getChildren() {
+        return children;
+    }
+
+    public boolean isBrowsed() {
+        return browsed;
+    }
+}
@@ -0,0 +1,226 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.nodes.*;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Attribute layout per NodeClass, used to read the attributes of many nodes in one ReadRequest and to build the
+ * matching {@link UaNode} from the returned values without further round trips.
+ */
+public final class NodeAttributes {
+
+    private static final List<AttributeId> BASE = List.of(AttributeId.NodeId, AttributeId.NodeClass,
+            AttributeId.BrowseName, AttributeId.DisplayName, AttributeId.Description, AttributeId.WriteMask,
+            AttributeId.UserWriteMask);
+
+    private static final Map<NodeClass, List<AttributeId>> ATTRIBUTES = new EnumMap<>(NodeClass.class);
+
+    static {
+        ATTRIBUTES.put(NodeClass.Object, with(AttributeId.EventNotifier));
+        ATTRIBUTES.put(NodeClass.ObjectType, with(AttributeId.IsAbstract));
+        ATTRIBUTES.put(NodeClass.Variable, with(AttributeId.Value, AttributeId.DataType, AttributeId.ValueRank,
+                AttributeId.ArrayDimensions, AttributeId.AccessLevel, AttributeId.UserAccessLevel,
+                AttributeId.MinimumSamplingInterval, AttributeId.Historizing));
+        ATTRIBUTES.put(NodeClass.VariableType, with(AttributeId.Value, AttributeId.DataType, AttributeId.ValueRank,
+                AttributeId.ArrayDimensions, AttributeId.IsAbstract));
+        ATTRIBUTES.put(NodeClass.ReferenceType, with(AttributeId.IsAbstract, AttributeId.Symmetric, AttributeId.InverseName));
+        ATTRIBUTES.put(NodeClass.DataType, with(AttributeId.IsAbstract));
+        ATTRIBUTES.put(NodeClass.Method, with(AttributeId.Executable, AttributeId.UserExecutable));
+        ATTRIBUTES.put(NodeClass.View, with(AttributeId.ContainsNoLoops, AttributeId.EventNotifier));
+    }
+
+    private NodeAttributes() {
+    }
+
+    private static List<AttributeId> with(AttributeId... specific) {
+        List<AttributeId> attributes = new ArrayList<>(BASE);
+        Collections.addAll(attributes, specific);
+        return Collections.unmodifiableList(attributes);
+    }
+
+    public static List<AttributeId> of(NodeClass nodeClass) {
+        List<AttributeId> attributes = ATTRIBUTES.get(nodeClass);
+        if (attributes == null) {
+            throw new IllegalArgumentException("Unsupported NodeClass: " + nodeClass);
+        }
+        return attributes;
+    }
+
+    public static List<ReadValueId> readValueIds(NodeId nodeId, NodeClass nodeClass) {
+        List<AttributeId> attributes = of(nodeClass);
+        List<ReadValueId> ids = new ArrayList<>(attributes.size());
+        attributes.forEach(a -> ids.add(new ReadValueId(nodeId, a.uid(), null, QualifiedName.NULL_VALUE)));
+        return ids;
+    }
+
+    /**
+     * Reads the NodeClass of the given nodes in one request. Nodes the server does not know are left out.
+     */
+    public static CompletableFuture<Map<NodeId, NodeClass>> readNodeClasses(OpcUaClient client, Collection<NodeId> nodeIds) {
+        return readNodeClasses(client, nodeIds, 0);
+    }
+
+    /**
+     * Reads the NodeClass of the given nodes in requests of at most {@code maxNodesPerRead} nodes, one after the other;
+     * 0 reads all in one request. Nodes the server does not know or leaves out of its response are left out.
+     */
+    public static CompletableFuture<Map<NodeId, NodeClass>> readNodeClasses(OpcUaClient client, Collection<NodeId> nodeIds, int maxNodesPerRead) {
+        List<NodeId> ids = new ArrayList<>(nodeIds);
+        int size = maxNodesPerRead > 0 ? maxNodesPerRead : Math.max(1, ids.size());
+        CompletableFuture<Map<NodeId, NodeClass>> result = CompletableFuture.completedFuture(new LinkedHashMap<>());
+        for (int from = 0; from < ids.size(); from += size) {
+            List<NodeId> chunk = ids.subList(from, Math.min(from + size, ids.size()));
+            result = result.thenCompose(nodeClasses -> readChunk(client, chunk).thenApply(read -> {
+                nodeClasses.putAll(read);
+                return nodeClasses;
+            }));
+        }
+        return result;
+    }
+
+    private static CompletableFuture<Map<NodeId, NodeClass>> readChunk(OpcUaClient client, List<NodeId> ids) {
+        List<ReadValueId> readValueIds = new ArrayList<>(ids.size());
+        ids.forEach(id -> readValueIds.add(new ReadValueId(id, AttributeId.NodeClass.uid(), null, QualifiedName.NULL_VALUE)));
+        return client.read(0.0, TimestampsToReturn.Neither, readValueIds).thenApply(response -> nodeClasses(ids, response.getResults()));
+    }
+
+    /**
+     * NodeClasses read for the given nodes. Results that are not good, and those missing from a short or empty
+     * response, are left out.
+     */
+    static Map<NodeId, NodeClass> nodeClasses(List<NodeId> ids, DataValue[] results) {
+        Map<NodeId, NodeClass> nodeClasses = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size() && results != null && i < results.length; i++) {
+            Object value = results[i].getValue().getValue();
+            if (results[i].getStatusCode().isGood() && value instanceof Integer) {
+                nodeClasses.put(ids.get(i), NodeClass.from((Integer) value));
+            }
+        }
+        return nodeClasses;
+    }
+
+    /**
+     * Builds a node from values in the order given by {@link #of(NodeClass)}. Optional attributes the server could
+     * not deliver are left {@code null}, mirroring {@code AddressSpace.getNode}.
+     */
+    public static UaNode createNode(OpcUaClient client, NodeId nodeId, NodeClass nodeClass, List<DataValue> values) throws UaException {
+        if (values.size() != of(nodeClass).size()) {
+            throw new UaException(StatusCodes.Bad_UnexpectedError, "expected " + of(nodeClass).size() + " attributes for " + nodeId.toParseableString() + " but got " + values.size());
+        }
+        QualifiedName browseName = get(values, 2, QualifiedName.class);
+        if (browseName == null) {
+            throw new UaException(values.get(2).getStatusCode(), "missing BrowseName for " + nodeId.toParseableString());
+        }
+        LocalizedText displayName = get(values, 3, LocalizedText.class);
+        LocalizedText description = get(values, 4, LocalizedText.class);
+        UInteger writeMask = get(values, 5, UInteger.class);
+        UInteger userWriteMask = get(values, 6, UInteger.class);
+
+        switch (nodeClass) {
+            case Object:
+                return new UaObjectNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, UByte.class));
+            case ObjectType:
+                return new UaObjectTypeNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, Boolean.class));
+            case Variable:
+                return new UaVariableNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        values.get(7), get(values, 8, NodeId.class), get(values, 9, Integer.class),
+                        get(values, 10, UInteger[].class), get(values, 11, UByte.class), get(values, 12, UByte.class),
+                        get(values, 13, Double.class), get(values, 14, Boolean.class));
+            case VariableType:
+                return new UaVariableTypeNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        values.get(7), get(values, 8, NodeId.class), get(values, 9, Integer.class),
+                        get(values, 10, UInteger[].class), get(values, 11, Boolean.class));
+            case ReferenceType:
+                return new UaReferenceTypeNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, Boolean.class), get(values, 8, Boolean.class), get(values, 9, LocalizedText.class));
+            case DataType:
+                return new UaDataTypeNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, Boolean.class));
+            case Method:
+                return new UaMethodNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, Boolean.class), get(values, 8, Boolean.class));
+            case View:
+                return new UaViewNode(client, nodeId, nodeClass, browseName, displayName, description, writeMask, userWriteMask,
+                        get(values, 7, Boolean.class), get(values, 8, UByte.class));
+            default:
+                throw new UaException(StatusCodes.Bad_NodeClassInvalid, "Unsupported NodeClass: " + nodeClass);
+        }
+    }
+
+    /**
+     * The attribute values of a node in the order given by {@link #of(NodeClass)}, the inverse of
+     * {@link #createNode(OpcUaClient, NodeId, NodeClass, List)}. Only the Value attribute keeps its StatusCode and
+     * timestamps.
+     */
+    public static List<DataValue> values(UaNode node) {
+        List<Object> attributes = new ArrayList<>(List.of(node.getNodeId(), node.getNodeClass().getValue()));
+        attributes.add(node.getBrowseName());
+        attributes.add(node.getDisplayName());
+        attributes.add(node.getDescription());
+        attributes.add(node.getWriteMask());
+        attributes.add(node.getUserWriteMask());
+        if (node instanceof UaObjectNode) {
+            attributes.add(((UaObjectNode) node).getEventNotifier());
+        } else if (node instanceof UaObjectTypeNode) {
+            attributes.add(((UaObjectTypeNode) node).getIsAbstract());
+        } else if (node instanceof UaVariableNode) {
+            UaVariableNode variable = (UaVariableNode) node;
+            attributes.addAll(Arrays.asList(variable.getValue(), variable.getDataType(), variable.getValueRank(),
+                    variable.getArrayDimensions(), variable.getAccessLevel(), variable.getUserAccessLevel(),
+                    variable.getMinimumSamplingInterval(), variable.getHistorizing()));
+        } else if (node instanceof UaVariableTypeNode) {
+            UaVariableTypeNode variableType = (UaVariableTypeNode) node;
+            attributes.addAll(Arrays.asList(variableType.getValue(), variableType.getDataType(), variableType.getValueRank(),
+                    variableType.getArrayDimensions(), variableType.getIsAbstract()));
+        } else if (node instanceof UaReferenceTypeNode) {
+            UaReferenceTypeNode referenceType = (UaReferenceTypeNode) node;
+            attributes.addAll(Arrays.asList(referenceType.getIsAbstract(), referenceType.getSymmetric(), referenceType.getInverseName()));
+        } else if (node instanceof UaDataTypeNode) {
+            attributes.add(((UaDataTypeNode) node).getIsAbstract());
+        } else if (node instanceof UaMethodNode) {
+            attributes.addAll(Arrays.asList(((UaMethodNode) node).isExecutable(), ((UaMethodNode) node).isUserExecutable()));
+        } else if (node instanceof UaViewNode) {
+            attributes.addAll(Arrays.asList(((UaViewNode) node).getContainsNoLoops(), ((UaViewNode) node).getEventNotifier()));
+        } else {
+            throw new IllegalArgumentException("Unsupported node type: " + node.getClass().getName());
+        }
+        List<DataValue> values = new ArrayList<>(attributes.size());
+        attributes.forEach(a -> values.add(a instanceof DataValue ? (DataValue) a : new DataValue(new Variant(a), StatusCode.GOOD, null, null)));
+        return values;
+    }
+
+    private static <T> T get(List<DataValue> values, int index, Class<T> clazz) {
+        DataValue value = values.get(index);
+        if (value == null || value.getStatusCode() == null || value.getStatusCode().isBad()) {
+            return null;
+        }
+        Object o = value.getValue().getValue();
+        return clazz.isInstance(o) ? clazz.cast(o) : null;
+    }
+}
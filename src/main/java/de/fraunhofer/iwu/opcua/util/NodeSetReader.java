@@ -0,0 +1,414 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.nodes.*;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.milo.opcua.stack.core.util.Tree;
+import org.opcfoundation.ua._2011._03.uanodeset.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Reads NodeSet2 XML files into an address space that can be transformed without a server. The file is read with
+ * StAX and only one node at a time is unmarshalled with JAXB, so the memory needed is that of the resulting nodes,
+ * not of the document. Several files can be read into the same reader, e.g. a companion specification followed by a
+ * model based on it; namespace indices of each file are mapped onto one {@link NamespaceTable}.
+ * <p>
+ * References are kept in forward direction as a browse of the server would return them: an inverse reference is
+ * moved to its target if the target was read as well.
+ */
+public class NodeSetReader {
+
+    private static final JAXBContext JAXB_CONTEXT;
+
+    static {
+        try {
+            JAXB_CONTEXT = JAXBContext.newInstance(UANodeSet.class);
+        } catch (JAXBException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    private final NamespaceTable namespaces = new NamespaceTable();
+    private final Map<NodeId, UaNode> nodes = new LinkedHashMap<>();
+    private final Map<NodeId, List<ReferenceDescription>> references = new HashMap<>();
+    private final XMLInputFactory inputFactory;
+
+    public NodeSetReader() {
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Reads the given NodeSet2 files into a new reader.
+     */
+    public static NodeSetReader of(Path... files) throws IOException {
+        NodeSetReader reader = new NodeSetReader();
+        for (Path file : files) {
+            reader.read(file);
+        }
+        return reader;
+    }
+
+    public NodeSetReader read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in, file.toString());
+        }
+    }
+
+    public NodeSetReader read(InputStream in) throws IOException {
+        return read(in, "stream");
+    }
+
+    private NodeSetReader read(InputStream in, String source) throws IOException {
+        int before = nodes.size();
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(in);
+            Unmarshaller unmarshaller = JAXB_CONTEXT.createUnmarshaller();
+            FileScope scope = new FileScope();
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"UANodeSet".equals(reader.getLocalName())) {
+                throw new IOException(source + " is not a NodeSet2 file");
+            }
+            reader.next();
+            while (toNextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "NamespaceUris":
+                        scope.setNamespaceUris(unmarshaller.unmarshal(reader, UriTable.class).getValue());
+                        break;
+                    case "Aliases":
+                        unmarshaller.unmarshal(reader, AliasTable.class).getValue().getAlias()
+                                .forEach(alias -> scope.aliases.put(alias.getAlias(), alias.getValue()));
+                        break;
+                    case "UAObject":
+                        add(scope, unmarshaller.unmarshal(reader, UAObject.class).getValue());
+                        break;
+                    case "UAVariable":
+                        add(scope, unmarshaller.unmarshal(reader, UAVariable.class).getValue());
+                        break;
+                    case "UAMethod":
+                        add(scope, unmarshaller.unmarshal(reader, UAMethod.class).getValue());
+                        break;
+                    case "UAView":
+                        add(scope, unmarshaller.unmarshal(reader, UAView.class).getValue());
+                        break;
+                    case "UAObjectType":
+                        add(scope, unmarshaller.unmarshal(reader, UAObjectType.class).getValue());
+                        break;
+                    case "UAVariableType":
+                        add(scope, unmarshaller.unmarshal(reader, UAVariableType.class).getValue());
+                        break;
+                    case "UADataType":
+                        add(scope, unmarshaller.unmarshal(reader, UADataType.class).getValue());
+                        break;
+                    case "UAReferenceType":
+                        add(scope, unmarshaller.unmarshal(reader, UAReferenceType.class).getValue());
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+        } catch (XMLStreamException | JAXBException | RuntimeException e) {
+            throw new IOException("unable to read NodeSet " + source + ": " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.error(e.getMessage());
+                }
+            }
+        }
+        logger.info("read " + (nodes.size() - before) + " nodes from " + source);
+        return this;
+    }
+
+    /**
+     * Moves the cursor to the next START_ELEMENT or END_ELEMENT unless it already is on one.
+     */
+    private static int toNextTag(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT && reader.hasNext()) {
+            event = reader.next();
+        }
+        return event;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        reader.next();
+    }
+
+    private void add(FileScope scope, UANode element) {
+        NodeId nodeId = scope.nodeId(element.getNodeId());
+        QualifiedName browseName = scope.qualifiedName(element.getBrowseName());
+        LocalizedText displayName = first(element.getDisplayName());
+        LocalizedText description = first(element.getDescription());
+        UInteger writeMask = uint(element.getWriteMask());
+        UInteger userWriteMask = uint(element.getUserWriteMask());
+
+        UaNode node;
+        if (element instanceof UAObject) {
+            UAObject object = (UAObject) element;
+            node = new UaObjectNode(null, nodeId, NodeClass.Object, browseName, displayName, description, writeMask, userWriteMask,
+                    ubyte(object.getEventNotifier()));
+        } else if (element instanceof UAVariable) {
+            UAVariable variable = (UAVariable) element;
+            node = new UaVariableNode(null, nodeId, NodeClass.Variable, browseName, displayName, description, writeMask, userWriteMask,
+                    scope.value(nodeId, variable.getValue() != null ? variable.getValue().getAny() : null),
+                    scope.nodeId(variable.getDataType()), variable.getValueRank(), arrayDimensions(variable.getArrayDimensions()),
+                    ubyte(variable.getAccessLevel()), ubyte(variable.getUserAccessLevel()),
+                    variable.getMinimumSamplingInterval(), variable.isHistorizing());
+        } else if (element instanceof UAMethod) {
+            UAMethod method = (UAMethod) element;
+            node = new UaMethodNode(null, nodeId, NodeClass.Method, browseName, displayName, description, writeMask, userWriteMask,
+                    method.isExecutable(), method.isUserExecutable());
+        } else if (element instanceof UAView) {
+            UAView view = (UAView) element;
+            node = new UaViewNode(null, nodeId, NodeClass.View, browseName, displayName, description, writeMask, userWriteMask,
+                    view.isContainsNoLoops(), ubyte(view.getEventNotifier()));
+        } else if (element instanceof UAObjectType) {
+            node = new UaObjectTypeNode(null, nodeId, NodeClass.ObjectType, browseName, displayName, description, writeMask, userWriteMask,
+                    ((UAObjectType) element).isIsAbstract());
+        } else if (element instanceof UAVariableType) {
+            UAVariableType variableType = (UAVariableType) element;
+            node = new UaVariableTypeNode(null, nodeId, NodeClass.VariableType, browseName, displayName, description, writeMask, userWriteMask,
+                    scope.value(nodeId, variableType.getValue() != null ? variableType.getValue().getAny() : null),
+                    scope.nodeId(variableType.getDataType()), variableType.getValueRank(),
+                    arrayDimensions(variableType.getArrayDimensions()), variableType.isIsAbstract());
+        } else if (element instanceof UADataType) {
+            node = new UaDataTypeNode(null, nodeId, NodeClass.DataType, browseName, displayName, description, writeMask, userWriteMask,
+                    ((UADataType) element).isIsAbstract());
+        } else if (element instanceof UAReferenceType) {
+            UAReferenceType referenceType = (UAReferenceType) element;
+            node = new UaReferenceTypeNode(null, nodeId, NodeClass.ReferenceType, browseName, displayName, description, writeMask, userWriteMask,
+                    referenceType.isIsAbstract(), referenceType.isSymmetric(), first(referenceType.getInverseName()));
+        } else {
+            logger.info("unsupported node " + element.getClass().getSimpleName() + " " + element.getNodeId() + ". Skipping.");
+            return;
+        }
+        nodes.put(nodeId, node);
+
+        List<ReferenceDescription> declared = new ArrayList<>();
+        if (element.getReferences() != null) {
+            element.getReferences().getReference().forEach(r -> declared.add(new ReferenceDescription(
+                    scope.nodeId(r.getReferenceType()), r.isIsForward(), scope.nodeId(r.getValue()).expanded(),
+                    QualifiedName.NULL_VALUE, LocalizedText.NULL_VALUE, NodeClass.Unspecified, ExpandedNodeId.NULL_VALUE)));
+        }
+        references.put(nodeId, declared);
+    }
+
+    private static LocalizedText first(List<org.opcfoundation.ua._2011._03.uanodeset.LocalizedText> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return null;
+        }
+        String locale = texts.get(0).getLocale();
+        return new LocalizedText(locale != null && !locale.isEmpty() ? locale : null, texts.get(0).getValue());
+    }
+
+    private static UInteger[] arrayDimensions(String dimensions) {
+        if (dimensions == null || dimensions.isBlank()) {
+            return null;
+        }
+        return Arrays.stream(dimensions.split(",")).map(d -> uint(Long.parseLong(d.trim()))).toArray(UInteger[]::new);
+    }
+
+    public NamespaceTable getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * The nodes read so far with their references in forward direction. Inverse references whose target was not read
+     * are kept as they are.
+     */
+    public Map<UaNode, List<ReferenceDescription>> getNodeRefMap() {
+        Map<NodeId, List<ReferenceDescription>> forward = new HashMap<>(nodes.size() * 4 / 3 + 1);
+        nodes.keySet().forEach(nodeId -> forward.put(nodeId, new ArrayList<>()));
+        references.forEach((source, declared) -> declared.forEach(r -> {
+            Optional<NodeId> target = r.getNodeId().toNodeId(namespaces);
+            if (r.getIsForward() || target.isEmpty() || !nodes.containsKey(target.get())) {
+                addDistinct(forward.get(source), r);
+            } else {
+                addDistinct(forward.get(target.get()), new ReferenceDescription(r.getReferenceTypeId(), true,
+                        source.expanded(), QualifiedName.NULL_VALUE, LocalizedText.NULL_VALUE, NodeClass.Unspecified,
+                        ExpandedNodeId.NULL_VALUE));
+            }
+        }));
+        Map<UaNode, List<ReferenceDescription>> nodeRefMap = new LinkedHashMap<>(nodes.size() * 4 / 3 + 1);
+        nodes.forEach((nodeId, node) -> nodeRefMap.put(node, forward.get(nodeId)));
+        return nodeRefMap;
+    }
+
+    private static void addDistinct(List<ReferenceDescription> references, ReferenceDescription reference) {
+        boolean present = references.stream().anyMatch(r -> r.getIsForward() == reference.getIsForward()
+                && r.getReferenceTypeId().equals(reference.getReferenceTypeId()) && r.getNodeId().equals(reference.getNodeId()));
+        if (!present) {
+            references.add(reference);
+        }
+    }
+
+    /**
+     * DataTypeTree of the DataTypes read so far, built from their HasSubtype and HasEncoding references. Supertypes
+     * that were not read, e.g. those of namespace 0 when only a companion specification is read, are placed directly
+     * below BaseDataType.
+     */
+    public DataTypeTree getDataTypeTree() {
+        Map<NodeId, NodeId> supertypes = new HashMap<>();
+        Map<NodeId, NodeId[]> encodings = new HashMap<>();
+        references.forEach((source, declared) -> declared.forEach(r -> r.getNodeId().toNodeId(namespaces).ifPresent(target -> {
+            if (r.getReferenceTypeId().equals(Identifiers.HasSubtype) && isDataType(r.getIsForward() ? target : source)) {
+                supertypes.put(r.getIsForward() ? target : source, r.getIsForward() ? source : target);
+            } else if (r.getReferenceTypeId().equals(Identifiers.HasEncoding) && r.getIsForward() && isDataType(source)
+                    && nodes.containsKey(target)) {
+                NodeId[] binaryAndXml = encodings.computeIfAbsent(source, k -> new NodeId[2]);
+                String name = nodes.get(target).getBrowseName().getName();
+                if ("Default Binary".equals(name)) {
+                    binaryAndXml[0] = target;
+                } else if ("Default XML".equals(name)) {
+                    binaryAndXml[1] = target;
+                }
+            }
+        })));
+
+        Tree<DataTypeTree.DataType> root = new Tree<>(null, new DataTypeTree.DataType(
+                new QualifiedName(0, "BaseDataType"), Identifiers.BaseDataType, null, null));
+        Map<NodeId, Tree<DataTypeTree.DataType>> built = new HashMap<>();
+        built.put(Identifiers.BaseDataType, root);
+        nodes.values().stream().filter(n -> n.getNodeClass() == NodeClass.DataType)
+                .forEach(n -> addDataType(n.getNodeId(), supertypes, encodings, built, new HashSet<>()));
+        return new DataTypeTree(root);
+    }
+
+    private boolean isDataType(NodeId nodeId) {
+        UaNode node = nodes.get(nodeId);
+        return node != null && node.getNodeClass() == NodeClass.DataType;
+    }
+
+    private Tree<DataTypeTree.DataType> addDataType(NodeId nodeId, Map<NodeId, NodeId> supertypes, Map<NodeId, NodeId[]> encodings,
+                                                    Map<NodeId, Tree<DataTypeTree.DataType>> built, Set<NodeId> visiting) {
+        Tree<DataTypeTree.DataType> existing = built.get(nodeId);
+        if (existing != null) {
+            return existing;
+        }
+        NodeId supertype = supertypes.get(nodeId);
+        Tree<DataTypeTree.DataType> parent = supertype != null && visiting.add(nodeId)
+                ? addDataType(supertype, supertypes, encodings, built, visiting) : built.get(Identifiers.BaseDataType);
+        UaNode node = nodes.get(nodeId);
+        QualifiedName browseName = node != null ? node.getBrowseName() : new QualifiedName(nodeId.getNamespaceIndex(), nodeId.toParseableString());
+        NodeId[] binaryAndXml = encodings.getOrDefault(nodeId, new NodeId[2]);
+        Tree<DataTypeTree.DataType> tree = parent.addChild(new DataTypeTree.DataType(browseName, nodeId, binaryAndXml[0], binaryAndXml[1]));
+        built.put(nodeId, tree);
+        return tree;
+    }
+
+    /**
+     * Context over the nodes read so far, to be passed to the RdfTransformer together with
+     * {@link #getDataTypeTree()}.
+     */
+    public OpcuaContext toContext() {
+        return new OpcuaContext(namespaces, getNodeRefMap(), List.of());
+    }
+
+    /**
+     * Aliases and namespace mapping of the file being read.
+     */
+    private class FileScope {
+        private final Map<String, String> aliases = new HashMap<>();
+        private int[] namespaceIndices = new int[]{0};
+        private final NodeSetValues values = new NodeSetValues(this::nodeId, this::namespaceIndex);
+
+        void setNamespaceUris(UriTable uris) {
+            List<String> uri = uris.getUri();
+            namespaceIndices = new int[uri.size() + 1];
+            for (int i = 0; i < uri.size(); i++) {
+                namespaceIndices[i + 1] = namespaces.addUri(uri.get(i)).intValue();
+            }
+        }
+
+        int namespaceIndex(int local) {
+            if (local < 0 || local >= namespaceIndices.length) {
+                throw new IllegalArgumentException("namespace index " + local + " is not declared in NamespaceUris");
+            }
+            return namespaceIndices[local];
+        }
+
+        NodeId nodeId(String id) {
+            NodeId local = NodeId.parse(aliases.getOrDefault(id.trim(), id.trim()));
+            int index = namespaceIndex(local.getNamespaceIndex().intValue());
+            if (index == local.getNamespaceIndex().intValue()) {
+                return local;
+            }
+            switch (local.getType()) {
+                case Numeric:
+                    return new NodeId(index, (UInteger) local.getIdentifier());
+                case Guid:
+                    return new NodeId(index, (UUID) local.getIdentifier());
+                case Opaque:
+                    return new NodeId(index, (ByteString) local.getIdentifier());
+                default:
+                    return new NodeId(index, (String) local.getIdentifier());
+            }
+        }
+
+        QualifiedName qualifiedName(String name) {
+            QualifiedName local = QualifiedName.parse(name);
+            return new QualifiedName(namespaceIndex(local.getNamespaceIndex().intValue()), local.getName());
+        }
+
+        DataValue value(NodeId nodeId, Object any) {
+            Object value = null;
+            if (any instanceof Element) {
+                try {
+                    value = values.decode((Element) any);
+                } catch (RuntimeException e) {
+                    logger.info("invalid value of " + nodeId.toParseableString() + ": " + e.getMessage() + ". Skipping.");
+                    return new DataValue(Variant.NULL_VALUE, StatusCode.GOOD, null, null);
+                }
+                if (value == null) {
+                    logger.info("unsupported value " + ((Element) any).getLocalName() + " of " + nodeId.toParseableString() + ". Skipping.");
+                }
+            }
+            return new DataValue(value != null ? new Variant(value) : Variant.NULL_VALUE, StatusCode.GOOD, null, null);
+        }
+    }
+}
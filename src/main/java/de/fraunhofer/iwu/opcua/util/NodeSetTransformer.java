@@ -0,0 +1,358 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import de.fraunhofer.iwu.opcua.rdf.TransformerUtils;
+import org.eclipse.milo.opcua.sdk.client.nodes.*;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UNumber;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the crawled address space as a NodeSet2 document following {@code UANodeSet.xsd}. The document is streamed
+ * with a StAX writer node by node, so besides the nodeRefMap itself no document tree is held in memory. NamespaceUris
+ * are those of the server in the order of its NamespaceArray; ReferenceTypes and DataTypes of namespace 0 are written
+ * as aliases.
+ * <p>
+ * {@link #transform()} writes to {@code target/output/nodeset}, {@link #save(Path)} to the given file. The address space
+ * is crawled once and can be written any number of times; a client the transformer connected itself stays connected
+ * until {@link #close()}.
+ */
+public class NodeSetTransformer implements Transformer<Path>, StreamingTransformer<XMLStreamWriter>, AutoCloseable {
+
+    static final String NODESET_NAMESPACE = "http://opcfoundation.org/UA/2011/03/UANodeSet.xsd";
+    // names of the types of namespace 0, for aliases of types that were not crawled
+    private static final Map<NodeId, String> STANDARD_NAMES = standardNames();
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    final OpcuaContext ctx;
+    private final boolean ownsContext;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+
+    public NodeSetTransformer(String endpointUrl) {
+        this(endpointUrl, CrawlConfig.defaults());
+    }
+
+    public NodeSetTransformer(String endpointUrl, CrawlConfig crawlConfig) {
+        this.ctx = new OpcuaContext(endpointUrl, crawlConfig);
+        this.ownsContext = true;
+    }
+
+    /**
+     * Exports an address space that is already held in memory. The client of the context, if any, is left connected.
+     */
+    public NodeSetTransformer(OpcuaContext ctx) {
+        this.ctx = ctx;
+        this.ownsContext = false;
+    }
+
+    @Override
+    public Path transform() {
+        String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        String lastNamespace = TransformerUtils.getLastIdentifierSegment(ctx.getNamespaces().getUri(ctx.getNamespaces().toArray().length - 1));
+        Path file = Path.of("target/output/nodeset/" + lastNamespace + now + ".NodeSet2.xml");
+        save(file);
+        return file;
+    }
+
+    @Override
+    public void save(Path file) {
+        try {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                transform(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void transform(OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            newLine(writer, 0);
+            transform(writer);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("unable to write NodeSet: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the UANodeSet element to the given writer, which has to be positioned where the element may start.
+     */
+    @Override
+    public void transform(XMLStreamWriter writer) {
+        NamespaceTable namespaces = ctx.getNamespaces();
+        List<Map.Entry<? extends UaNode, List<ReferenceDescription>>> nodes = new ArrayList<>(ctx.getNodeRefMap().entrySet());
+        nodes.sort(Comparator.comparing(e -> e.getKey().getNodeId(), TransformerUtils.NODE_ID_ORDER));
+        Map<NodeId, String> aliases = aliases(nodes);
+        try {
+            writer.setDefaultNamespace(NODESET_NAMESPACE);
+            writer.setPrefix("uax", NodeSetValues.TYPES_NAMESPACE);
+            writer.writeStartElement("", "UANodeSet", NODESET_NAMESPACE);
+            writer.writeDefaultNamespace(NODESET_NAMESPACE);
+            writer.writeNamespace("uax", NodeSetValues.TYPES_NAMESPACE);
+            writer.writeAttribute("LastModified", Instant.now().toString());
+
+            String[] uris = namespaces.toArray();
+            if (uris.length > 1) {
+                newLine(writer, 1);
+                writer.writeStartElement(NODESET_NAMESPACE, "NamespaceUris");
+                for (int i = 1; i < uris.length; i++) {
+                    newLine(writer, 2);
+                    writeText(writer, "Uri", uris[i]);
+                }
+                newLine(writer, 1);
+                writer.writeEndElement();
+            }
+            if (!aliases.isEmpty()) {
+                newLine(writer, 1);
+                writer.writeStartElement(NODESET_NAMESPACE, "Aliases");
+                for (Map.Entry<NodeId, String> alias : aliases.entrySet()) {
+                    newLine(writer, 2);
+                    writer.writeStartElement(NODESET_NAMESPACE, "Alias");
+                    writer.writeAttribute("Alias", alias.getValue());
+                    writer.writeCharacters(NodeSetValues.format(alias.getKey()));
+                    writer.writeEndElement();
+                }
+                newLine(writer, 1);
+                writer.writeEndElement();
+            }
+            for (Map.Entry<? extends UaNode, List<ReferenceDescription>> entry : nodes) {
+                writeNode(writer, entry.getKey(), entry.getValue(), aliases, namespaces);
+            }
+            newLine(writer, 0);
+            writer.writeEndElement();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("unable to write NodeSet: " + e.getMessage(), e);
+        }
+        logger.info("wrote " + nodes.size() + " nodes as NodeSet2");
+    }
+
+    /**
+     * Disconnects the client if the transformer connected it, a context passed in is left alone.
+     */
+    @Override
+    public void close() {
+        if (ownsContext && ctx.getClient() != null) {
+            ctx.getClient().disconnect();
+        }
+    }
+
+    /**
+     * Aliases for the ReferenceTypes and DataTypes of namespace 0 in use, named by their BrowseName.
+     */
+    private Map<NodeId, String> aliases(List<Map.Entry<? extends UaNode, List<ReferenceDescription>>> nodes) {
+        Map<NodeId, UaNode> byId = nodes.stream().filter(e -> e.getKey().getNodeId().getNamespaceIndex().intValue() == 0).collect(Collectors.toMap(e -> e.getKey().getNodeId(), Map.Entry::getKey, (a, b) -> a));
+        Set<NodeId> used = new HashSet<>();
+        nodes.forEach(e -> {
+            e.getValue().forEach(r -> used.add(r.getReferenceTypeId()));
+            if (e.getKey() instanceof UaVariableNode && ((UaVariableNode) e.getKey()).getDataType() != null) {
+                used.add(((UaVariableNode) e.getKey()).getDataType());
+            } else if (e.getKey() instanceof UaVariableTypeNode && ((UaVariableTypeNode) e.getKey()).getDataType() != null) {
+                used.add(((UaVariableTypeNode) e.getKey()).getDataType());
+            }
+        });
+        Map<NodeId, String> aliases = new TreeMap<>(TransformerUtils.NODE_ID_ORDER);
+        Set<String> names = new HashSet<>();
+        used.stream().filter(id -> id.getNamespaceIndex().intValue() == 0).forEach(id -> {
+            String name = null;
+            if (byId.containsKey(id)) {
+                name = byId.get(id).getBrowseName().getName();
+            } else {
+                name = STANDARD_NAMES.get(id);
+            }
+            if (name != null && names.add(name)) {
+                aliases.put(id, name);
+            }
+        });
+        return aliases;
+    }
+
+    private static Map<NodeId, String> standardNames() {
+        Map<NodeId, String> names = new HashMap<>();
+        for (Field field : Identifiers.class.getFields()) {
+            if (field.getType() == NodeId.class && Modifier.isStatic(field.getModifiers()) && !field.getName().contains("_")) {
+                try {
+                    names.putIfAbsent((NodeId) field.get(null), field.getName());
+                } catch (IllegalAccessException e) {
+                    // public fields only
+                }
+            }
+        }
+        return names;
+    }
+
+    private void writeNode(XMLStreamWriter writer, UaNode node, List<ReferenceDescription> references,
+                           Map<NodeId, String> aliases, NamespaceTable namespaces) throws XMLStreamException {
+        newLine(writer, 1);
+        writer.writeStartElement(NODESET_NAMESPACE, "UA" + node.getNodeClass().name());
+        writer.writeAttribute("NodeId", NodeSetValues.format(node.getNodeId()));
+        writer.writeAttribute("BrowseName", browseName(node.getBrowseName()));
+        writeNonDefault(writer, "WriteMask", node.getWriteMask(), 0);
+        writeNonDefault(writer, "UserWriteMask", node.getUserWriteMask(), 0);
+
+        DataValue value = null;
+        if (node instanceof UaObjectNode) {
+            writeNonDefault(writer, "EventNotifier", ((UaObjectNode) node).getEventNotifier(), 0);
+        } else if (node instanceof UaVariableNode) {
+            UaVariableNode variable = (UaVariableNode) node;
+            writeDataType(writer, variable.getDataType(), aliases);
+            writeNonDefault(writer, "ValueRank", variable.getValueRank(), -1);
+            writeArrayDimensions(writer, variable.getArrayDimensions());
+            writeNonDefault(writer, "AccessLevel", variable.getAccessLevel(), 1);
+            writeNonDefault(writer, "UserAccessLevel", variable.getUserAccessLevel(), 1);
+            if (variable.getMinimumSamplingInterval() != null && variable.getMinimumSamplingInterval() != 0.0) {
+                writer.writeAttribute("MinimumSamplingInterval", variable.getMinimumSamplingInterval().toString());
+            }
+            writeNonDefault(writer, "Historizing", variable.getHistorizing(), false);
+            value = variable.getValue();
+        } else if (node instanceof UaVariableTypeNode) {
+            UaVariableTypeNode variableType = (UaVariableTypeNode) node;
+            writeNonDefault(writer, "IsAbstract", variableType.getIsAbstract(), false);
+            writeDataType(writer, variableType.getDataType(), aliases);
+            writeNonDefault(writer, "ValueRank", variableType.getValueRank(), -1);
+            writeArrayDimensions(writer, variableType.getArrayDimensions());
+            value = variableType.getValue();
+        } else if (node instanceof UaObjectTypeNode) {
+            writeNonDefault(writer, "IsAbstract", ((UaObjectTypeNode) node).getIsAbstract(), false);
+        } else if (node instanceof UaDataTypeNode) {
+            writeNonDefault(writer, "IsAbstract", ((UaDataTypeNode) node).getIsAbstract(), false);
+        } else if (node instanceof UaReferenceTypeNode) {
+            writeNonDefault(writer, "IsAbstract", ((UaReferenceTypeNode) node).getIsAbstract(), false);
+            writeNonDefault(writer, "Symmetric", ((UaReferenceTypeNode) node).getSymmetric(), false);
+        } else if (node instanceof UaMethodNode) {
+            writeNonDefault(writer, "Executable", ((UaMethodNode) node).isExecutable(), true);
+            writeNonDefault(writer, "UserExecutable", ((UaMethodNode) node).isUserExecutable(), true);
+        } else if (node instanceof UaViewNode) {
+            writeNonDefault(writer, "ContainsNoLoops", ((UaViewNode) node).getContainsNoLoops(), false);
+            writeNonDefault(writer, "EventNotifier", ((UaViewNode) node).getEventNotifier(), 0);
+        }
+
+        writeLocalizedText(writer, "DisplayName", node.getDisplayName());
+        writeLocalizedText(writer, "Description", node.getDescription());
+        writeReferences(writer, references, aliases, namespaces);
+        if (value != null && value.getValue().getValue() != null) {
+            newLine(writer, 2);
+            writer.writeStartElement(NODESET_NAMESPACE, "Value");
+            if (!NodeSetValues.encode(writer, value.getValue().getValue(), namespaces)) {
+                logger.info("unsupported value of " + node.getNodeId().toParseableString() + ". Skipping.");
+            }
+            writer.writeEndElement();
+        }
+        if (node instanceof UaReferenceTypeNode) {
+            writeLocalizedText(writer, "InverseName", ((UaReferenceTypeNode) node).getInverseName());
+        }
+        newLine(writer, 1);
+        writer.writeEndElement();
+    }
+
+    private void writeReferences(XMLStreamWriter writer, List<ReferenceDescription> references,
+                                 Map<NodeId, String> aliases, NamespaceTable namespaces) throws XMLStreamException {
+        if (references == null || references.isEmpty()) {
+            return;
+        }
+        newLine(writer, 2);
+        writer.writeStartElement(NODESET_NAMESPACE, "References");
+        for (ReferenceDescription reference : references) {
+            Optional<NodeId> target = reference.getNodeId().toNodeId(namespaces);
+            if (target.isEmpty()) {
+                // target on another server, NodeSet2 has no way to express it
+                continue;
+            }
+            newLine(writer, 3);
+            writer.writeStartElement(NODESET_NAMESPACE, "Reference");
+            writer.writeAttribute("ReferenceType", alias(reference.getReferenceTypeId(), aliases));
+            if (!reference.getIsForward()) {
+                writer.writeAttribute("IsForward", "false");
+            }
+            writer.writeCharacters(NodeSetValues.format(target.get()));
+            writer.writeEndElement();
+        }
+        newLine(writer, 2);
+        writer.writeEndElement();
+    }
+
+    private static void writeDataType(XMLStreamWriter writer, NodeId dataType, Map<NodeId, String> aliases) throws XMLStreamException {
+        if (dataType != null && !dataType.equals(new NodeId(0, 24))) {
+            writer.writeAttribute("DataType", alias(dataType, aliases));
+        }
+    }
+
+    private static void writeArrayDimensions(XMLStreamWriter writer, UInteger[] dimensions) throws XMLStreamException {
+        if (dimensions != null && dimensions.length > 0) {
+            writer.writeAttribute("ArrayDimensions", Arrays.stream(dimensions).map(UInteger::toString).collect(Collectors.joining(",")));
+        }
+    }
+
+    private static void writeNonDefault(XMLStreamWriter writer, String attribute, Object value, Object defaultValue) throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        Object comparable = value instanceof UNumber ? ((UNumber) value).intValue() : value;
+        if (!comparable.equals(defaultValue)) {
+            writer.writeAttribute(attribute, comparable.toString());
+        }
+    }
+
+    private static void writeLocalizedText(XMLStreamWriter writer, String element, LocalizedText text) throws XMLStreamException {
+        if (text == null || text.getText() == null) {
+            return;
+        }
+        newLine(writer, 2);
+        writer.writeStartElement(NODESET_NAMESPACE, element);
+        if (text.getLocale() != null && !text.getLocale().isEmpty()) {
+            writer.writeAttribute("Locale", text.getLocale());
+        }
+        writer.writeCharacters(text.getText());
+        writer.writeEndElement();
+    }
+
+    private static void writeText(XMLStreamWriter writer, String element, String text) throws XMLStreamException {
+        writer.writeStartElement(NODESET_NAMESPACE, element);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    private static String alias(NodeId nodeId, Map<NodeId, String> aliases) {
+        return aliases.getOrDefault(nodeId, NodeSetValues.format(nodeId));
+    }
+
+    private static String browseName(QualifiedName name) {
+        int index = name.getNamespaceIndex().intValue();
+        return index == 0 ? name.getName() : index + ":" + name.getName();
+    }
+
+    private static void newLine(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        writer.writeCharacters("\n" + "  ".repeat(depth));
+    }
+}
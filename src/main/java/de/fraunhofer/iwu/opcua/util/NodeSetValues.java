@@ -0,0 +1,447 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.*;
+
+/**
+ * Decodes and encodes the {@code Value} of a NodeSet2 Variable or VariableType, given in the XML encoding of the
+ * builtin types ({@code <Double>}, {@code <ListOfInt32>}, {@code <LocalizedText>}, ...). NodeIds and namespace indices
+ * are translated with the NodeSet's namespace mapping. ExtensionObjects keep their body undecoded.
+ */
+final class NodeSetValues {
+
+    static final String TYPES_NAMESPACE = "http://opcfoundation.org/UA/2008/02/Types.xsd";
+    private static final XMLInputFactory FRAGMENT_INPUT = secureInputFactory();
+
+    private final Function<String, NodeId> nodeIds;
+    private final Function<Integer, Integer> namespaceIndices;
+
+    NodeSetValues(Function<String, NodeId> nodeIds, Function<Integer, Integer> namespaceIndices) {
+        this.nodeIds = nodeIds;
+        this.namespaceIndices = namespaceIndices;
+    }
+
+    /**
+     * The value of the element, or null if its type is not supported.
+     */
+    Object decode(Element element) {
+        String name = element.getLocalName();
+        if (name.startsWith("ListOf")) {
+            String type = name.substring("ListOf".length());
+            List<Object> elements = new ArrayList<>();
+            for (Element child : children(element)) {
+                elements.add(decodeScalar(type, child));
+            }
+            Class<?> componentType = componentType(type);
+            if (componentType == null) {
+                return null;
+            }
+            Object array = Array.newInstance(componentType, elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        }
+        return decodeScalar(name, element);
+    }
+
+    private Object decodeScalar(String type, Element element) {
+        String text = element.getTextContent().trim();
+        switch (type) {
+            case "Boolean":
+                return Boolean.parseBoolean(text);
+            case "SByte":
+                return Byte.parseByte(text);
+            case "Byte":
+                return ubyte(Short.parseShort(text));
+            case "Int16":
+                return Short.parseShort(text);
+            case "UInt16":
+                return ushort(Integer.parseInt(text));
+            case "Int32":
+                return Integer.parseInt(text);
+            case "UInt32":
+                return uint(Long.parseLong(text));
+            case "Int64":
+                return Long.parseLong(text);
+            case "UInt64":
+                return ulong(text);
+            case "Float":
+                return parseFloat(text);
+            case "Double":
+                return parseDouble(text);
+            case "String":
+                return element.getTextContent();
+            case "DateTime":
+                return new DateTime(parseDateTime(text));
+            case "Guid":
+                return UUID.fromString(childText(element, "String"));
+            case "ByteString":
+                return ByteString.of(Base64.getMimeDecoder().decode(text));
+            case "XmlElement":
+                Element content = first(children(element));
+                return new XmlElement(content != null ? serialize(content) : null);
+            case "NodeId":
+                return nodeIds.apply(childText(element, "Identifier"));
+            case "ExpandedNodeId":
+                return nodeIds.apply(childText(element, "Identifier")).expanded();
+            case "StatusCode":
+                return new StatusCode(Long.parseLong(childText(element, "Code")));
+            case "QualifiedName":
+                String index = childText(element, "NamespaceIndex");
+                int namespaceIndex = index != null ? namespaceIndices.apply(Integer.parseInt(index)) : 0;
+                return new QualifiedName(namespaceIndex, childText(element, "Name"));
+            case "LocalizedText":
+                return new LocalizedText(childText(element, "Locale"), childText(element, "Text"));
+            case "ExtensionObject":
+                Element body = child(element, "Body");
+                Element bodyContent = body != null ? first(children(body)) : null;
+                NodeId encodingId = nodeIds.apply(childText(child(element, "TypeId"), "Identifier"));
+                if (bodyContent != null && "ByteString".equals(bodyContent.getLocalName())) {
+                    return new ExtensionObject(ByteString.of(Base64.getMimeDecoder().decode(bodyContent.getTextContent().trim())), encodingId);
+                }
+                return new ExtensionObject(new XmlElement(bodyContent != null ? serialize(bodyContent) : null), encodingId);
+            default:
+                return null;
+        }
+    }
+
+    private static Class<?> componentType(String type) {
+        switch (type) {
+            case "Boolean":
+                return Boolean.class;
+            case "SByte":
+                return Byte.class;
+            case "Byte":
+                return UByte.class;
+            case "Int16":
+                return Short.class;
+            case "UInt16":
+                return UShort.class;
+            case "Int32":
+                return Integer.class;
+            case "UInt32":
+                return UInteger.class;
+            case "Int64":
+                return Long.class;
+            case "UInt64":
+                return ULong.class;
+            case "Float":
+                return Float.class;
+            case "Double":
+                return Double.class;
+            case "String":
+                return String.class;
+            case "DateTime":
+                return DateTime.class;
+            case "Guid":
+                return UUID.class;
+            case "ByteString":
+                return ByteString.class;
+            case "XmlElement":
+                return XmlElement.class;
+            case "NodeId":
+                return NodeId.class;
+            case "ExpandedNodeId":
+                return ExpandedNodeId.class;
+            case "StatusCode":
+                return StatusCode.class;
+            case "QualifiedName":
+                return QualifiedName.class;
+            case "LocalizedText":
+                return LocalizedText.class;
+            case "ExtensionObject":
+                return ExtensionObject.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * xs:dateTime, values without an offset are taken as UTC.
+     */
+    private static Instant parseDateTime(String text) {
+        TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(text, OffsetDateTime::from, LocalDateTime::from);
+        return parsed instanceof OffsetDateTime ? ((OffsetDateTime) parsed).toInstant()
+                : ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC);
+    }
+
+    private static Float parseFloat(String text) {
+        switch (text) {
+            case "INF":
+                return Float.POSITIVE_INFINITY;
+            case "-INF":
+                return Float.NEGATIVE_INFINITY;
+            case "NaN":
+                return Float.NaN;
+            default:
+                return Float.parseFloat(text);
+        }
+    }
+
+    private static Double parseDouble(String text) {
+        switch (text) {
+            case "INF":
+                return Double.POSITIVE_INFINITY;
+            case "-INF":
+                return Double.NEGATIVE_INFINITY;
+            case "NaN":
+                return Double.NaN;
+            default:
+                return Double.parseDouble(text);
+        }
+    }
+
+    private static List<Element> children(Element element) {
+        List<Element> children = new ArrayList<>();
+        for (Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) {
+                children.add((Element) n);
+            }
+        }
+        return children;
+    }
+
+    private static Element first(List<Element> elements) {
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    private static Element child(Element element, String localName) {
+        if (element == null) {
+            return null;
+        }
+        for (Element child : children(element)) {
+            if (localName.equals(child.getLocalName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static String childText(Element element, String localName) {
+        Element child = child(element, localName);
+        return child != null ? child.getTextContent().trim() : null;
+    }
+
+    private static String serialize(Element element) {
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(element), new StreamResult(writer));
+            return writer.toString();
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException("unable to serialize " + element.getLocalName(), e);
+        }
+    }
+
+    /**
+     * Writes the value in the XML encoding of its builtin type. Returns false without writing anything if the type is
+     * not supported, e.g. multi-dimensional arrays or DiagnosticInfo.
+     */
+    static boolean encode(XMLStreamWriter writer, Object value, NamespaceTable namespaces) throws XMLStreamException {
+        if (value.getClass().isArray()) {
+            Class<?> componentType = value.getClass().getComponentType();
+            BuiltinDataType type = BuiltinDataType.fromBackingClass(componentType.isPrimitive() ? boxed(componentType) : componentType);
+            if (type == null || !isSupported(type)) {
+                return false;
+            }
+            writer.writeStartElement("uax", "ListOf" + type.name(), TYPES_NAMESPACE);
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeScalar(writer, type, Array.get(value, i), namespaces);
+            }
+            writer.writeEndElement();
+            return true;
+        }
+        BuiltinDataType type = BuiltinDataType.fromBackingClass(value.getClass());
+        if (type == null || !isSupported(type)) {
+            return false;
+        }
+        writeScalar(writer, type, value, namespaces);
+        return true;
+    }
+
+    /**
+     * The NodeId as written in NodeSets, without the namespace index for namespace 0.
+     */
+    static String format(NodeId nodeId) {
+        String id = nodeId.toParseableString();
+        return nodeId.getNamespaceIndex().intValue() == 0 && id.startsWith("ns=0;") ? id.substring("ns=0;".length()) : id;
+    }
+
+    private static boolean isSupported(BuiltinDataType type) {
+        return type != BuiltinDataType.DataValue && type != BuiltinDataType.DiagnosticInfo;
+    }
+
+    private static Class<?> boxed(Class<?> primitive) {
+        return Array.get(Array.newInstance(primitive, 1), 0).getClass();
+    }
+
+    private static void writeScalar(XMLStreamWriter writer, BuiltinDataType type, Object value, NamespaceTable namespaces) throws XMLStreamException {
+        writer.writeStartElement("uax", type.name(), TYPES_NAMESPACE);
+        if (value == null) {
+            writer.writeEndElement();
+            return;
+        }
+        switch (type) {
+            case Float:
+            case Double:
+                double d = ((Number) value).doubleValue();
+                writer.writeCharacters(Double.isNaN(d) ? "NaN" : Double.isInfinite(d) ? (d > 0 ? "INF" : "-INF") : value.toString());
+                break;
+            case DateTime:
+                writer.writeCharacters(((DateTime) value).getJavaInstant().toString());
+                break;
+            case Guid:
+                writeElement(writer, "String", value.toString());
+                break;
+            case ByteString:
+                byte[] bytes = ((ByteString) value).bytes();
+                writer.writeCharacters(Base64.getEncoder().encodeToString(bytes != null ? bytes : new byte[0]));
+                break;
+            case XmlElement:
+                String fragment = ((XmlElement) value).getFragment();
+                if (fragment != null && !fragment.isBlank()) {
+                    copyFragment(writer, fragment);
+                }
+                break;
+            case NodeId:
+                writeElement(writer, "Identifier", format((NodeId) value));
+                break;
+            case ExpandedNodeId:
+                ExpandedNodeId expanded = (ExpandedNodeId) value;
+                writeElement(writer, "Identifier", expanded.toNodeId(namespaces).map(NodeSetValues::format)
+                        .orElse(expanded.toParseableString()));
+                break;
+            case StatusCode:
+                writeElement(writer, "Code", String.valueOf(((StatusCode) value).getValue()));
+                break;
+            case QualifiedName:
+                QualifiedName name = (QualifiedName) value;
+                writeElement(writer, "NamespaceIndex", name.getNamespaceIndex().toString());
+                writeElement(writer, "Name", name.getName());
+                break;
+            case LocalizedText:
+                LocalizedText text = (LocalizedText) value;
+                writeElement(writer, "Locale", text.getLocale());
+                writeElement(writer, "Text", text.getText());
+                break;
+            case ExtensionObject:
+                ExtensionObject extensionObject = (ExtensionObject) value;
+                writer.writeStartElement("uax", "TypeId", TYPES_NAMESPACE);
+                writeElement(writer, "Identifier", format(extensionObject.getEncodingId()));
+                writer.writeEndElement();
+                writer.writeStartElement("uax", "Body", TYPES_NAMESPACE);
+                if (extensionObject.getBody() instanceof ByteString) {
+                    writeScalar(writer, BuiltinDataType.ByteString, extensionObject.getBody(), namespaces);
+                } else if (extensionObject.getBody() instanceof XmlElement && ((XmlElement) extensionObject.getBody()).getFragment() != null) {
+                    copyFragment(writer, ((XmlElement) extensionObject.getBody()).getFragment());
+                }
+                writer.writeEndElement();
+                break;
+            case Variant:
+                Object inner = ((Variant) value).getValue();
+                if (inner != null) {
+                    encode(writer, inner, namespaces);
+                }
+                break;
+            default:
+                writer.writeCharacters(value.toString());
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String localName, String text) throws XMLStreamException {
+        if (text == null) {
+            return;
+        }
+        writer.writeStartElement("uax", localName, TYPES_NAMESPACE);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Copies an XML fragment event by event, the writer has no way to write markup as is.
+     */
+    private static void copyFragment(XMLStreamWriter writer, String fragment) throws XMLStreamException {
+        XMLStreamReader reader = FRAGMENT_INPUT.createXMLStreamReader(new StringReader(fragment));
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        writer.writeStartElement(nonNull(reader.getPrefix()), reader.getLocalName(), nonNull(reader.getNamespaceURI()));
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            if (reader.getNamespacePrefix(i) == null || reader.getNamespacePrefix(i).isEmpty()) {
+                                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+                            } else {
+                                writer.writeNamespace(reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+                            }
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            writer.writeAttribute(nonNull(reader.getAttributePrefix(i)), nonNull(reader.getAttributeNamespace(i)),
+                                    reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        writer.writeCharacters(reader.getText());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        writer.writeEndElement();
+                        break;
+                    default:
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : "";
+    }
+
+    private static XMLInputFactory secureInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
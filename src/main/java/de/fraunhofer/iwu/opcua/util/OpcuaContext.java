@@ -1,5 +1,6 @@
 package de.fraunhofer.iwu.opcua.util;
 
+import io.micrometer.core.instrument.Timer;
 import org.eclipse.milo.opcua.binaryschema.GenericBsdParser;
 import org.eclipse.milo.opcua.sdk.client.AddressSpace;
 import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
@@ -14,16 +15,26 @@ import org.eclipse.milo.opcua.stack.core.NamespaceTable;
 import org.eclipse.milo.opcua.stack.core.UaException;
 import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
 
@@ -36,47 +47,185 @@ public class OpcuaContext {
     private NamespaceTable nst;
     private AddressSpace as;
     private AddressSpace.BrowseOptions hierarchicalOptions;
-    private AddressSpace.BrowseOptions allNodesOptions;
+    private List<AddressSpace.BrowseOptions> allNodesOptions;
+    private Predicate<NodeId> inScope;
+    private Map<NodeId, KnownNode> knownNodes;
+    private final Map<NodeId, List<ReferenceDescription>> fromKnownNodes = new HashMap<>();
+    private final CrawlConfig crawlConfig;
+    private ReferenceTypeTree referenceTypes;
+    private DataTypeCache dataTypeCache;
+    private final TransformerMetrics metrics;
 
 
     public OpcuaContext(String endpointUrl) {
+        this(endpointUrl, CrawlConfig.defaults());
+    }
+
+    public OpcuaContext(String endpointUrl, CrawlConfig crawlConfig) {
+        this.crawlConfig = crawlConfig;
+        this.metrics = new TransformerMetrics(crawlConfig.getMeterRegistry(), endpointUrl);
         try {
+            Timer.Sample connect = metrics.start();
             this.endpoints = browseEndpoints(endpointUrl);
             this.client = createClient(endpointUrl);
+            metrics.phaseDone(TransformerMetrics.Phase.CONNECT, connect);
+            Timer.Sample crawl = metrics.start();
             nst = getClient().getNamespaceTable();
             as = getClient().getAddressSpace();
-            hierarchicalOptions = AddressSpace.BrowseOptions.builder().setBrowseDirection(BrowseDirection.Forward).setIncludeSubtypes(true).setReferenceType(Identifiers.HierarchicalReferences).setNodeClassMask(uint(0)).build();
-            allNodesOptions = AddressSpace.BrowseOptions.builder().setBrowseDirection(BrowseDirection.Forward).setIncludeSubtypes(true).setReferenceType(Identifiers.References).setNodeClassMask(uint(0)).build();
-            UaNode rootNode = as.getNode(Identifiers.RootFolder);
-            this.nodeRefMap = browseAddressSpace(rootNode, new ConcurrentHashMap<UaNode, List<ReferenceDescription>>());
+            CrawlScope scope = crawlConfig.getScope();
+            hierarchicalOptions = AddressSpace.BrowseOptions.builder().setBrowseDirection(BrowseDirection.Forward).setIncludeSubtypes(true).setReferenceType(Identifiers.HierarchicalReferences).setNodeClassMask(uint(scope.getNodeClassMask())).build();
+            allNodesOptions = scope.getReferenceTypes().stream().map(type -> AddressSpace.BrowseOptions.builder().setBrowseDirection(BrowseDirection.Forward).setIncludeSubtypes(true).setReferenceType(type).setNodeClassMask(uint(scope.getNodeClassMask())).build()).collect(Collectors.toList());
+            inScope = scope.namespaceFilter(nst);
+            knownNodes = scope.getKnownNodes();
+            if (crawlConfig.isSingleBrowse()) {
+                referenceTypes = ReferenceTypeTree.read(getClient());
+            }
+            BrowseSnapshot snapshot = null;
+            if (crawlConfig.getSnapshotDirectory() != null && scope.equals(CrawlScope.all())) {
+                snapshot = BrowseSnapshot.inDirectory(getClient(), crawlConfig.getSnapshotDirectory());
+                this.nodeRefMap = snapshot.load().orElse(null);
+                metrics.cacheLookups("snapshot", nodeRefMap != null ? 1 : 0, nodeRefMap != null ? 0 : 1);
+            }
+            if (this.nodeRefMap == null) {
+                if (crawlConfig.getMode() == CrawlConfig.Mode.PIPELINED) {
+                    this.nodeRefMap = new AddressSpaceCrawler(getClient(), crawlConfig, referenceTypes, metrics).crawl();
+                } else {
+                    Map<UaNode, List<ReferenceDescription>> nodeMap = new ConcurrentHashMap<>();
+                    browseAddressSpace(scope.getStartNodes(), nodeMap);
+                    CrawlScope.attach(nodeMap, fromKnownNodes);
+                    this.nodeRefMap = nodeMap;
+                }
+                if (snapshot != null) {
+                    try {
+                        snapshot.save(nodeRefMap);
+                    } catch (IOException e) {
+                        logger.error("unable to save snapshot " + snapshot.getFile() + ": " + e.getMessage());
+                    }
+                }
+            }
+            metrics.phaseDone(TransformerMetrics.Phase.CRAWL, crawl);
 
+        } catch (InterruptedException e) {
+            // the caller, e.g. the FleetTransformer on a timeout, sees the interrupt and the missing nodes
+            Thread.currentThread().interrupt();
+            logger.error("interrupted while connecting to or crawling " + endpointUrl);
         } catch (Exception e) {
             logger.error(e.getMessage());
         }
     }
 
+    /**
+     * Context over an address space that is already held in memory, e.g. generated or read from a file. There is no
+     * client, {@link #getClient()} returns null.
+     */
+    public OpcuaContext(NamespaceTable namespaces, Map<? extends UaNode, List<ReferenceDescription>> nodeRefMap, List<EndpointDescription> endpoints) {
+        this.crawlConfig = CrawlConfig.defaults();
+        this.metrics = new TransformerMetrics(crawlConfig.getMeterRegistry(), "none");
+        this.nst = namespaces;
+        this.nodeRefMap = nodeRefMap;
+        this.endpoints = endpoints;
+    }
+
     private List<EndpointDescription> browseEndpoints(String endpointUrl) throws InterruptedException, ExecutionException {
         return DiscoveryClient.getEndpoints(endpointUrl + "/discovery").get();
     }
 
-    private Map<? extends UaNode, List<ReferenceDescription>> browseAddressSpace(UaNode root, Map<UaNode, List<ReferenceDescription>> nodeMap) throws UaException {
-        Map<UaNode, List<ReferenceDescription>> localMap = nodeMap;
-        as.setBrowseOptions(allNodesOptions);
-        List<ReferenceDescription> allRefs = as.browse(root);
-        as.setBrowseOptions(hierarchicalOptions);
-        if (!nodeMap.containsKey(root)) {
-            localMap.put(root, allRefs);
-            List<ReferenceDescription> hierRefs = as.browse(root);
-            hierRefs.forEach(r -> {
-                try {
-                    UaNode node = as.getNode(r.getNodeId().toNodeId(nst).get());
-                    localMap.put(node, browseAddressSpace(node, localMap).get(node));
-                } catch (UaException e) {
-                    logger.info("unable to fetch node " + r.getNodeId().toParseableString() + ". Skipping.");
+    /**
+     * Crawls breadth-first, one depth after the other, so every node is reached first on its shortest path from the
+     * start nodes and the maximum depth of the scope cuts the address space off at the same nodes whatever the order
+     * of the references. Known nodes are not read, and not browsed either where the scope takes their references as
+     * they are.
+     */
+    private void browseAddressSpace(List<NodeId> startNodes, Map<UaNode, List<ReferenceDescription>> nodeMap) throws InterruptedException {
+        CrawlScope scope = crawlConfig.getScope();
+        Set<NodeId> visited = new HashSet<>();
+        Deque<PendingNode> queue = new ArrayDeque<>();
+        startNodes.stream().filter(visited::add).forEach(n -> queue.add(new PendingNode(n, 0)));
+        while (!queue.isEmpty()) {
+            PendingNode p = queue.poll();
+            KnownNode known = knownNodes.get(p.nodeId);
+            try {
+                List<ReferenceDescription> children;
+                if (scope.usesReferencesOf(known)) {
+                    keepReferencesFromKnownNode(p.nodeId, known, known.getReferences());
+                    children = known.getChildren();
+                } else {
+                    UaNode node = known == null ? getNode(p.nodeId) : null;
+                    List<ReferenceDescription> allRefs = browseAll(p.nodeId);
+                    if (node == null) {
+                        keepReferencesFromKnownNode(p.nodeId, known, allRefs);
+                    } else {
+                        nodeMap.put(node, allRefs);
+                        metrics.nodesDiscovered(1);
+                    }
+                    children = scope.descendsFrom(p.depth) ? hierarchicalReferences(p.nodeId, allRefs) : List.of();
+                }
+                if (scope.descendsFrom(p.depth)) {
+                    for (ReferenceDescription r : children) {
+                        r.getNodeId().local(nst).filter(inScope).filter(visited::add)
+                                .ifPresent(target -> queue.add(new PendingNode(target, p.depth + 1)));
+                    }
+                }
+            } catch (UaException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    // Milo's synchronous services clear the interrupt and wrap it
+                    throw (InterruptedException) e.getCause();
                 }
-            });
+                logger.info("unable to fetch " + (p.depth == 0 ? "start node " : "node ") + p.nodeId.toParseableString() + ". Skipping.");
+            }
+        }
+    }
+
+    /**
+     * Keeps the references of a node of the scope's known nodes, which is not read, to nodes that are not known for
+     * {@link CrawlScope#attach(Map, Map)}.
+     */
+    private void keepReferencesFromKnownNode(NodeId nodeId, KnownNode known, List<ReferenceDescription> allRefs) {
+        allRefs.forEach(r -> r.getNodeId().toNodeId(nst).ifPresent(target -> {
+            if (!knownNodes.containsKey(target)) {
+                fromKnownNodes.computeIfAbsent(target, t -> new ArrayList<>()).add(CrawlScope.inverse(nodeId, known.getNodeClass(), r));
+            }
+        }));
+    }
+
+    private List<ReferenceDescription> browseAll(NodeId nodeId) throws UaException {
+        List<List<ReferenceDescription>> perType = new ArrayList<>(allNodesOptions.size());
+        for (AddressSpace.BrowseOptions options : allNodesOptions) {
+            perType.add(browse(nodeId, options));
+        }
+        return CrawlScope.merge(perType);
+    }
+
+    private List<ReferenceDescription> hierarchicalReferences(NodeId nodeId, List<ReferenceDescription> allRefs) throws UaException {
+        if (referenceTypes != null) {
+            return allRefs.stream().filter(r -> referenceTypes.isHierarchical(r.getReferenceTypeId())).collect(Collectors.toList());
+        }
+        List<ReferenceDescription> hierRefs = browse(nodeId, hierarchicalOptions);
+        return crawlConfig.getScope().isAllReferenceTypes() ? hierRefs : CrawlScope.retain(hierRefs, allRefs);
+    }
+
+    private List<ReferenceDescription> browse(NodeId nodeId, AddressSpace.BrowseOptions options) throws UaException {
+        Timer.Sample sample = metrics.start();
+        boolean succeeded = false;
+        try {
+            List<ReferenceDescription> references = as.browse(nodeId, options);
+            succeeded = true;
+            return references;
+        } finally {
+            metrics.requestDone(TransformerMetrics.Service.BROWSE, sample, succeeded);
+        }
+    }
+
+    private UaNode getNode(NodeId nodeId) throws UaException {
+        Timer.Sample sample = metrics.start();
+        boolean succeeded = false;
+        try {
+            UaNode node = as.getNode(nodeId);
+            succeeded = true;
+            return node;
+        } finally {
+            metrics.requestDone(TransformerMetrics.Service.READ, sample, succeeded);
         }
-        return localMap;
     }
 
     private OpcUaClient createClient(String endpointUrl) throws UaException, ExecutionException, InterruptedException {
@@ -90,8 +239,13 @@ public class OpcuaContext {
 
 
         OpcUaClient opcUaClient = OpcUaClient.create(clientConfig);
-        opcUaClient.addSessionInitializer(new DataTypeTreeSessionInitializer());
-        opcUaClient.addSessionInitializer(new DataTypeDictionarySessionInitializer(new GenericBsdParser()));
+        if (crawlConfig.getDataTypeCacheDirectory() == null) {
+            opcUaClient.addSessionInitializer(new DataTypeTreeSessionInitializer());
+            opcUaClient.addSessionInitializer(new DataTypeDictionarySessionInitializer(new GenericBsdParser()));
+        } else {
+            dataTypeCache = new DataTypeCache(crawlConfig.getDataTypeCacheDirectory(), new GenericBsdParser(), metrics);
+            opcUaClient.addSessionInitializer(dataTypeCache);
+        }
         opcUaClient.connect().get();
         return opcUaClient;
     }
@@ -115,4 +269,38 @@ public class OpcuaContext {
     public NamespaceTable getNamespaces() {
         return nst;
     }
+
+    public ReferenceTypeTree getReferenceTypes() {
+        return referenceTypes;
+    }
+
+    /**
+     * DataTypeTree and dictionaries of the current session if a data type cache directory is configured, otherwise
+     * null.
+     */
+    public DataTypeCache.Entry getDataTypes() {
+        return dataTypeCache != null ? dataTypeCache.getEntry() : null;
+    }
+
+    public CrawlConfig getCrawlConfig() {
+        return crawlConfig;
+    }
+
+    /**
+     * Meters of the crawl, registered in the registry of the crawl config. Transformers of this context record into
+     * them as well.
+     */
+    public TransformerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static class PendingNode {
+        final NodeId nodeId;
+        final int depth;
+
+        PendingNode(NodeId nodeId, int depth) {
+            this.nodeId = nodeId;
+            this.depth = depth;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The subset of Server/ServerCapabilities/OperationLimits the crawler sizes its requests from. A limit of 0 means the
+ * server does not announce one.
+ */
+public class OperationLimits {
+
+    private final int maxNodesPerRead;
+    private final int maxNodesPerBrowse;
+    private final int maxMonitoredItemsPerCall;
+
+    public OperationLimits(int maxNodesPerRead, int maxNodesPerBrowse) {
+        this(maxNodesPerRead, maxNodesPerBrowse, 0);
+    }
+
+    public OperationLimits(int maxNodesPerRead, int maxNodesPerBrowse, int maxMonitoredItemsPerCall) {
+        this.maxNodesPerRead = maxNodesPerRead;
+        this.maxNodesPerBrowse = maxNodesPerBrowse;
+        this.maxMonitoredItemsPerCall = maxMonitoredItemsPerCall;
+    }
+
+    public static CompletableFuture<OperationLimits> read(OpcUaClient client) {
+        List<NodeId> nodeIds = List.of(
+                Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead,
+                Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerBrowse,
+                Identifiers.Server_ServerCapabilities_OperationLimits_MaxMonitoredItemsPerCall);
+        return client.readValues(0.0, TimestampsToReturn.Neither, nodeIds)
+                .thenApply(values -> new OperationLimits(toInt(values.get(0)), toInt(values.get(1)), toInt(values.get(2))));
+    }
+
+    private static int toInt(DataValue value) {
+        if (value.getStatusCode() != null && value.getStatusCode().isGood() && value.getValue().getValue() instanceof UInteger) {
+            long limit = ((UInteger) value.getValue().getValue()).longValue();
+            return (int) Math.min(limit, Integer.MAX_VALUE);
+        }
+        return 0;
+    }
+
+    public int getMaxNodesPerRead() {
+        return maxNodesPerRead;
+    }
+
+    public int getMaxNodesPerBrowse() {
+        return maxNodesPerBrowse;
+    }
+
+    public int getMaxMonitoredItemsPerCall() {
+        return maxMonitoredItemsPerCall;
+    }
+
+    /**
+     * Caps a locally configured batch size with the server limit, if the server announces one.
+     */
+    public static int effective(int configured, int serverLimit) {
+        return serverLimit > 0 ? Math.min(configured, serverLimit) : configured;
+    }
+}
@@ -0,0 +1,193 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Format, compression and location of the files a transformer writes. N-Triples writes one statement per line and can
+ * be split for parallel processing downstream, {@link RDFFormat#BINARY} is the fastest to write and parse.
+ */
+public class OutputConfig {
+
+    public enum Compression {
+        NONE(""),
+        GZIP(".gz"),
+        ZSTD(".zst");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final RDFFormat format;
+    private final Compression compression;
+    private final int level;
+    private final Path directory;
+    private final int bufferSize;
+
+    private OutputConfig(Builder builder) {
+        this.format = builder.format;
+        this.compression = builder.compression;
+        this.level = builder.level;
+        this.directory = builder.directory;
+        this.bufferSize = builder.bufferSize;
+    }
+
+    public static OutputConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public RDFFormat getFormat() {
+        return format;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * File extension of the format followed by the one of the compression, e.g. {@code .nt.zst}.
+     */
+    public String getFileExtension() {
+        return "." + format.getDefaultFileExtension() + compression.getExtension();
+    }
+
+    /**
+     * Creates the file and its parent directories and opens it for buffered, compressed writing. Closing the stream
+     * finishes the compression and closes the file.
+     */
+    public OutputStream open(Path file) throws IOException {
+        return wrap(create(file));
+    }
+
+    /**
+     * Like {@link #open(Path)}, counting the compressed bytes written to the file in the metrics.
+     */
+    public OutputStream open(Path file, TransformerMetrics metrics) throws IOException {
+        return wrap(metrics.countBytes(this, create(file)));
+    }
+
+    private static OutputStream create(Path file) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        return Files.newOutputStream(file);
+    }
+
+    /**
+     * Wraps the stream in the configured compression and buffer. Closing the returned stream closes the given one.
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        switch (compression) {
+            case GZIP:
+                GZIPOutputStream gzip = new GZIPOutputStream(out, bufferSize) {
+                    {
+                        def.setLevel(level < 0 ? Deflater.DEFAULT_COMPRESSION : level);
+                    }
+                };
+                return new BufferedOutputStream(gzip, bufferSize);
+            case ZSTD:
+                ZstdOutputStream zstd = new ZstdOutputStream(new BufferedOutputStream(out, bufferSize));
+                if (level >= 0) {
+                    zstd.setLevel(level);
+                }
+                return new BufferedOutputStream(zstd, bufferSize);
+            default:
+                return new BufferedOutputStream(out, bufferSize);
+        }
+    }
+
+    public static class Builder {
+        private RDFFormat format = RDFFormat.TURTLE;
+        private Compression compression = Compression.NONE;
+        private int level = -1;
+        private Path directory = Path.of("target/output/transformed");
+        private int bufferSize = 1 << 16;
+
+        public Builder setFormat(RDFFormat format) {
+            this.format = Objects.requireNonNull(format);
+            return this;
+        }
+
+        public Builder setCompression(Compression compression) {
+            this.compression = Objects.requireNonNull(compression);
+            return this;
+        }
+
+        /**
+         * Compression level, 0-9 for gzip and 1-22 for zstd. -1 (the default) uses the level of the codec. The level
+         * is checked against the compression in {@link #build()}.
+         */
+        public Builder setLevel(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Directory files without an explicit path are written to, {@code target/output/transformed} by default.
+         */
+        public Builder setDirectory(Path directory) {
+            this.directory = Objects.requireNonNull(directory);
+            return this;
+        }
+
+        public Builder setBufferSize(int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("bufferSize must be positive, was " + bufferSize);
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public OutputConfig build() {
+            if (level != -1) {
+                switch (compression) {
+                    case GZIP:
+                        if (level < 0 || level > 9) {
+                            throw new IllegalArgumentException("level must be between 0 and 9 for gzip, was " + level);
+                        }
+                        break;
+                    case ZSTD:
+                        if (level < 1 || level > 22) {
+                            throw new IllegalArgumentException("level must be between 1 and 22 for zstd, was " + level);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("level requires a compression, was " + level);
+                }
+            }
+            return new OutputConfig(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The ReferenceType hierarchy of a server, read once via HasSubtype starting at References. Lets the crawler browse
+ * every node with all references and decide locally which of them are hierarchical.
+ */
+public class ReferenceTypeTree {
+
+    private final Map<NodeId, NodeId> supertypes;
+    private final Map<NodeId, Boolean> hierarchical = new ConcurrentHashMap<>();
+
+    public ReferenceTypeTree(Map<NodeId, NodeId> supertypes) {
+        this.supertypes = supertypes;
+    }
+
+    public static ReferenceTypeTree read(OpcUaClient client) throws ExecutionException, InterruptedException {
+        BatchBrowser browser = new BatchBrowser(client);
+        NamespaceTable nst = client.getNamespaceTable();
+        Map<NodeId, NodeId> supertypes = new HashMap<>();
+        supertypes.put(Identifiers.References, null);
+        List<NodeId> level = List.of(Identifiers.References);
+        while (!level.isEmpty()) {
+            List<BrowseDescription> descriptions = new ArrayList<>(level.size());
+            level.forEach(n -> descriptions.add(BatchBrowser.forward(n, Identifiers.HasSubtype, false, NodeClass.ReferenceType.getValue())));
+            List<List<ReferenceDescription>> results = browser.browse(descriptions).get();
+            List<NodeId> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                NodeId parent = level.get(i);
+                results.get(i).forEach(r -> r.getNodeId().toNodeId(nst).ifPresent(subtype -> {
+                    if (!supertypes.containsKey(subtype)) {
+                        supertypes.put(subtype, parent);
+                        next.add(subtype);
+                    }
+                }));
+            }
+            level = next;
+        }
+        return new ReferenceTypeTree(supertypes);
+    }
+
+    public boolean contains(NodeId referenceType) {
+        return supertypes.containsKey(referenceType);
+    }
+
+    public boolean isSubtypeOf(NodeId referenceType, NodeId supertype) {
+        NodeId current = referenceType;
+        while (current != null) {
+            if (current.equals(supertype)) {
+                return true;
+            }
+            current = supertypes.get(current);
+        }
+        return false;
+    }
+
+    public boolean isHierarchical(NodeId referenceType) {
+        return hierarchical.computeIfAbsent(referenceType, r -> isSubtypeOf(r, Identifiers.HierarchicalReferences));
+    }
+}
@@ -0,0 +1,13 @@
+package de.fraunhofer.iwu.opcua.util;
+
+/**
+ * Variant of {@link Transformer} that hands its output to a sink while the address space is processed instead of
+ * returning a complete result.
+ *
+ * @param <H> the sink type, e.g. an RDF4J {@code RDFHandler}
+ */
+public interface StreamingTransformer<H> {
+
+    void transform(H handler);
+
+}
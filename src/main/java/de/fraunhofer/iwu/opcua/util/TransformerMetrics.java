@@ -0,0 +1,177 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters of the crawl, transformation and writing of one server, all tagged with its endpoint URL:
+ * <ul>
+ *     <li>{@value #REQUESTS}: timer of the Browse, BrowseNext and Read requests, tagged by {@code service} and
+ *     {@code outcome}</li>
+ *     <li>{@value #NODES}: counter of the nodes discovered by the crawl, its rate is the crawl throughput</li>
+ *     <li>{@value #STATEMENTS}: counter of the statements generated for the nodes, tagged by {@code nodeClass}</li>
+ *     <li>{@value #CACHE}: counter of cache lookups, tagged by {@code cache} and {@code result} (hit or miss)</li>
+ *     <li>{@value #BYTES}: counter of the bytes written after compression, tagged by {@code format} and
+ *     {@code compression}</li>
+ *     <li>{@value #PHASE}: timer of the phases, tagged by {@code phase}</li>
+ * </ul>
+ * Meters are registered once and cached, recording is cheap enough for every request and chunk of nodes.
+ */
+public class TransformerMetrics {
+
+    public static final String REQUESTS = "opcua.requests";
+    public static final String NODES = "opcua.crawl.nodes";
+    public static final String STATEMENTS = "opcua.transform.statements";
+    public static final String CACHE = "opcua.cache.lookups";
+    public static final String BYTES = "opcua.output.bytes";
+    public static final String PHASE = "opcua.phase";
+
+    public enum Service {
+        BROWSE("browse"),
+        BROWSE_NEXT("browseNext"),
+        READ("read");
+
+        private final String tag;
+
+        Service(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Phase {
+        /**
+         * Discovery of the endpoints, connect and reading the data types.
+         */
+        CONNECT,
+        /**
+         * Browsing and reading the address space, or loading it from a snapshot.
+         */
+        CRAWL,
+        /**
+         * Generating the statements, including writing them when they are streamed to a file.
+         */
+        TRANSFORM,
+        /**
+         * Writing a model that was collected before.
+         */
+        WRITE
+    }
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Map<String, Timer> requests = new ConcurrentHashMap<>();
+    private final Counter nodes;
+    private final Map<NodeClass, Counter> statements = new EnumMap<>(NodeClass.class);
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+
+    public TransformerMetrics(MeterRegistry registry, String endpointUrl) {
+        this.registry = registry;
+        this.tags = Tags.of("endpoint", endpointUrl);
+        this.nodes = Counter.builder(NODES).baseUnit("nodes").description("nodes discovered by the crawl")
+                .tags(tags).register(registry);
+        for (NodeClass nodeClass : NodeClass.values()) {
+            statements.put(nodeClass, Counter.builder(STATEMENTS).baseUnit("statements")
+                    .description("statements generated for the nodes").tags(tags).tag("nodeClass", nodeClass.name())
+                    .register(registry));
+        }
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, Timer.builder(PHASE).description("duration of a phase").tags(tags)
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT)).register(registry));
+        }
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sends the request and records its latency once the response or failure arrives.
+     */
+    public <T> CompletableFuture<T> request(Service service, Supplier<CompletableFuture<T>> request) {
+        Timer.Sample sample = Timer.start(registry);
+        return request.get().whenComplete((response, ex) -> sample.stop(requestTimer(service, ex == null)));
+    }
+
+    /**
+     * Records a request that was sent synchronously and took the time since the sample was started.
+     */
+    public void requestDone(Service service, Timer.Sample sample, boolean succeeded) {
+        sample.stop(requestTimer(service, succeeded));
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void nodesDiscovered(int count) {
+        nodes.increment(count);
+    }
+
+    public void statements(NodeClass nodeClass, long count) {
+        statements.get(nodeClass).increment(count);
+    }
+
+    public void cacheLookups(String cache, long hits, long misses) {
+        counter(CACHE, "cache", cache, "result", "hit").increment(hits);
+        counter(CACHE, "cache", cache, "result", "miss").increment(misses);
+    }
+
+    /**
+     * Ends the phase that began when the sample was started.
+     */
+    public void phaseDone(Phase phase, Timer.Sample sample) {
+        sample.stop(phases.get(phase));
+    }
+
+    public Timer getPhaseTimer(Phase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Counts the bytes written to the stream. Wrap the stream below the compression to count the bytes that reach
+     * the file.
+     */
+    public OutputStream countBytes(OutputConfig outputConfig, OutputStream out) {
+        Counter bytes = counter(BYTES, "format", outputConfig.getFormat().getDefaultFileExtension(),
+                "compression", outputConfig.getCompression().name().toLowerCase(Locale.ROOT));
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytes.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytes.increment(len);
+            }
+        };
+    }
+
+    private Timer requestTimer(Service service, boolean succeeded) {
+        String outcome = succeeded ? "success" : "failure";
+        return requests.computeIfAbsent(service.tag + "/" + outcome, key -> Timer.builder(REQUESTS)
+                .description("latency of the requests to the server").tags(tags).tag("service", service.tag)
+                .tag("outcome", outcome).publishPercentileHistogram().register(registry));
+    }
+
+    private Counter counter(String name, String key1, String value1, String key2, String value2) {
+        return counters.computeIfAbsent(name + "/" + value1 + "/" + value2, key -> Counter.builder(name)
+                .tags(tags).tag(key1, value1).tag(key2, value2).register(registry));
+    }
+}
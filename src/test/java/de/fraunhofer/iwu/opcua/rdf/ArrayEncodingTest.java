@@ -0,0 +1,71 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.rdf4j.model.*;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.util.RDFCollections;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayEncodingTest {
+
+    ValueFactory v = new ValidatingValueFactory();
+
+    @Test
+    void primitiveAndBoxedArraysAsJson() {
+        assertEquals(v.createLiteral("[1.5,-0.0,\"NaN\",\"-INF\"]", ArrayEncoding.JSON),
+                ArrayEncoding.toJson(new double[]{1.5, -0.0, Double.NaN, Double.NEGATIVE_INFINITY}));
+        assertEquals("[0.1,2.0]", ArrayEncoding.toJson(new float[]{0.1f, 2f}).getLabel());
+        assertEquals("[4294967295,null,3]", ArrayEncoding.toJson(new Object[]{uint(4294967295L), null, uint(3)}).getLabel());
+        assertEquals("[[1,2],[3,4]]", ArrayEncoding.toJson(new Integer[][]{{1, 2}, {3, 4}}).getLabel());
+        assertEquals("[true,false]", ArrayEncoding.toJson(new boolean[]{true, false}).getLabel());
+        assertEquals("[\"a \\\"b\\\"\",\"\\u000a\"]", ArrayEncoding.toJson(new String[]{"a \"b\"", "\n"}).getLabel());
+        assertNull(ArrayEncoding.toJson(new Object[]{1, new Object()}));
+    }
+
+    @Test
+    void sequenceKeepsOrderAndDuplicates() {
+        Model model = new LinkedHashModel();
+        Value sequence = ArrayEncoding.SEQUENCE.encode(List.of(v.createLiteral(2), v.createLiteral(2), v.createLiteral(1)), model::add);
+        assertTrue(model.contains((Resource) sequence, RDF.TYPE, RDF.SEQ));
+        assertTrue(model.contains((Resource) sequence, v.createIRI(RDF.NAMESPACE, "_1"), v.createLiteral(2)));
+        assertTrue(model.contains((Resource) sequence, v.createIRI(RDF.NAMESPACE, "_2"), v.createLiteral(2)));
+        assertTrue(model.contains((Resource) sequence, v.createIRI(RDF.NAMESPACE, "_3"), v.createLiteral(1)));
+    }
+
+    @Test
+    void listKeepsOrderAndDuplicates() {
+        Model model = new LinkedHashModel();
+        List<Value> elements = List.of(v.createLiteral(2), v.createLiteral(2), v.createLiteral(1));
+        Value head = ArrayEncoding.LIST.encode(elements, model::add);
+        assertEquals(elements, RDFCollections.asValues(model, (Resource) head, new ArrayList<>()));
+        assertEquals(RDF.NIL, ArrayEncoding.LIST.encode(List.of(), model::add));
+
+        List<Value> withNull = Arrays.asList(v.createLiteral(1), null, v.createLiteral(3));
+        head = ArrayEncoding.LIST.encode(withNull, model::add);
+        assertEquals(List.of(v.createLiteral(1), ArrayEncoding.NULL, v.createLiteral(3)), RDFCollections.asValues(model, (Resource) head, new ArrayList<>()));
+    }
+
+    @Test
+    void literalFallsBackToListForResources() {
+        Model model = new LinkedHashModel();
+        Value literal = ArrayEncoding.LITERAL.encode(List.of(v.createLiteral(1.5), v.createLiteral("x"), v.createLiteral(true)), model::add);
+        assertEquals(v.createLiteral("[1.5,\"x\",true]", ArrayEncoding.JSON), literal);
+        assertTrue(model.isEmpty());
+
+        List<Value> elements = List.of(v.createIRI("http://example.org/a"), v.createLiteral(1));
+        Value head = ArrayEncoding.LITERAL.encode(elements, model::add);
+        assertEquals(elements, RDFCollections.asValues(model, (Resource) head, new ArrayList<>()));
+
+        List<Value> texts = List.of(v.createLiteral("End mill", "en"), v.createLiteral("Fraeser", "de"));
+        head = ArrayEncoding.LITERAL.encode(texts, model::add);
+        assertEquals(texts, RDFCollections.asValues(model, (Resource) head, new ArrayList<>()));
+    }
+}
@@ -1,18 +1,154 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
 import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
+import org.eclipse.milo.opcua.stack.core.types.structured.Argument;
+import org.eclipse.milo.opcua.stack.core.types.structured.BuildInfo;
+import org.eclipse.milo.opcua.stack.core.types.structured.ServerStatusDataType;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.util.RDFCollections;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 class DataTypeMapperTest {
 
+    DataTypeMapper mapper = new DataTypeMapper(null, null);
+
     @Test
     void testLambda() {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void unsignedTypesAreWidened() {
+        assertEquals(XSD.SHORT, mapper.getLiteralFromByte(ubyte(255)).getDatatype());
+        assertEquals(255, mapper.getLiteralFromByte(ubyte(255)).intValue());
+        assertEquals(XSD.INT, mapper.getLiteralFromUInt16(ushort(65535)).getDatatype());
+        assertEquals(XSD.LONG, mapper.getLiteralFromUInt32(uint(4294967295L)).getDatatype());
+        assertEquals(4294967295L, mapper.getLiteralFromUInt32(uint(4294967295L)).longValue());
+    }
+
+    @Test
+    void uint64DoesNotOverflow() {
+        Literal max = mapper.getLiteralFromUInt64(ULong.MAX);
+        assertEquals(XSD.INTEGER, max.getDatatype());
+        assertEquals(new BigInteger("18446744073709551615"), max.integerValue());
+        assertEquals(BigInteger.valueOf(42), mapper.getLiteralFromUInt64(ulong(42)).integerValue());
+    }
+
+    @Test
+    void unexpectedTypesFallBackToParsing() {
+        assertEquals(7, mapper.getLiteralFromInt32(uint(7)).intValue());
+        assertEquals(1.5, mapper.getLiteralFromDouble(1.5f).doubleValue());
+        assertThrows(NumberFormatException.class, () -> mapper.getLiteralFromInt32(1.5));
+    }
+
+    @Test
+    void primitiveArrays() {
+        List<Value> values = TransformerUtils.createValueFromDataValue(new DataValue(new Variant(new int[]{1, 2, 3})),
+                BuiltinDataType.Int32.getTypeId(), mapper).orElseThrow();
+        assertEquals(List.of(1, 2, 3), values.stream().map(l -> ((Literal) l).intValue()).collect(Collectors.toList()));
+        List<Value> doubles = TransformerUtils.createValueFromDataValue(new DataValue(new Variant(new double[]{0.5})),
+                BuiltinDataType.Double.getTypeId(), mapper).orElseThrow();
+        assertEquals(XSD.DOUBLE, ((Literal) doubles.get(0)).getDatatype());
+    }
+
+    @Test
+    void byteStringsAreBase64() {
+        assertEquals(SimpleValueFactory.getInstance().createLiteral("AQL/", XSD.BASE64BINARY),
+                mapper.getLiteralFromByteString(ByteString.of(new byte[]{1, 2, -1})));
+        assertNull(mapper.getLiteralFromByteString(ByteString.NULL_VALUE));
+    }
+
+    @Test
+    void arraysInTheConfiguredEncoding() {
+        DataTypeMapper arrays = new DataTypeMapper(null, null);
+        arrays.setArrayEncoding(ArrayEncoding.LITERAL);
+        Model model = new LinkedHashModel();
+        DataValue waveform = new DataValue(new Variant(new Double[]{0.5, 0.5, -1.0}));
+        assertEquals("[0.5,0.5,-1.0]", arrays.getValueFromArray(waveform, BuiltinDataType.Double.getTypeId(), model::add).stringValue());
+        assertTrue(model.isEmpty());
+
+        arrays.setArrayEncoding(ArrayEncoding.SEQUENCE);
+        DataValue matrix = new DataValue(new Variant(new Integer[][]{{1, 2}, {3, 4}}));
+        Value sequence = arrays.getValueFromArray(matrix, BuiltinDataType.Int32.getTypeId(), model::add);
+        assertTrue(model.contains((BNode) sequence, SimpleValueFactory.getInstance().createIRI(RDF.NAMESPACE, "_4"), TransformerUtils.getLiteralFromInt(4)));
+    }
+
+    @Test
+    void variantsKeepAllElementsWithoutDataTypeTree() {
+        DataTypeMapper variants = new DataTypeMapper(null, new OpcuaContext(new NamespaceTable(), Map.of(), List.of()));
+        variants.setArrayEncoding(ArrayEncoding.LIST);
+        Model model = new LinkedHashModel();
+        DataValue value = new DataValue(new Variant(new Variant[]{new Variant(7), new Variant(new Integer[]{1, 2, 3})}));
+        List<Value> elements = TransformerUtils.createValueFromDataValue(value, BuiltinDataType.Variant.getTypeId(), variants, model::add).orElseThrow();
+
+        assertEquals(TransformerUtils.getLiteralFromInt(7), elements.get(0));
+        assertEquals(List.of(1, 2, 3), RDFCollections.asValues(model, (BNode) elements.get(1), new ArrayList<>()).stream()
+                .map(l -> ((Literal) l).intValue()).collect(Collectors.toList()));
+        assertEquals("[1,2,3]", variants.getLiteralFromVariant(new DataValue(new Variant(new Integer[]{1, 2, 3}))).stringValue());
+    }
+
+    @Test
+    void structuresAreExpandedFieldByField() {
+        DataTypeMapper structures = new DataTypeMapper(null, new OpcuaContext(new NamespaceTable(), Map.of(), List.of()));
+        Argument argument = new Argument("Speed", Identifiers.Double, 1, new UInteger[]{uint(2), uint(3)}, LocalizedText.english("rpm"));
+        Model model = new LinkedHashModel();
+        Value value = structures.getValueFromStructure(argument, null, null, model::add);
+
+        assertTrue(value instanceof BNode);
+        assertTrue(model.contains((BNode) value, RDF.TYPE, TransformerUtils.getIriFromNodeId(Identifiers.Argument, new NamespaceTable())));
+        assertEquals(List.of(mapper.getLiteralFromString("Speed")), List.copyOf(model.filter(null, field("Argument", "Name"), null).objects()));
+        assertEquals(Set.of(2L, 3L), model.filter(null, field("Argument", "ArrayDimensions"), null).objects().stream()
+                .map(l -> ((Literal) l).longValue()).collect(Collectors.toSet()));
+        assertTrue(model.contains((BNode) value, field("Argument", "DataType"), TransformerUtils.getIriFromNodeId(Identifiers.Double, new NamespaceTable())));
+        assertTrue(model.contains((BNode) value, field("Argument", "Description"), mapper.getLiteralFromString("rpm")));
+    }
+
+    @Test
+    void nestedStructuresAndEnumerations() {
+        DataTypeMapper structures = new DataTypeMapper(null, new OpcuaContext(new NamespaceTable(), Map.of(), List.of()));
+        BuildInfo buildInfo = new BuildInfo("urn:product", "manufacturer", "product", "1.0", "42", DateTime.MIN_VALUE);
+        ServerStatusDataType status = new ServerStatusDataType(DateTime.MIN_VALUE, DateTime.MIN_VALUE, ServerState.Suspended, buildInfo, uint(0), LocalizedText.NULL_VALUE);
+        Model model = new LinkedHashModel();
+        Value value = structures.getValueFromStructure(status, null, null, model::add);
+
+        assertTrue(model.contains((BNode) value, field("ServerStatusDataType", "State"), TransformerUtils.getLiteralFromInt(ServerState.Suspended.getValue())));
+        Value nested = Models.object(model.filter((BNode) value, field("ServerStatusDataType", "BuildInfo"), null)).orElseThrow();
+        assertTrue(model.contains((BNode) nested, RDF.TYPE, TransformerUtils.getIriFromNodeId(Identifiers.BuildInfo, new NamespaceTable())));
+        assertTrue(model.contains((BNode) nested, field("BuildInfo", "ProductName"), mapper.getLiteralFromString("product")));
+        assertFalse(model.contains((BNode) value, field("ServerStatusDataType", "ShutdownReason"), null));
+    }
+
+    private static IRI field(String dataType, String field) {
+        return SimpleValueFactory.getInstance().createIRI("http://opcfoundation.org/UA/" + dataType + "/" + field);
+    }
+}
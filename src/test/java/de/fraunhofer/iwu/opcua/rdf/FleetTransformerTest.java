@@ -0,0 +1,177 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.CrawlConfig;
+import de.fraunhofer.iwu.opcua.util.CrawlScope;
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetTransformerTest {
+
+    static ExampleServer server;
+    static ValueFactory v;
+    static List<FleetTransformer.Target> targets;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        v = new ValidatingValueFactory();
+        server = new ExampleServer();
+        server.startup().get();
+        targets = List.of(
+                new FleetTransformer.Target("opc.tcp://localhost:12686/milo", v.createIRI("http://iwu.fraunhofer.de/c32/machine1")),
+                new FleetTransformer.Target("opc.tcp://localhost:12686/milo", v.createIRI("http://iwu.fraunhofer.de/c32/machine2")),
+                new FleetTransformer.Target("opc.tcp://localhost:1/none", v.createIRI("http://iwu.fraunhofer.de/c32/offline")));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.shutdown();
+    }
+
+    @Test
+    void eachServerGetsItsOwnGraph() {
+        FleetTransformer fleet = new FleetTransformer(targets);
+        fleet.setMaxConcurrentServers(2);
+        fleet.setTimeout(Duration.ofMinutes(2));
+        Model dataset = new LinkedHashModel();
+        List<FleetTransformer.Result> results = fleet.transformToDataset(dataset);
+
+        assertEquals(3, results.size());
+        assertEquals(FleetTransformer.Result.Status.SUCCEEDED, results.get(0).getStatus());
+        assertEquals(FleetTransformer.Result.Status.SUCCEEDED, results.get(1).getStatus());
+        assertEquals(FleetTransformer.Result.Status.FAILED, results.get(2).getStatus());
+        assertNotNull(results.get(2).getError());
+        assertTrue(results.get(0).getStatements() > 100);
+        assertTrue(results.get(0).getStatementsPerSecond() > 0);
+        for (int i = 0; i < 2; i++) {
+            // the model drops the few statements the transformer emits twice
+            int size = dataset.filter(null, null, null, targets.get(i).getGraph()).size();
+            assertTrue(size > 100 && size <= results.get(i).getStatements());
+        }
+        assertTrue(dataset.filter(null, null, null, targets.get(2).getGraph()).isEmpty());
+    }
+
+    @Test
+    void eachServerGetsItsOwnFile(@TempDir Path dir) throws IOException {
+        FleetTransformer fleet = new FleetTransformer(targets);
+        List<FleetTransformer.Result> results = fleet.transformToFiles(dir, RDFFormat.TURTLE);
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.sorted().collect(Collectors.toList());
+        }
+        assertEquals(2, files.size());
+        for (int i = 0; i < files.size(); i++) {
+            try (InputStream in = Files.newInputStream(files.get(i))) {
+                int size = Rio.parse(in, "", RDFFormat.TURTLE).size();
+                assertTrue(size > 100 && size <= results.get(i).getStatements());
+            }
+        }
+        assertEquals(results, fleet.getResults());
+    }
+
+    @Test
+    void timedOutServersLeaveNoGraphOrFile(@TempDir Path dir) throws IOException {
+        // without timeout first, which also connects once so that the healthy server is not slowed by a cold start
+        FleetTransformer baseline = new FleetTransformer(List.of(targets.get(0)));
+        baseline.setCrawlConfig(objectsOnly());
+        long statements = baseline.transformToDataset(new LinkedHashModel()).get(0).getStatements();
+
+        Duration timeout = Duration.ofSeconds(3);
+        FleetTransformer.Target late = new FleetTransformer.Target("opc.tcp://localhost:12686/milo", v.createIRI("http://iwu.fraunhofer.de/c32/late"));
+        FleetTransformer.Target stalled = new FleetTransformer.Target("opc.tcp://localhost:12686/milo", v.createIRI("http://iwu.fraunhofer.de/c32/stalled"));
+        FleetTransformer fleet = new FleetTransformer(List.of(targets.get(0), late, stalled));
+        fleet.setCrawlConfig(objectsOnly());
+        fleet.setTimeout(timeout);
+        Model dataset = new LinkedHashModel();
+        List<FleetTransformer.Result> results = fleet.transform(target -> new AbstractRDFHandler() {
+            private final Model graph = new LinkedHashModel();
+
+            @Override
+            public void handleStatement(Statement st) {
+                if (target != targets.get(0) && graph.isEmpty()) {
+                    // the late sink sleeps through the interrupt and finishes after the timeout, the stalled one keeps it
+                    long end = System.nanoTime() + 2 * timeout.toNanos();
+                    while (System.nanoTime() < end && !(target == stalled && Thread.currentThread().isInterrupted())) {
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            if (target == stalled) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+                }
+                graph.add(v.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), target.getGraph()));
+            }
+
+            @Override
+            public void endRDF() {
+                synchronized (dataset) {
+                    dataset.addAll(graph);
+                }
+            }
+        });
+
+        assertEquals(FleetTransformer.Result.Status.SUCCEEDED, results.get(0).getStatus());
+        assertEquals(statements, results.get(0).getStatements());
+        assertFalse(dataset.filter(null, null, null, targets.get(0).getGraph()).isEmpty());
+        for (int i = 1; i < 3; i++) {
+            assertEquals(FleetTransformer.Result.Status.TIMED_OUT, results.get(i).getStatus(), results.get(i).toString());
+            assertTrue(dataset.filter(null, null, null, results.get(i).getTarget().getGraph()).isEmpty());
+        }
+
+        // accepts the connection in its backlog but never answers
+        try (ServerSocket silent = new ServerSocket(0)) {
+            fleet = new FleetTransformer(List.of(targets.get(0), new FleetTransformer.Target(
+                    "opc.tcp://localhost:" + silent.getLocalPort() + "/silent", v.createIRI("http://iwu.fraunhofer.de/c32/silent"))));
+            fleet.setCrawlConfig(objectsOnly());
+            fleet.setTimeout(timeout);
+            results = fleet.transformToFiles(dir, RDFFormat.TURTLE);
+        }
+        assertEquals(FleetTransformer.Result.Status.SUCCEEDED, results.get(0).getStatus());
+        assertEquals(FleetTransformer.Result.Status.TIMED_OUT, results.get(1).getStatus(), results.get(1).toString());
+        assertTrue(results.get(1).getDuration().compareTo(timeout.multipliedBy(2)) < 0);
+        try (Stream<Path> list = Files.list(dir)) {
+            assertEquals(List.of(dir.resolve("000-opc.tcp_localhost_12686_milo.ttl")), list.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void concurrencyBudgetMustBePositive() {
+        FleetTransformer fleet = new FleetTransformer(targets);
+        assertThrows(IllegalArgumentException.class, () -> fleet.setMaxConcurrentServers(0));
+        assertThrows(IllegalArgumentException.class, () -> fleet.setTimeout(Duration.ZERO));
+    }
+
+    /**
+     * A few nodes below the ObjectsFolder, so a healthy server stays well within a short timeout.
+     */
+    private static CrawlConfig objectsOnly() {
+        return CrawlConfig.builder().setScope(CrawlScope.builder().setStartNodes(Identifiers.ObjectsFolder).setMaxDepth(2).build()).build();
+    }
+}
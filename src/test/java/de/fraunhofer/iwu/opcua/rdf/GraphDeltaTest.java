@@ -0,0 +1,44 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphDeltaTest {
+
+    ValueFactory v = SimpleValueFactory.getInstance();
+    IRI node = v.createIRI("http://opcfoundation.org/UA/85");
+    IRI displayName = v.createIRI("http://opcfoundation.org/UA/Attributes/DisplayName");
+    Statement before = v.createStatement(node, displayName, v.createLiteral("Objects"));
+    Statement after = v.createStatement(node, displayName, v.createLiteral("Objekte"));
+    Statement unchanged = v.createStatement(node, v.createIRI("http://opcfoundation.org/UA/35"), v.createIRI("http://opcfoundation.org/UA/2253"));
+
+    @Test
+    void diffAndApply() {
+        GraphDelta delta = new GraphDelta();
+        delta.diff(List.of(before, unchanged), List.of(unchanged, after));
+        assertEquals(1, delta.getAdded().size());
+        assertTrue(delta.getAdded().contains(after));
+        assertEquals(1, delta.getRemoved().size());
+        assertTrue(delta.getRemoved().contains(before));
+
+        Model model = new LinkedHashModel(List.of(before, unchanged));
+        delta.applyTo(model);
+        assertEquals(new LinkedHashModel(List.of(unchanged, after)), model);
+    }
+
+    @Test
+    void noChanges() {
+        GraphDelta delta = new GraphDelta();
+        delta.diff(List.of(unchanged), List.of(unchanged));
+        assertTrue(delta.isEmpty());
+    }
+}
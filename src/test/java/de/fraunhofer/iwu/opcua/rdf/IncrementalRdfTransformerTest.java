@@ -0,0 +1,67 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalRdfTransformerTest {
+
+    static ExampleServer server;
+    static ValueFactory v = new ValidatingValueFactory();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.shutdown();
+    }
+
+    @Test
+    void refreshReportsOnlyChangedStatements() throws Exception {
+        IRI adaptionPoint = v.createIRI("http://iwu.fraunhofer.de/c32/testAdaptionPoint");
+        RdfTransformer transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint);
+        List<GraphDelta> deltas = new ArrayList<>();
+        try (IncrementalRdfTransformer incremental = new IncrementalRdfTransformer(transformer)) {
+            Model model = incremental.start(deltas::add);
+            assertTrue(model.size() > 100);
+
+            assertTrue(incremental.refresh(List.of(Identifiers.DataTypesFolder)).isEmpty());
+            assertTrue(incremental.refresh(List.of(NodeId.parse("ns=2;s=DoesNotExist"))).isEmpty());
+            assertTrue(deltas.isEmpty());
+
+            // the values of the dynamic variables change on every read
+            GraphDelta delta = incremental.refresh(List.of(NodeId.parse("ns=2;s=HelloWorld/Dynamic")));
+            IRI value = TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value);
+            assertFalse(delta.getAdded().filter(null, value, null).isEmpty());
+            assertFalse(delta.getRemoved().filter(null, value, null).isEmpty());
+            assertEquals(List.of(delta), deltas);
+
+            delta.applyTo(model);
+            assertEquals(incremental.getModel().filter(null, value, null), model.filter(null, value, null));
+        }
+        try {
+            // closing stops the updates only, the session of the transformer stays usable
+            assertNotNull(transformer.ctx.getClient().readValue(0, TimestampsToReturn.Neither, Identifiers.Server_ServerStatus_State).get());
+        } finally {
+            transformer.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveValueStreamTest {
+
+    static ExampleServer server;
+    static ValueFactory v = new ValidatingValueFactory();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.shutdown();
+    }
+
+    @Test
+    void streamsTimestampedValueSamples() throws Exception {
+        IRI adaptionPoint = v.createIRI("http://iwu.fraunhofer.de/c32/testAdaptionPoint");
+        List<List<Statement>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (RdfTransformer transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint)) {
+            try (LiveValueStream stream = new LiveValueStream(transformer)) {
+                stream.setSamplingInterval(10.0);
+                stream.setPublishingInterval(50.0);
+                stream.setMaxBatchDelay(50);
+                stream.setBatchSize(64);
+                List<NodeId> variables = stream.selectVariables(node -> node.getNodeId().getIdentifier().toString().startsWith("HelloWorld/Dynamic/"));
+                assertFalse(variables.isEmpty());
+                List<NodeId> unknown = new ArrayList<>(variables);
+                unknown.add(NodeId.parse("ns=2;s=DoesNotExist"));
+
+                assertEquals(variables, stream.start(unknown, batches::add));
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (stream.getNotificationCount() < 10L * variables.size() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+            }
+            // closing the stream leaves the session of the transformer open
+            assertNotNull(transformer.ctx.getClient().readValue(0, TimestampsToReturn.Neither, Identifiers.Server_ServerStatus_State).get());
+        }
+
+        Model model = new LinkedHashModel();
+        synchronized (batches) {
+            assertFalse(batches.isEmpty());
+            batches.forEach(model::addAll);
+        }
+        IRI value = TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value);
+        assertTrue(model.filter(null, LiveValueStream.HAS_VALUE_SAMPLE, null).subjects().size() > 1);
+        for (Statement st : model.filter(null, LiveValueStream.HAS_VALUE_SAMPLE, null)) {
+            Resource sample = (Resource) st.getObject();
+            assertFalse(model.filter(sample, value, null).isEmpty());
+            assertFalse(model.filter(sample, LiveValueStream.SOURCE_TIMESTAMP, null).isEmpty());
+        }
+    }
+}
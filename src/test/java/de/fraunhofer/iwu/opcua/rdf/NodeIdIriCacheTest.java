@@ -0,0 +1,41 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeIdIriCacheTest {
+
+    ValueFactory v = SimpleValueFactory.getInstance();
+    Function<NodeId, IRI> mapping = n -> v.createIRI("http://example.org/", n.getIdentifier().toString());
+
+    @Test
+    void evictsBeyondCapacity() {
+        NodeIdIriCache cache = new NodeIdIriCache(16);
+        for (int i = 0; i < 1000; i++) {
+            cache.computeIfAbsent(new NodeId(0, uint(i)), mapping);
+        }
+        assertTrue(cache.size() <= 16);
+        assertEquals(1000, cache.getMissCount());
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    void countsHits() {
+        NodeIdIriCache cache = new NodeIdIriCache(NodeIdIriCache.DEFAULT_CAPACITY);
+        NodeId nodeId = NodeId.parse("i=85");
+        IRI iri = cache.computeIfAbsent(nodeId, mapping);
+        assertSame(iri, cache.computeIfAbsent(nodeId, mapping));
+        assertEquals(1, cache.getHitCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new NodeIdIriCache(0));
+    }
+}
@@ -0,0 +1,102 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.NodeSetReader;
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.VOID;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedWriterTest {
+
+    static final String NAMESPACE = "http://iwu.fraunhofer.de/test/nodeset/";
+    static ValueFactory v;
+    static NodeSetReader reader;
+    static IRI adaptionPoint;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        v = new ValidatingValueFactory();
+        adaptionPoint = v.createIRI("http://iwu.fraunhofer.de/c32/testAdaptionPoint");
+        try (InputStream in = PartitionedWriterTest.class.getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            reader = new NodeSetReader().read(in);
+        }
+    }
+
+    RdfTransformer transformer() {
+        return new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree());
+    }
+
+    @Test
+    void partitionsAreWrittenByNamespace(@TempDir Path dir) throws IOException {
+        Model expected = transformer().transform();
+        RdfTransformer transformer = transformer();
+        transformer.setOutputConfig(OutputConfig.builder().setFormat(RDFFormat.NTRIPLES).setDirectory(dir).build());
+        List<PartitionedWriter.Partition> partitions = transformer.transformPartitioned();
+
+        assertEquals(List.of(NAMESPACE, "http://opcfoundation.org/UA/"),
+                partitions.stream().filter(p -> p.getNamespaceUri() != null).map(PartitionedWriter.Partition::getNamespaceUri).sorted().collect(Collectors.toList()));
+        assertTrue(partitions.stream().anyMatch(p -> p.getName().equals(PartitionedWriter.OTHER)));
+
+        Model union = new LinkedHashModel();
+        for (PartitionedWriter.Partition partition : partitions) {
+            assertEquals(dir.resolve(partition.getName() + ".nt"), partition.getFile());
+            try (InputStream in = Files.newInputStream(partition.getFile())) {
+                Model model = Rio.parse(in, "", RDFFormat.NTRIPLES);
+                if (partition.getNamespaceUri() != null) {
+                    // blank nodes of values are written next to their node
+                    assertTrue(model.subjects().stream().filter(s -> s instanceof IRI).allMatch(s -> s.stringValue().startsWith(partition.getNamespaceUri())));
+                }
+                union.addAll(model);
+            }
+        }
+        assertTrue(Models.isomorphic(expected, union));
+
+        try (InputStream in = Files.newInputStream(dir.resolve(PartitionedWriter.MANIFEST))) {
+            Model manifest = Rio.parse(in, "", RDFFormat.TURTLE);
+            assertEquals(partitions.size(), manifest.filter(null, VOID.DATA_DUMP, null).size());
+            long triples = manifest.filter(null, VOID.TRIPLES, null).objects().stream().mapToLong(o -> ((Literal) o).longValue()).sum();
+            assertEquals(partitions.stream().mapToLong(PartitionedWriter.Partition::getStatements).sum(), triples);
+            assertTrue(manifest.contains(null, VOID.URI_SPACE, v.createLiteral(NAMESPACE)));
+        }
+    }
+
+    @Test
+    void partitionsCanGoToNamedGraphs() {
+        Repository repository = new SailRepository(new MemoryStore());
+        try (PartitionedWriter writer = new PartitionedWriter(reader.getNamespaces(), p -> new RepositorySink(repository,
+                v.createIRI(p.getNamespaceUri() != null ? p.getNamespaceUri() : adaptionPoint.stringValue())))) {
+            transformer().transform(writer);
+            try (RepositoryConnection con = repository.getConnection()) {
+                for (PartitionedWriter.Partition partition : writer.getPartitions()) {
+                    long size = con.size(v.createIRI(partition.getNamespaceUri() != null ? partition.getNamespaceUri() : adaptionPoint.stringValue()));
+                    assertTrue(size > 0 && size <= partition.getStatements());
+                }
+            }
+        } finally {
+            repository.shutDown();
+        }
+    }
+}
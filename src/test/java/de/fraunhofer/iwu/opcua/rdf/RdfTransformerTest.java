@@ -1,11 +1,27 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
+import com.github.luben.zstd.ZstdInputStream;
+import de.fraunhofer.iwu.opcua.util.CrawlConfig;
+import de.fraunhofer.iwu.opcua.util.CrawlScope;
+import de.fraunhofer.iwu.opcua.util.NodeSetReader;
+import de.fraunhofer.iwu.opcua.util.OutputConfig;
 import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeAttributesMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
 import org.eclipse.rdf4j.model.util.ModelBuilder;
+import org.eclipse.rdf4j.model.util.Models;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.query.TupleQuery;
@@ -15,6 +31,7 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
 import org.eclipse.rdf4j.sail.memory.MemoryStore;
 import org.eclipse.rdf4j.sparqlbuilder.core.QueryElement;
 import org.eclipse.rdf4j.sparqlbuilder.core.SparqlBuilder;
@@ -25,12 +42,18 @@ import org.eclipse.rdf4j.sparqlbuilder.core.query.SelectQuery;
 import org.eclipse.rdf4j.sparqlbuilder.graphpattern.GraphPatterns;
 import org.eclipse.rdf4j.sparqlbuilder.graphpattern.TriplePattern;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -56,6 +79,14 @@ class RdfTransformerTest {
         server.shutdown();
     }
 
+    @AfterEach
+    void closeTransformer() {
+        if (transformer != null) {
+            transformer.close();
+            transformer = null;
+        }
+    }
+
     @Test
     void transform() {
         transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint);
@@ -64,6 +95,70 @@ class RdfTransformerTest {
         transformer.save(rdfModel);
     }
 
+    @Test
+    void transformStreaming() throws IOException {
+        transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(Rio.createWriter(RDFFormat.TURTLE, out));
+        Model parsed = Rio.parse(new ByteArrayInputStream(out.toByteArray()), "", RDFFormat.TURTLE);
+        assertTrue(parsed.size() > 100);
+        assertTrue(parsed.contains(adaptionPoint, v.createIRI("http://iwu.fraunhofer.de/c32/hasOpcuaAddressSpace"), null));
+    }
+
+    @Test
+    void transformerCanBeUsedAgainUntilClosed() throws Exception {
+        transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint);
+        Model first = transformer.transform();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(out);
+        assertEquals(first.size(), Rio.parse(new ByteArrayInputStream(out.toByteArray()), "", RDFFormat.TURTLE).size());
+        // the session outlives the exports until the transformer is closed
+        assertNotNull(transformer.ctx.getClient().readValue(0, TimestampsToReturn.Neither, Identifiers.Server_ServerStatus_State).get());
+    }
+
+    @Test
+    void structuredValuesAreExpanded() {
+        CrawlScope scope = CrawlScope.builder().setStartNodes(Identifiers.Server_ServerStatus).setMaxDepth(0).build();
+        transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint, CrawlConfig.builder().setScope(scope).build());
+        Model rdfModel = transformer.transform();
+        NamespaceTable namespaces = transformer.ctx.getNamespaces();
+        Value status = Models.object(rdfModel.filter(TransformerUtils.getIriFromNodeId(Identifiers.Server_ServerStatus, namespaces),
+                TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value), null)).orElseThrow();
+        assertTrue(status instanceof BNode);
+        assertTrue(rdfModel.contains((BNode) status, RDF.TYPE, TransformerUtils.getIriFromNodeId(Identifiers.ServerStatusDataType, namespaces)));
+        assertTrue(rdfModel.contains((BNode) status, v.createIRI("http://opcfoundation.org/UA/ServerStatusDataType/State"), v.createLiteral(0)));
+        Value buildInfo = Models.object(rdfModel.filter((BNode) status, v.createIRI("http://opcfoundation.org/UA/ServerStatusDataType/BuildInfo"), null)).orElseThrow();
+        assertTrue(rdfModel.contains((BNode) buildInfo, v.createIRI("http://opcfoundation.org/UA/BuildInfo/ProductName"), null));
+    }
+
+    @Test
+    void arrayValuesAsLiterals() {
+        CrawlScope scope = CrawlScope.builder().setStartNodes(NodeId.parse("ns=2;s=HelloWorld/ArrayTypes")).setMaxDepth(1).build();
+        transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint, CrawlConfig.builder().setScope(scope).build());
+        transformer.setArrayEncoding(ArrayEncoding.LITERAL);
+        Model rdfModel = transformer.transform();
+        IRI doubles = TransformerUtils.getIriFromNodeId(NodeId.parse("ns=2;s=HelloWorld/ArrayTypes/DoubleArray"), transformer.ctx.getNamespaces());
+        Value value = Models.object(rdfModel.filter(doubles, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value), null)).orElseThrow();
+        assertEquals(ArrayEncoding.JSON, ((Literal) value).getDatatype());
+        assertTrue(value.stringValue().startsWith("["));
+        assertEquals(1, rdfModel.filter(doubles, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value), null).size());
+    }
+
+    @Test
+    void customHandlerIsAppliedPerNodeClass() {
+        IRI methodMarker = v.createIRI("http://iwu.fraunhofer.de/c32/testMethod");
+        transformer = new RdfTransformer("opc.tcp://localhost:12686/milo", adaptionPoint);
+        transformer.registerHandler(NodeClass.Method, transformer.getHandler(NodeClass.Method).andThen((node, references, sink) ->
+                sink.accept(v.createStatement(TransformerUtils.getIriFromNodeId(node.getNodeId(), transformer.ctx.getNamespaces()), RDF.TYPE, methodMarker))));
+        transformer.registerHandler(NodeClass.View, (node, references, sink) -> {
+        });
+        Model rdfModel = transformer.transform();
+        assertFalse(rdfModel.filter(null, RDF.TYPE, methodMarker).isEmpty());
+        rdfModel.filter(null, RDF.TYPE, methodMarker).subjects().forEach(method ->
+                assertTrue(rdfModel.contains(method, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Executable), null)));
+        assertFalse(rdfModel.contains(null, TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.ContainsNoLoops), null));
+    }
+
     @Test
     void expAttachAndSparql() {
         Repository db = new SailRepository(new MemoryStore());
@@ -101,6 +196,68 @@ class RdfTransformerTest {
         }
     }
 
+    @Test
+    void transformNodeSetWithoutServer() throws IOException {
+        NodeSetReader reader = new NodeSetReader();
+        try (InputStream in = getClass().getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            reader.read(in);
+        }
+        RdfTransformer offline = new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree());
+        Model rdfModel = offline.transform();
+        NamespaceTable namespaces = reader.getNamespaces();
+        IRI value = TransformerUtils.getIriFromAttributeMask(NodeAttributesMask.Value);
+        IRI tool = TransformerUtils.getIriFromNodeId(new NodeId(1, 5001), namespaces);
+        assertTrue(rdfModel.contains(TransformerUtils.getIriFromNodeId(new NodeId(1, 6001), namespaces), value, v.createLiteral(12.5)));
+        // Duration is not part of the NodeSet, its value is mapped as Double
+        assertTrue(rdfModel.contains(TransformerUtils.getIriFromNodeId(new NodeId(1, 6004), namespaces), value, v.createLiteral(3600000.0)));
+        // enumeration declared in the NodeSet
+        assertTrue(rdfModel.contains(TransformerUtils.getIriFromNodeId(new NodeId(1, 6005), namespaces), value, v.createLiteral(1)));
+        assertEquals(3, rdfModel.filter(TransformerUtils.getIriFromNodeId(new NodeId(1, 6002), namespaces), value, null).size());
+        assertTrue(rdfModel.contains(tool, TransformerUtils.getIriFromNodeId(Identifiers.HasComponent, namespaces),
+                TransformerUtils.getIriFromNodeId(new NodeId(1, 6002), namespaces)));
+        assertTrue(rdfModel.contains(TransformerUtils.getIriFromNodeId(Identifiers.ObjectsFolder, namespaces),
+                TransformerUtils.getIriFromNodeId(Identifiers.Organizes, namespaces), tool));
+    }
+
+    @Test
+    void transformNodeSetToCompressedBinary(@TempDir Path dir) throws IOException {
+        NodeSetReader reader = NodeSetReader.of(Path.of("src/test/resources/nodeset/Test.NodeSet2.xml"));
+        RdfTransformer offline = new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree());
+        Model expected = offline.transform();
+        offline.setOutputConfig(OutputConfig.builder().setFormat(RDFFormat.BINARY).setCompression(OutputConfig.Compression.ZSTD).build());
+        Path file = dir.resolve("tool.brf.zst");
+        offline.transform(file);
+        try (InputStream in = new ZstdInputStream(Files.newInputStream(file))) {
+            assertTrue(Models.isomorphic(expected, Rio.parse(in, "", RDFFormat.BINARY)));
+        }
+    }
+
+    @Test
+    void parallelOutputEqualsSequentialOutput() throws IOException {
+        NodeSetReader reader = NodeSetReader.of(Path.of("src/test/resources/nodeset/Test.NodeSet2.xml"));
+        RdfTransformer sequential = new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree());
+        sequential.setExecutor(Runnable::run);
+        sequential.setChunkSize(1);
+        List<Statement> expected = statements(sequential);
+
+        RdfTransformer parallel = new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree());
+        parallel.setChunkSize(1);
+        assertSame(RdfTransformer.DEFAULT_EXECUTOR, parallel.executor);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, statements(parallel));
+        }
+    }
+
+    private static List<Statement> statements(RdfTransformer transformer) {
+        List<Statement> statements = new ArrayList<>();
+        transformer.transform(new AbstractRDFHandler() {
+            @Override
+            public void handleStatement(Statement st) {
+                statements.add(st);
+            }
+        });
+        return statements;
+    }
 
     @Test
     @Disabled
@@ -0,0 +1,113 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.NodeSetReader;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositorySinkTest {
+
+    static ValueFactory v;
+    static IRI adaptionPoint;
+    static IRI graph;
+    static IRI other;
+    static NodeSetReader reader;
+    Repository repository;
+
+    @BeforeAll
+    static void setUpAll() throws IOException {
+        v = new ValidatingValueFactory();
+        adaptionPoint = v.createIRI("http://iwu.fraunhofer.de/c32/testAdaptionPoint");
+        graph = v.createIRI("http://iwu.fraunhofer.de/c32/graph/tool");
+        other = v.createIRI("http://iwu.fraunhofer.de/c32/graph/other");
+        try (InputStream in = RepositorySinkTest.class.getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            reader = new NodeSetReader().read(in);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        repository = new SailRepository(new MemoryStore());
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.add(adaptionPoint, RDFS.LABEL, v.createLiteral("untouched"), other);
+            con.add(adaptionPoint, RDFS.LABEL, v.createLiteral("stale"), graph);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutDown();
+    }
+
+    void transform(RepositorySink sink) {
+        try (sink) {
+            new RdfTransformer(reader.toContext(), adaptionPoint, reader.getDataTypeTree()).transform(sink);
+        }
+    }
+
+    @Test
+    void graphIsReplaced() {
+        RepositorySink sink = new RepositorySink(repository, graph);
+        sink.setBatchSize(7);
+        transform(sink);
+        long written = sink.getCount();
+        assertTrue(written > 7);
+        try (RepositoryConnection con = repository.getConnection()) {
+            assertEquals(Set.of(graph, other), Set.copyOf(Iterations.asList(con.getContextIDs())));
+            assertFalse(con.hasStatement(adaptionPoint, RDFS.LABEL, v.createLiteral("stale"), false, graph));
+            assertTrue(con.hasStatement(adaptionPoint, RDFS.LABEL, v.createLiteral("untouched"), false, other));
+            long size = con.size(graph);
+            assertTrue(size > 0 && size <= written);
+
+            transform(new RepositorySink(repository, graph));
+            assertEquals(size, con.size(graph));
+            assertEquals(2, Iterations.asList(con.getContextIDs()).size());
+        }
+    }
+
+    @Test
+    void failedTransformationKeepsTheGraph() {
+        Statement statement = v.createStatement(adaptionPoint, RDFS.COMMENT, v.createLiteral("partial"));
+        try (RepositorySink sink = new RepositorySink(repository, graph)) {
+            sink.setBatchSize(1);
+            sink.startRDF();
+            sink.handleStatement(statement);
+            sink.handleStatement(statement);
+        }
+        try (RepositoryConnection con = repository.getConnection()) {
+            assertEquals(Set.<Resource>of(graph, other), Set.copyOf(Iterations.asList(con.getContextIDs())));
+            assertTrue(con.hasStatement(adaptionPoint, RDFS.LABEL, v.createLiteral("stale"), false, graph));
+            assertFalse(con.hasStatement(null, RDFS.COMMENT, null, false));
+        }
+    }
+
+    @Test
+    void statementsAreAppended() {
+        RepositorySink sink = new RepositorySink(repository, graph);
+        sink.setReplace(false);
+        transform(sink);
+        try (RepositoryConnection con = repository.getConnection()) {
+            assertTrue(con.hasStatement(adaptionPoint, RDFS.LABEL, v.createLiteral("stale"), false, graph));
+            assertTrue(con.size(graph) > 1);
+        }
+        assertThrows(IllegalArgumentException.class, () -> sink.setBatchSize(0));
+    }
+}
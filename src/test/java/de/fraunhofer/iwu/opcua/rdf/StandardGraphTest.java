@@ -0,0 +1,147 @@
+package de.fraunhofer.iwu.opcua.rdf;
+
+import de.fraunhofer.iwu.opcua.util.CrawlConfig;
+import de.fraunhofer.iwu.opcua.util.CrawlScope;
+import de.fraunhofer.iwu.opcua.util.KnownNode;
+import de.fraunhofer.iwu.opcua.util.NodeSetReader;
+import de.fraunhofer.iwu.opcua.util.NodeSetTransformer;
+import de.fraunhofer.iwu.opcua.util.OpcuaContext;
+import de.fraunhofer.iwu.opcua.util.TransformerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StandardGraphTest {
+
+    private static final String URL = "opc.tcp://localhost:12686/milo";
+    static ExampleServer server;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.shutdown().get();
+    }
+
+    @Test
+    void missingVersionIsNotLoaded() {
+        assertTrue(StandardGraph.load("0.0").isEmpty());
+    }
+
+    @Test
+    void defaultVersionIsOnTheClasspath() {
+        StandardGraph graph = StandardGraph.load().orElseThrow();
+        KnownNode objects = graph.getKnownNodes().get(Identifiers.ObjectsFolder);
+        assertEquals(NodeClass.Object, objects.getNodeClass());
+        assertTrue(objects.isBrowsed());
+        assertTrue(objects.getChildren().stream().anyMatch(r -> r.getNodeId().equals(Identifiers.Server.expanded())));
+        KnownNode state = graph.getKnownNodes().get(Identifiers.ServerType_ServerStatus);
+        assertEquals(NodeClass.Variable, state.getNodeClass());
+        assertFalse(state.isBrowsed());
+        assertFalse(graph.getNodeIds().contains(Identifiers.Server));
+    }
+
+    @Test
+    void crawlSkipsKnownNodesAndKeepsTheirLinks(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("milo.NodeSet2.xml");
+        OpcuaContext full = new OpcuaContext(URL);
+        new NodeSetTransformer(full).save(file);
+        full.getClient().disconnect().get();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StandardGraph.generate(NodeSetReader.of(file), out);
+        StandardGraph graph = StandardGraph.read(new ByteArrayInputStream(out.toByteArray()), "test");
+        assertTrue(graph.getNodeIds().contains(Identifiers.BaseObjectType));
+        assertTrue(graph.getNodeIds().contains(Identifiers.ObjectsFolder));
+        assertFalse(graph.getNodeIds().contains(Identifiers.Server));
+        assertFalse(graph.getNodeIds().contains(Identifiers.Server_NamespaceArray));
+        assertFalse(graph.getModel().contains(null, null, TransformerUtils.getIriFromNodeId(NodeId.parse("ns=2;s=HelloWorld"), full.getNamespaces())));
+
+        CrawlScope scope = CrawlScope.builder().setKnownNodes(graph.getKnownNodes()).build();
+        for (CrawlConfig.Mode mode : CrawlConfig.Mode.values()) {
+            MeterRegistry unknown = new SimpleMeterRegistry();
+            new OpcuaContext(URL, CrawlConfig.builder().setMode(mode).setMeterRegistry(unknown).build()).getClient().disconnect().get();
+            MeterRegistry registry = new SimpleMeterRegistry();
+            OpcuaContext ctx = new OpcuaContext(URL, CrawlConfig.builder().setMode(mode).setScope(scope).setMeterRegistry(registry).build());
+            Set<NodeId> crawled = ctx.getNodeRefMap().keySet().stream().map(n -> n.getNodeId()).collect(Collectors.toSet());
+            assertTrue(crawled.stream().noneMatch(graph.getNodeIds()::contains), mode.toString());
+            assertTrue(crawled.contains(Identifiers.Server_NamespaceArray), mode.toString());
+            assertTrue(crawled.contains(NodeId.parse("ns=2;s=HelloWorld/Dynamic/Double")), mode.toString());
+            assertTrue(crawled.size() < full.getNodeRefMap().size() / 2, mode.toString());
+            assertTrue(browseRequests(registry) < browseRequests(unknown), mode.toString());
+            if (mode == CrawlConfig.Mode.SEQUENTIAL) {
+                // one request per node and browse: only the crawled nodes and the known ones servers extend are browsed
+                long browsed = graph.getKnownNodes().values().stream().filter(KnownNode::isBrowsed).count();
+                int browsesPerNode = ctx.getCrawlConfig().isSingleBrowse() ? 1 : 2;
+                assertTrue(browseRequests(registry) <= browsesPerNode * (crawled.size() + browsed), mode.toString());
+            }
+            List<ReferenceDescription> fromObjects = ctx.getNodeRefMap().entrySet().stream()
+                    .filter(e -> e.getKey().getNodeId().equals(NodeId.parse("ns=2;s=HelloWorld"))).findFirst().orElseThrow().getValue()
+                    .stream().filter(r -> !r.getIsForward() && r.getNodeId().equals(Identifiers.ObjectsFolder.expanded())).collect(Collectors.toList());
+            assertEquals(1, fromObjects.size(), mode.toString());
+            assertEquals(NodeClass.Object, fromObjects.get(0).getNodeClass(), mode.toString());
+
+            DataTypeTree tree = (DataTypeTree) ctx.getClient().getSession().get().getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY);
+            ValueFactory v = new ValidatingValueFactory();
+            RdfTransformer transformer = new RdfTransformer(ctx, v.createIRI("http://example.org/ap"), tree);
+            transformer.setStandardGraph(graph);
+            Model model = transformer.transform();
+            NamespaceTable namespaces = ctx.getNamespaces();
+            IRI organizes = TransformerUtils.getIriFromNodeId(Identifiers.Organizes, namespaces);
+            IRI objects = TransformerUtils.getIriFromNodeId(Identifiers.ObjectsFolder, namespaces);
+            assertTrue(model.contains(objects, organizes, TransformerUtils.getIriFromNodeId(NodeId.parse("ns=2;s=HelloWorld"), namespaces)), mode.toString());
+            assertTrue(model.contains(objects, organizes, TransformerUtils.getIriFromNodeId(Identifiers.Server, namespaces)), mode.toString());
+            assertTrue(model.contains(TransformerUtils.getIriFromNodeId(Identifiers.BaseObjectType, namespaces), null, null), mode.toString());
+            ctx.getClient().disconnect().get();
+        }
+    }
+
+    @Test
+    void knownStartNodeTakesTheNodeClassOfTheGraph() {
+        StandardGraph graph = StandardGraph.load().orElseThrow();
+        CrawlScope scope = CrawlScope.builder().setStartNodes(Identifiers.ObjectsFolder).setMaxDepth(1).setKnownNodes(graph.getKnownNodes()).build();
+        for (CrawlConfig.Mode mode : CrawlConfig.Mode.values()) {
+            OpcuaContext ctx = new OpcuaContext(URL, CrawlConfig.builder().setMode(mode).setScope(scope).build());
+            try {
+                List<ReferenceDescription> references = ctx.getNodeRefMap().entrySet().stream()
+                        .filter(e -> e.getKey().getNodeId().equals(Identifiers.Server)).findFirst().orElseThrow().getValue();
+                assertTrue(references.stream().anyMatch(r -> !r.getIsForward() && r.getNodeId().equals(Identifiers.ObjectsFolder.expanded())
+                        && r.getNodeClass() == NodeClass.Object), mode.toString());
+            } finally {
+                ctx.getClient().disconnect();
+            }
+        }
+    }
+
+    private static double browseRequests(MeterRegistry registry) {
+        return registry.get(TransformerMetrics.REQUESTS).tag("service", "browse").timer().count();
+    }
+}
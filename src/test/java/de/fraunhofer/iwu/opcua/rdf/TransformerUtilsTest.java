@@ -1,8 +1,15 @@
 package de.fraunhofer.iwu.opcua.rdf;
 
 import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.BuiltinDataType;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.util.Values;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +23,7 @@ class TransformerUtilsTest {
     Map<NodeId, String> nodeIdsMap = new HashMap<>();
     NamespaceTable uaNst = new NamespaceTable();
     List<String> uris = new ArrayList<>();
+    ValueFactory v = SimpleValueFactory.getInstance();
 
     @BeforeEach
     void setUp() {
@@ -32,6 +40,60 @@ class TransformerUtilsTest {
         uris.add("http://opcfoundation.org/UA/DI#Rand");
     }
 
+    @Test
+    void nodeIdOrder() {
+        List<NodeId> nodeIds = new ArrayList<>(List.of(
+                NodeId.parse("ns=2;s=Machine"),
+                NodeId.parse("ns=1;i=15031"),
+                NodeId.parse("i=85"),
+                NodeId.parse("ns=2;i=6001"),
+                NodeId.parse("i=5")));
+        nodeIds.sort(TransformerUtils.NODE_ID_ORDER);
+        assertEquals(List.of(
+                NodeId.parse("i=5"),
+                NodeId.parse("i=85"),
+                NodeId.parse("ns=1;i=15031"),
+                NodeId.parse("ns=2;i=6001"),
+                NodeId.parse("ns=2;s=Machine")), nodeIds);
+    }
+
+    @Test
+    void getIriFromNodeIdIsCached() {
+        NodeId nodeId = NodeId.parse("ns=2;s=Machine 1");
+        NodeIdIriCache cache = TransformerUtils.getNodeIdIriCache(uaNst);
+        IRI first = TransformerUtils.getIriFromNodeId(nodeId, uaNst);
+        assertEquals("http://opcfoundation.org/UA/Machinery/Machine+1", first.stringValue());
+        assertSame(first, TransformerUtils.getIriFromNodeId(nodeId, uaNst));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(cache, TransformerUtils.getNodeIdIriCache(new NamespaceTable()));
+    }
+
+    @Test
+    void sharedLiterals() {
+        assertSame(TransformerUtils.getLiteralFromInt(0), TransformerUtils.getLiteralFromInt(0));
+        assertSame(TransformerUtils.getLiteralFromInt(-1), TransformerUtils.getLiteralFromInt(-1));
+        assertEquals(v.createLiteral(100000), TransformerUtils.getLiteralFromInt(100000));
+        assertEquals(v.createLiteral(true), TransformerUtils.getLiteralFromBoolean(true));
+        assertSame(TransformerUtils.getIriFromNodeClass(NodeClass.Object), TransformerUtils.getIriFromNodeClass(NodeClass.Object));
+    }
+
+    @Test
+    void createValueFromDataValue() {
+        DataTypeMapper mapper = new DataTypeMapper(null, null);
+        assertEquals(List.of(v.createLiteral(7)), TransformerUtils.createValueFromDataValue(
+                new DataValue(new Variant(7)), BuiltinDataType.Int32.getTypeId(), mapper).orElseThrow());
+        assertEquals(List.of(v.createLiteral(true), v.createLiteral(false)), TransformerUtils.createValueFromDataValue(
+                new DataValue(new Variant(new Boolean[]{true, false})), BuiltinDataType.Boolean.getTypeId(), mapper).orElseThrow());
+        assertEquals(Arrays.asList(v.createLiteral(1), null, v.createLiteral(3)), TransformerUtils.createValueFromDataValue(
+                new DataValue(new Variant(new Integer[]{1, null, 3})), BuiltinDataType.Int32.getTypeId(), mapper).orElseThrow());
+        assertTrue(TransformerUtils.createValueFromDataValue(new DataValue(Variant.NULL_VALUE), 4711, mapper).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> TransformerUtils.createValueFromDataValue(
+                new DataValue(new Variant(7)), BuiltinDataType.DataValue.getTypeId(), mapper));
+        assertThrows(IllegalArgumentException.class, () -> TransformerUtils.createValueFromDataValue(
+                new DataValue(new Variant(7)), 4711, mapper));
+    }
+
     @Test
     void getUriFromNodeId() {
         nodeIdsMap.forEach((key, value) -> assertTrue(TransformerUtils.getUriFromNodeId(key, uaNst).equals(value)));
@@ -53,6 +115,7 @@ class TransformerUtilsTest {
 
     @Test
     void getOptionalLiteralFromLocalizedText() {
+        assertEquals(Optional.empty(), TransformerUtils.getOptionalLiteralFromLocalizedText(null));
         assertEquals(Optional.empty(), TransformerUtils.getOptionalLiteralFromLocalizedText(LocalizedText.NULL_VALUE));
         assertEquals(Optional.empty(), TransformerUtils.getOptionalLiteralFromLocalizedText(new LocalizedText("en", null)));
         assertEquals(Optional.of(Values.literal("text")), TransformerUtils.getOptionalLiteralFromLocalizedText(new LocalizedText(null, "text")));
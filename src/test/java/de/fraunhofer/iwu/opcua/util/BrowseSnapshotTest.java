@@ -0,0 +1,86 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrowseSnapshotTest {
+
+    static ExampleServer server;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.shutdown().get();
+    }
+
+    @Test
+    void secondStartLoadsTheSnapshot(@TempDir Path directory) throws Exception {
+        CrawlConfig config = CrawlConfig.builder().setMode(CrawlConfig.Mode.PIPELINED).setSnapshotDirectory(directory).build();
+        OpcuaContext crawled = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+        OpcuaContext loaded = null;
+        try {
+            BrowseSnapshot snapshot = BrowseSnapshot.inDirectory(crawled.getClient(), directory);
+            assertTrue(Files.size(snapshot.getFile()) > 0);
+
+            loaded = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+            Map<String, ? extends Map.Entry<? extends UaNode, List<ReferenceDescription>>> expected = byNodeId(crawled.getNodeRefMap());
+            Map<String, ? extends Map.Entry<? extends UaNode, List<ReferenceDescription>>> actual = byNodeId(loaded.getNodeRefMap());
+            assertEquals(expected.keySet(), actual.keySet());
+            expected.forEach((id, entry) -> {
+                UaNode node = actual.get(id).getKey();
+                assertEquals(entry.getKey().getNodeClass(), node.getNodeClass());
+                assertEquals(entry.getKey().getDisplayName(), node.getDisplayName());
+                assertEquals(entry.getValue(), actual.get(id).getValue());
+            });
+            UaVariableNode array = (UaVariableNode) actual.get("ns=2;s=HelloWorld/ArrayTypes/Int32Array").getKey();
+            assertEquals(((UaVariableNode) expected.get("ns=2;s=HelloWorld/ArrayTypes/Int32Array").getKey()).getValue().getValue(), array.getValue().getValue());
+        } finally {
+            crawled.getClient().disconnect();
+            if (loaded != null) {
+                loaded.getClient().disconnect();
+            }
+        }
+    }
+
+    @Test
+    void staleSnapshotIsIgnored(@TempDir Path directory) throws Exception {
+        OpcuaContext ctx = new OpcuaContext("opc.tcp://localhost:12686/milo", CrawlConfig.builder().setSnapshotDirectory(directory).build());
+        try {
+            BrowseSnapshot current = BrowseSnapshot.inDirectory(ctx.getClient(), directory);
+            assertTrue(current.load().isPresent());
+            BrowseSnapshot.Key restarted = new BrowseSnapshot.Key(current.getKey().getApplicationUri(),
+                    ctx.getNamespaces().toArray(), DateTime.now(), null, null);
+            assertFalse(new BrowseSnapshot(ctx.getClient(), current.getFile(), restarted).load().isPresent());
+        } finally {
+            ctx.getClient().disconnect();
+        }
+    }
+
+    private static Map<String, ? extends Map.Entry<? extends UaNode, List<ReferenceDescription>>> byNodeId(Map<? extends UaNode, List<ReferenceDescription>> nodeRefMap) {
+        // ns=1 holds per-session diagnostics that differ between two sessions
+        return nodeRefMap.entrySet().stream()
+                .filter(e -> e.getKey().getNodeId().getNamespaceIndex().intValue() != 1)
+                .collect(Collectors.toMap(e -> e.getKey().getNodeId().toParseableString(), Function.identity()));
+    }
+}
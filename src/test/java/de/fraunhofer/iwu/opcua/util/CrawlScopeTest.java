@@ -0,0 +1,61 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlScopeTest {
+
+    @Test
+    void namespacesAreFilteredByUri() {
+        NamespaceTable namespaces = new NamespaceTable();
+        namespaces.addUri("http://example.org/machine/");
+        namespaces.addUri("http://example.org/vendor/");
+        Predicate<NodeId> included = CrawlScope.builder().includeNamespaces("http://example.org/machine/", "http://example.org/unknown/").build().namespaceFilter(namespaces);
+        assertTrue(included.test(new NodeId(1, 5)));
+        assertFalse(included.test(new NodeId(2, 5)));
+        assertFalse(included.test(Identifiers.Server));
+
+        Predicate<NodeId> excluded = CrawlScope.builder().excludeNamespaces("http://example.org/vendor/").build().namespaceFilter(namespaces);
+        assertTrue(excluded.test(Identifiers.Server));
+        assertFalse(excluded.test(new NodeId(2, 5)));
+    }
+
+    @Test
+    void referencesBrowsedPerTypeAreMerged() {
+        ReferenceDescription organizes = reference(Identifiers.Organizes, 1);
+        ReferenceDescription component = reference(Identifiers.HasComponent, 2);
+        ReferenceDescription property = reference(Identifiers.HasProperty, 3);
+        assertEquals(List.of(organizes, component, property),
+                CrawlScope.merge(List.of(List.of(organizes, component), List.of(component, property))));
+        assertEquals(List.of(component), CrawlScope.retain(List.of(organizes, component), List.of(component, property)));
+    }
+
+    @Test
+    void defaultsCoverTheWholeAddressSpace() {
+        CrawlScope all = CrawlScope.all();
+        assertEquals(List.of(Identifiers.RootFolder), all.getStartNodes());
+        assertTrue(all.isAllReferenceTypes());
+        assertEquals(0, all.getNodeClassMask());
+        assertTrue(all.descendsFrom(1000));
+        assertEquals(all, CrawlScope.builder().build());
+        assertEquals(NodeClass.Object.getValue() | NodeClass.Variable.getValue(),
+                CrawlScope.builder().setNodeClasses(NodeClass.Object, NodeClass.Variable).build().getNodeClassMask());
+        assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().setMaxDepth(-1));
+    }
+
+    private static ReferenceDescription reference(NodeId referenceType, int target) {
+        return new ReferenceDescription(referenceType, true, new NodeId(1, target).expanded(), QualifiedName.NULL_VALUE,
+                LocalizedText.NULL_VALUE, NodeClass.Variable, Identifiers.BaseDataVariableType.expanded());
+    }
+}
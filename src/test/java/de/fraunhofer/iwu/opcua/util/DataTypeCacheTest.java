@@ -0,0 +1,106 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataTypeCacheTest {
+
+    static ExampleServer server;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.shutdown().get();
+    }
+
+    @Test
+    void secondSessionLoadsTheCache(@TempDir Path directory) throws Exception {
+        CrawlConfig config = config(directory);
+        OpcuaContext first = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+        OpcuaContext second = null;
+        try {
+            assertFalse(first.getDataTypes().isCached());
+            assertTrue(Files.size(directory.resolve(first.getDataTypes().getKey().getFileName())) > 0);
+
+            second = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+            DataTypeCache.Entry cached = second.getDataTypes();
+            assertTrue(cached.isCached());
+            assertEquals(first.getDataTypes().getKey(), cached.getKey());
+            assertEquals(dataTypes(first.getDataTypes().getTree()), dataTypes(cached.getTree()));
+            assertSame(cached.getTree(), second.getClient().getSession().get().getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY));
+            assertEquals(Identifiers.Argument_Encoding_DefaultBinary, cached.getTree().getBinaryEncodingId(Identifiers.Argument));
+            assertEquals(first.getDataTypes().getDictionaries().size(), cached.getDictionaries().size());
+            for (int i = 0; i < cached.getDictionaries().size(); i++) {
+                assertEquals(first.getDataTypes().getDictionaries().get(i).getBytes(), cached.getDictionaries().get(i).getBytes());
+                assertEquals(first.getDataTypes().getDictionaries().get(i).getTypeCount(), cached.getDictionaries().get(i).getTypeCount());
+            }
+        } finally {
+            first.getClient().disconnect();
+            if (second != null) {
+                second.getClient().disconnect();
+            }
+        }
+    }
+
+    @Test
+    void unreadableCacheIsReplaced(@TempDir Path directory) throws Exception {
+        CrawlConfig config = config(directory);
+        OpcuaContext first = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+        first.getClient().disconnect();
+        Path file = directory.resolve(first.getDataTypes().getKey().getFileName());
+        Files.write(file, new byte[]{1, 2, 3});
+
+        OpcuaContext second = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+        try {
+            assertFalse(second.getDataTypes().isCached());
+            assertNotNull(second.getDataTypes().getTree().getDataType(Identifiers.Double));
+            assertTrue(Files.size(file) > 3);
+        } finally {
+            second.getClient().disconnect();
+        }
+    }
+
+    @Test
+    void reconnectedSessionGetsTheDataTypes(@TempDir Path directory) throws Exception {
+        OpcuaContext ctx = new OpcuaContext("opc.tcp://localhost:12686/milo", config(directory));
+        try {
+            assertFalse(ctx.getDataTypes().isCached());
+            ctx.getClient().disconnect().get();
+            ctx.getClient().connect().get();
+            assertTrue(ctx.getDataTypes().isCached());
+            assertSame(ctx.getDataTypes().getTree(), ctx.getClient().getSession().get().getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY));
+        } finally {
+            ctx.getClient().disconnect();
+        }
+    }
+
+    private static CrawlConfig config(Path directory) {
+        CrawlScope scope = CrawlScope.builder().setStartNodes(NodeId.parse("ns=2;s=HelloWorld")).setMaxDepth(0).build();
+        return CrawlConfig.builder().setScope(scope).setDataTypeCacheDirectory(directory).build();
+    }
+
+    private static List<String> dataTypes(DataTypeTree tree) {
+        List<String> dataTypes = new ArrayList<>();
+        tree.getTree().traverse(dataType -> dataTypes.add(dataType.toString()));
+        return dataTypes;
+    }
+}
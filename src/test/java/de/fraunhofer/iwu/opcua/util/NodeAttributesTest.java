@@ -0,0 +1,90 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaObjectNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeAttributesTest {
+
+    @Test
+    void attributeLayoutStartsWithBaseAttributes() {
+        for (NodeClass nodeClass : NodeClass.values()) {
+            if (nodeClass == NodeClass.Unspecified) {
+                assertThrows(IllegalArgumentException.class, () -> NodeAttributes.of(nodeClass));
+                continue;
+            }
+            List<AttributeId> attributes = NodeAttributes.of(nodeClass);
+            assertEquals(AttributeId.NodeId, attributes.get(0));
+            assertEquals(AttributeId.UserWriteMask, attributes.get(6));
+            assertEquals(attributes.size(), NodeAttributes.readValueIds(NodeId.parse("i=85"), nodeClass).size());
+        }
+    }
+
+    @Test
+    void createObjectNode() throws UaException {
+        NodeId nodeId = NodeId.parse("ns=2;s=Machine");
+        UaNode node = NodeAttributes.createNode(null, nodeId, NodeClass.Object, List.of(
+                new DataValue(new Variant(nodeId)),
+                new DataValue(new Variant(NodeClass.Object.getValue())),
+                new DataValue(new Variant(new QualifiedName(2, "Machine"))),
+                new DataValue(new Variant(LocalizedText.english("Machine"))),
+                new DataValue(StatusCode.BAD),
+                new DataValue(new Variant(uint(0))),
+                new DataValue(new Variant(uint(0))),
+                new DataValue(new Variant(ubyte(1)))));
+        assertTrue(node instanceof UaObjectNode);
+        assertEquals("Machine", node.getDisplayName().getText());
+        assertNull(node.getDescription());
+        assertEquals(1, ((UaObjectNode) node).getEventNotifier().intValue());
+    }
+
+    @Test
+    void valuesRecreateTheNode() throws UaException {
+        NodeId nodeId = NodeId.parse("ns=2;s=Machine/Speed");
+        DataValue value = new DataValue(new Variant(new double[]{1.0, 2.0}));
+        UaVariableNode node = new UaVariableNode(null, nodeId, NodeClass.Variable, new QualifiedName(2, "Speed"),
+                LocalizedText.english("Speed"), null, uint(0), uint(0), value, NodeId.parse("i=11"), 1,
+                new UInteger[]{uint(2)}, ubyte(1), ubyte(1), 100.0, false);
+        List<DataValue> values = NodeAttributes.values(node);
+        assertEquals(NodeAttributes.of(NodeClass.Variable).size(), values.size());
+        assertSame(value, values.get(7));
+
+        UaVariableNode copy = (UaVariableNode) NodeAttributes.createNode(null, nodeId, NodeClass.Variable, values);
+        assertEquals(node.getBrowseName(), copy.getBrowseName());
+        assertNull(copy.getDescription());
+        assertEquals(node.getDataType(), copy.getDataType());
+        assertArrayEquals(node.getArrayDimensions(), copy.getArrayDimensions());
+        assertEquals(100.0, copy.getMinimumSamplingInterval());
+        assertFalse(copy.getHistorizing());
+    }
+
+    @Test
+    void shortReadResponseLeavesNodesOut() {
+        List<NodeId> ids = List.of(NodeId.parse("i=85"), NodeId.parse("i=2253"), NodeId.parse("i=58"));
+        DataValue[] results = {new DataValue(new Variant(NodeClass.Object.getValue())),
+                new DataValue(new StatusCode(StatusCodes.Bad_NodeIdUnknown))};
+        assertEquals(Map.of(ids.get(0), NodeClass.Object), NodeAttributes.nodeClasses(ids, results));
+        assertTrue(NodeAttributes.nodeClasses(ids, null).isEmpty());
+    }
+
+    @Test
+    void missingBrowseNameIsRejected() {
+        DataValue bad = new DataValue(new StatusCode(StatusCodes.Bad_NodeIdUnknown));
+        assertThrows(UaException.class, () -> NodeAttributes.createNode(null, NodeId.parse("i=1"), NodeClass.DataType,
+                List.of(bad, bad, bad, bad, bad, bad, bad, bad)));
+    }
+}
@@ -0,0 +1,122 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaObjectNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaReferenceTypeNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.XmlElement;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSetReaderTest {
+
+    static final String NAMESPACE = "http://iwu.fraunhofer.de/test/nodeset/";
+    static NodeSetReader reader;
+    static Map<NodeId, UaNode> nodes;
+    static Map<UaNode, List<ReferenceDescription>> nodeRefMap;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        try (InputStream in = NodeSetReaderTest.class.getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            reader = new NodeSetReader().read(in);
+        }
+        nodeRefMap = reader.getNodeRefMap();
+        nodes = nodeRefMap.keySet().stream().collect(Collectors.toMap(UaNode::getNodeId, n -> n));
+    }
+
+    static NodeId id(int identifier) {
+        return new NodeId(reader.getNamespaces().getIndex(NAMESPACE), identifier);
+    }
+
+    @Test
+    void namespacesAreMapped() {
+        assertEquals(1, reader.getNamespaces().getIndex(NAMESPACE).intValue());
+        assertEquals(11, nodes.size());
+        assertEquals(new QualifiedName(1, "Tool"), nodes.get(id(5001)).getBrowseName());
+        assertEquals(new QualifiedName(0, "InputArguments"), nodes.get(id(6006)).getBrowseName());
+        assertEquals(1, ((UaObjectNode) nodes.get(id(5001))).getEventNotifier().intValue());
+        assertEquals("IsFedBy", ((UaReferenceTypeNode) nodes.get(id(4001))).getInverseName().getText());
+    }
+
+    @Test
+    void valuesAreDecoded() {
+        UaVariableNode diameter = (UaVariableNode) nodes.get(id(6001));
+        assertEquals(Identifiers.Double, diameter.getDataType());
+        assertEquals(12.5, diameter.getValue().getValue().getValue());
+        assertEquals(3, diameter.getAccessLevel().intValue());
+
+        UaVariableNode offsets = (UaVariableNode) nodes.get(id(6002));
+        assertArrayEquals(new Integer[]{1, -2, 3}, (Integer[]) offsets.getValue().getValue().getValue());
+        assertEquals(1, offsets.getValueRank());
+        assertEquals(3, offsets.getArrayDimensions()[0].intValue());
+
+        assertEquals(new LocalizedText("en", "End mill"), ((UaVariableNode) nodes.get(id(6003))).getValue().getValue().getValue());
+        assertEquals(id(3001), ((UaVariableNode) nodes.get(id(6005))).getDataType());
+
+        ExtensionObject[] arguments = (ExtensionObject[]) ((UaVariableNode) nodes.get(id(6006))).getValue().getValue().getValue();
+        assertEquals(NodeId.parse("i=297"), arguments[0].getEncodingId());
+        assertTrue(((XmlElement) arguments[0].getBody()).getFragment().contains("Tool"));
+    }
+
+    @Test
+    void inverseReferencesAreMovedToTheirTarget() {
+        List<ReferenceDescription> tool = nodeRefMap.get(nodes.get(id(5001)));
+        // declared on both ends, kept once
+        assertEquals(1, tool.stream().filter(r -> r.getNodeId().equals(id(6001).expanded())).count());
+        assertTrue(tool.stream().anyMatch(r -> r.getNodeId().equals(id(6002).expanded())
+                && r.getReferenceTypeId().equals(Identifiers.HasComponent)));
+        // the target is not part of the NodeSet
+        assertTrue(tool.stream().anyMatch(r -> !r.getIsForward() && r.getNodeId().equals(Identifiers.ObjectsFolder.expanded())));
+        assertTrue(nodeRefMap.get(nodes.get(id(6001))).stream().noneMatch(r -> r.getReferenceTypeId().equals(Identifiers.HasComponent)));
+    }
+
+    @Test
+    void dataTypeTreeResolvesSubtypes() {
+        DataTypeTree tree = reader.getDataTypeTree();
+        assertEquals(Identifiers.Enumeration, tree.getTreeNode(id(3001)).getParent().getValue().getNodeId());
+        assertEquals(Integer.class, tree.getBackingClass(id(3001)));
+        assertEquals(Double.class, tree.getBackingClass(Identifiers.Double));
+    }
+
+    @Test
+    void filesShareOneNamespaceTable() throws IOException {
+        String other = "<UANodeSet xmlns=\"http://opcfoundation.org/UA/2011/03/UANodeSet.xsd\">"
+                + "<NamespaceUris><Uri>http://iwu.fraunhofer.de/test/other/</Uri><Uri>" + NAMESPACE + "</Uri></NamespaceUris>"
+                + "<UAObject NodeId=\"ns=1;s=Holder\" BrowseName=\"1:Holder\"><DisplayName>Holder</DisplayName>"
+                + "<References><Reference ReferenceType=\"i=47\">ns=2;i=5001</Reference></References></UAObject>"
+                + "</UANodeSet>";
+        NodeSetReader both = new NodeSetReader();
+        try (InputStream in = NodeSetReaderTest.class.getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            both.read(in);
+        }
+        both.read(new ByteArrayInputStream(other.getBytes(StandardCharsets.UTF_8)));
+        NodeId holder = new NodeId(2, "Holder");
+        Map<UaNode, List<ReferenceDescription>> map = both.getNodeRefMap();
+        UaNode node = map.keySet().stream().filter(n -> n.getNodeId().equals(holder)).findFirst().orElseThrow();
+        assertEquals(new NodeId(1, 5001).expanded(), map.get(node).get(0).getNodeId());
+    }
+
+    @Test
+    void malformedFileIsReported() {
+        byte[] xml = "<UANodeSet xmlns=\"http://opcfoundation.org/UA/2011/03/UANodeSet.xsd\"><UAObject NodeId=\"ns=5;i=1\" BrowseName=\"X\"/></UANodeSet>"
+                .getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> new NodeSetReader().read(new ByteArrayInputStream(xml)));
+    }
+}
@@ -0,0 +1,103 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.sdk.client.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.XmlElement;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSetTransformerTest {
+
+    @Test
+    void nodeSetSurvivesARoundTrip() throws IOException {
+        NodeSetReader original = new NodeSetReader();
+        try (InputStream in = getClass().getResourceAsStream("/nodeset/Test.NodeSet2.xml")) {
+            original.read(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NodeSetTransformer(original.toContext()).transform(out);
+        String xml = out.toString(StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<Alias Alias=\"HasComponent\">i=47</Alias>"));
+
+        NodeSetReader copy = new NodeSetReader().read(new ByteArrayInputStream(out.toByteArray()));
+        Map<NodeId, UaNode> before = byId(original.getNodeRefMap());
+        Map<NodeId, UaNode> after = byId(copy.getNodeRefMap());
+        assertEquals(before.keySet(), after.keySet());
+        before.forEach((nodeId, node) -> {
+            assertEquals(node.getBrowseName(), after.get(nodeId).getBrowseName());
+            assertEquals(node.getDisplayName(), after.get(nodeId).getDisplayName());
+            assertEquals(node.getNodeClass(), after.get(nodeId).getNodeClass());
+        });
+        UaVariableNode offsets = (UaVariableNode) after.get(new NodeId(1, 6002));
+        assertArrayEquals(new Integer[]{1, -2, 3}, (Integer[]) offsets.getValue().getValue().getValue());
+        assertEquals(new LocalizedText("en", "End mill"), ((UaVariableNode) after.get(new NodeId(1, 6003))).getValue().getValue().getValue());
+        ExtensionObject argument = ((ExtensionObject[]) ((UaVariableNode) after.get(new NodeId(1, 6006))).getValue().getValue().getValue())[0];
+        assertTrue(((XmlElement) argument.getBody()).getFragment().contains("Tool"));
+        assertEquals(references(original.getNodeRefMap(), new NodeId(1, 5001)), references(copy.getNodeRefMap(), new NodeId(1, 5001)));
+    }
+
+    @Test
+    void exportCrawledServer(@TempDir Path dir) throws Exception {
+        ExampleServer server = new ExampleServer();
+        server.startup().get();
+        try {
+            Path file = dir.resolve("milo.NodeSet2.xml");
+            OpcuaContext ctx = new OpcuaContext("opc.tcp://localhost:12686/milo");
+            new NodeSetTransformer(ctx).save(file);
+            ctx.getClient().disconnect().get();
+
+            NodeSetReader reader = NodeSetReader.of(file);
+            Map<NodeId, UaNode> exported = byId(reader.getNodeRefMap());
+            assertEquals(ctx.getNodeRefMap().size(), exported.size());
+            assertArrayEquals(ctx.getNamespaces().toArray(), reader.getNamespaces().toArray());
+            assertTrue(exported.containsKey(Identifiers.Server_NamespaceArray));
+            assertTrue(references(reader.getNodeRefMap(), Identifiers.ObjectsFolder)
+                    .contains(Identifiers.Organizes.toParseableString() + true + Identifiers.Server.expanded().toParseableString()));
+        } finally {
+            server.shutdown().get();
+        }
+    }
+
+    @Test
+    void ownedClientStaysConnectedUntilClose(@TempDir Path dir) throws Exception {
+        ExampleServer server = new ExampleServer();
+        server.startup().get();
+        try (NodeSetTransformer transformer = new NodeSetTransformer("opc.tcp://localhost:12686/milo")) {
+            transformer.save(dir.resolve("first.NodeSet2.xml"));
+            transformer.save(dir.resolve("second.NodeSet2.xml"));
+            assertEquals(NodeSetReader.of(dir.resolve("first.NodeSet2.xml")).getNodeRefMap().size(),
+                    NodeSetReader.of(dir.resolve("second.NodeSet2.xml")).getNodeRefMap().size());
+            assertNotNull(transformer.ctx.getClient().getSession().get());
+        } finally {
+            server.shutdown().get();
+        }
+    }
+
+    private static Map<NodeId, UaNode> byId(Map<UaNode, List<ReferenceDescription>> nodeRefMap) {
+        return nodeRefMap.keySet().stream().collect(Collectors.toMap(UaNode::getNodeId, n -> n));
+    }
+
+    private static List<String> references(Map<UaNode, List<ReferenceDescription>> nodeRefMap, NodeId nodeId) {
+        return nodeRefMap.entrySet().stream().filter(e -> e.getKey().getNodeId().equals(nodeId)).findFirst().orElseThrow()
+                .getValue().stream().map(r -> r.getReferenceTypeId().toParseableString() + r.getIsForward() + r.getNodeId().toParseableString())
+                .sorted().collect(Collectors.toList());
+    }
+}
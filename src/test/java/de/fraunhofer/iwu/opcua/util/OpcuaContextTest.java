@@ -3,6 +3,9 @@ package de.fraunhofer.iwu.opcua.util;
 import org.eclipse.milo.examples.server.ExampleServer;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
 import org.eclipse.milo.opcua.sdk.client.nodes.UaNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.junit.jupiter.api.*;
@@ -40,6 +43,74 @@ class OpcuaContextTest {
         assertEquals(1, nodes.get(dynamicBool).size());
     }
 
+    @Test
+    void pipelinedCrawlMatchesSequentialCrawl() {
+        CrawlConfig config = CrawlConfig.builder().setMode(CrawlConfig.Mode.PIPELINED).setMaxRequestsInFlight(4).setNodesPerBrowse(25).build();
+        OpcuaContext pipelined = new OpcuaContext("opc.tcp://localhost:12686/milo", config);
+        try {
+            // ns=1 holds per-session diagnostics that differ between the two sessions
+            Set<String> expected = helper.getNodeRefMap().keySet().stream().filter(k -> k.getNodeId().getNamespaceIndex().intValue() != 1).map(k -> k.getNodeId().toParseableString()).collect(Collectors.toSet());
+            Set<String> actual = pipelined.getNodeRefMap().keySet().stream().filter(k -> k.getNodeId().getNamespaceIndex().intValue() != 1).map(k -> k.getNodeId().toParseableString()).collect(Collectors.toSet());
+            assertEquals(expected, actual);
+            UaNode dynamicBool = pipelined.getNodeRefMap().keySet().stream()
+                    .filter(k -> k.getNodeId().toParseableString().equals("ns=2;s=HelloWorld/Dynamic/Boolean"))
+                    .findFirst().orElseThrow(() -> new RuntimeException("Node not found in nodes"));
+            assertEquals(1, pipelined.getNodeRefMap().get(dynamicBool).size());
+        } finally {
+            pipelined.getClient().disconnect();
+        }
+    }
+
+    @Test
+    void scopedCrawlStaysInsideTheScope() {
+        CrawlScope scope = CrawlScope.builder()
+                .setStartNodes(NodeId.parse("ns=2;s=HelloWorld"))
+                .setMaxDepth(1)
+                .includeNamespaces("urn:eclipse:milo:hello-world")
+                .setReferenceTypes(Identifiers.HierarchicalReferences)
+                .setNodeClasses(NodeClass.Object, NodeClass.Variable)
+                .build();
+        Set<String> previous = null;
+        for (CrawlConfig.Mode mode : CrawlConfig.Mode.values()) {
+            OpcuaContext scoped = new OpcuaContext("opc.tcp://localhost:12686/milo", CrawlConfig.builder().setMode(mode).setScope(scope).build());
+            try {
+                Set<String> nodeIds = scoped.getNodeRefMap().keySet().stream().map(k -> k.getNodeId().toParseableString()).collect(Collectors.toSet());
+                assertTrue(nodeIds.contains("ns=2;s=HelloWorld"));
+                assertTrue(nodeIds.contains("ns=2;s=HelloWorld/Dynamic"));
+                assertFalse(nodeIds.contains("ns=2;s=HelloWorld/Dynamic/Double"));
+                assertTrue(nodeIds.size() < helper.getNodeRefMap().size() / 10);
+                scoped.getNodeRefMap().values().forEach(references -> references.forEach(r -> {
+                    assertNotEquals(Identifiers.HasTypeDefinition, r.getReferenceTypeId());
+                    assertTrue(r.getNodeClass() == NodeClass.Object || r.getNodeClass() == NodeClass.Variable);
+                }));
+                if (previous != null) {
+                    assertEquals(previous, nodeIds);
+                }
+                previous = nodeIds;
+            } finally {
+                scoped.getClient().disconnect();
+            }
+        }
+    }
+
+    @Test
+    void maxDepthCountsTheShortestPath() {
+        // BaseEventType is at depth 2 below EventTypes and at depth 3 below ObjectTypes/BaseObjectType
+        CrawlScope scope = CrawlScope.builder().setStartNodes(Identifiers.TypesFolder).setMaxDepth(3).build();
+        for (CrawlConfig.Mode mode : CrawlConfig.Mode.values()) {
+            OpcuaContext scoped = new OpcuaContext("opc.tcp://localhost:12686/milo", CrawlConfig.builder().setMode(mode).setScope(scope).build());
+            try {
+                Set<NodeId> nodeIds = scoped.getNodeRefMap().keySet().stream().map(UaNode::getNodeId).collect(Collectors.toSet());
+                assertTrue(nodeIds.contains(Identifiers.BaseEventType), mode.toString());
+                assertTrue(nodeIds.contains(Identifiers.AuditEventType), mode.toString());
+                assertTrue(nodeIds.contains(Identifiers.SystemEventType), mode.toString());
+                assertFalse(nodeIds.contains(Identifiers.AuditSecurityEventType), mode.toString());
+            } finally {
+                scoped.getClient().disconnect();
+            }
+        }
+    }
+
     @Test
     void getEndpointDescriptions() {
         List<EndpointDescription> endpointDescriptions = helper.getEndpointDescriptions();
@@ -0,0 +1,68 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputConfigTest {
+
+    static final String CONTENT = "<urn:a> <urn:b> \"c\" .\n".repeat(1000);
+
+    @Test
+    void compressedFilesCanBeRead(@TempDir Path dir) throws IOException {
+        for (OutputConfig.Compression compression : OutputConfig.Compression.values()) {
+            OutputConfig config = OutputConfig.builder().setFormat(RDFFormat.NTRIPLES).setCompression(compression)
+                    .setLevel(compression == OutputConfig.Compression.NONE ? -1 : 3).build();
+            Path file = dir.resolve("sub/out" + config.getFileExtension());
+            try (OutputStream out = config.open(file)) {
+                out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            }
+            try (InputStream in = decompress(compression, Files.newInputStream(file))) {
+                assertEquals(CONTENT, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            if (compression != OutputConfig.Compression.NONE) {
+                assertTrue(Files.size(file) < CONTENT.length() / 10);
+            }
+        }
+    }
+
+    @Test
+    void fileExtensionCombinesFormatAndCompression() {
+        assertEquals(".ttl", OutputConfig.defaults().getFileExtension());
+        assertEquals(".nt.zst", OutputConfig.builder().setFormat(RDFFormat.NTRIPLES).setCompression(OutputConfig.Compression.ZSTD).build().getFileExtension());
+        assertEquals(".brf.gz", OutputConfig.builder().setFormat(RDFFormat.BINARY).setCompression(OutputConfig.Compression.GZIP).build().getFileExtension());
+        assertThrows(IllegalArgumentException.class, () -> OutputConfig.builder().setBufferSize(0));
+    }
+
+    @Test
+    void levelMustFitTheCompression() {
+        assertEquals(9, OutputConfig.builder().setCompression(OutputConfig.Compression.GZIP).setLevel(9).build().getLevel());
+        assertEquals(22, OutputConfig.builder().setCompression(OutputConfig.Compression.ZSTD).setLevel(22).build().getLevel());
+        assertThrows(IllegalArgumentException.class, () -> OutputConfig.builder().setCompression(OutputConfig.Compression.GZIP).setLevel(10).build());
+        assertThrows(IllegalArgumentException.class, () -> OutputConfig.builder().setCompression(OutputConfig.Compression.ZSTD).setLevel(0).build());
+        assertThrows(IllegalArgumentException.class, () -> OutputConfig.builder().setLevel(3).build());
+        assertThrows(IllegalArgumentException.class, () -> OutputConfig.builder().setCompression(OutputConfig.Compression.GZIP).setLevel(-2).build());
+    }
+
+    static InputStream decompress(OutputConfig.Compression compression, InputStream in) throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(in);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            default:
+                return in;
+        }
+    }
+}
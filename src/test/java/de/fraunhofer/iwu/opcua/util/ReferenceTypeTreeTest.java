@@ -0,0 +1,46 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceTypeTreeTest {
+
+    ReferenceTypeTree tree;
+    NodeId vendorReference = NodeId.parse("ns=2;i=4711");
+
+    @BeforeEach
+    void setUp() {
+        Map<NodeId, NodeId> supertypes = new HashMap<>();
+        supertypes.put(Identifiers.References, null);
+        supertypes.put(Identifiers.HierarchicalReferences, Identifiers.References);
+        supertypes.put(Identifiers.NonHierarchicalReferences, Identifiers.References);
+        supertypes.put(Identifiers.HasChild, Identifiers.HierarchicalReferences);
+        supertypes.put(Identifiers.Aggregates, Identifiers.HasChild);
+        supertypes.put(Identifiers.HasComponent, Identifiers.Aggregates);
+        supertypes.put(Identifiers.HasTypeDefinition, Identifiers.NonHierarchicalReferences);
+        supertypes.put(vendorReference, Identifiers.HasComponent);
+        tree = new ReferenceTypeTree(supertypes);
+    }
+
+    @Test
+    void isHierarchical() {
+        assertTrue(tree.isHierarchical(Identifiers.HasComponent));
+        assertTrue(tree.isHierarchical(vendorReference));
+        assertFalse(tree.isHierarchical(Identifiers.HasTypeDefinition));
+        assertFalse(tree.isHierarchical(NodeId.parse("ns=3;i=1")));
+    }
+
+    @Test
+    void isSubtypeOf() {
+        assertTrue(tree.isSubtypeOf(vendorReference, Identifiers.References));
+        assertTrue(tree.isSubtypeOf(Identifiers.HasChild, Identifiers.HasChild));
+        assertFalse(tree.isSubtypeOf(Identifiers.HasChild, Identifiers.HasComponent));
+    }
+}
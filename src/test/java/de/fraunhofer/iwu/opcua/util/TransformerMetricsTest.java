@@ -0,0 +1,107 @@
+package de.fraunhofer.iwu.opcua.util;
+
+import de.fraunhofer.iwu.opcua.rdf.RdfTransformer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.examples.server.ExampleServer;
+import org.eclipse.milo.opcua.sdk.client.DataTypeTreeSessionInitializer;
+import org.eclipse.milo.opcua.sdk.core.DataTypeTree;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.rdf4j.model.impl.ValidatingValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformerMetricsTest {
+
+    private static final String URL = "opc.tcp://localhost:12686/milo";
+    static ExampleServer server;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new ExampleServer();
+        server.startup().get();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.shutdown().get();
+    }
+
+    @Test
+    void crawlRecordsRequestsNodesAndPhases() {
+        for (CrawlConfig.Mode mode : CrawlConfig.Mode.values()) {
+            MeterRegistry registry = new SimpleMeterRegistry();
+            OpcuaContext ctx = new OpcuaContext(URL, config(mode, registry));
+            try {
+                assertTrue(timer(registry, TransformerMetrics.REQUESTS, "service", "browse").count() > 0, mode.toString());
+                assertTrue(timer(registry, TransformerMetrics.REQUESTS, "service", "read").count() > 0, mode.toString());
+                assertEquals(ctx.getNodeRefMap().size(), counter(registry, TransformerMetrics.NODES).count(), mode.toString());
+                assertEquals(1, timer(registry, TransformerMetrics.PHASE, "phase", "connect").count(), mode.toString());
+                assertEquals(1, timer(registry, TransformerMetrics.PHASE, "phase", "crawl").count(), mode.toString());
+                assertEquals(URL, registry.get(TransformerMetrics.NODES).counter().getId().getTag("endpoint"));
+            } finally {
+                ctx.getClient().disconnect();
+            }
+        }
+    }
+
+    @Test
+    void transformRecordsStatementsCacheAndBytes(@TempDir Path directory) throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        OpcuaContext ctx = new OpcuaContext(URL, config(CrawlConfig.Mode.PIPELINED, registry));
+        DataTypeTree tree = (DataTypeTree) ctx.getClient().getSession().get().getAttribute(DataTypeTreeSessionInitializer.SESSION_ATTRIBUTE_KEY);
+        RdfTransformer transformer = new RdfTransformer(ctx, new ValidatingValueFactory().createIRI("http://example.org/ap"), tree);
+        assertSame(ctx.getMetrics(), transformer.getMetrics());
+        transformer.setOutputConfig(OutputConfig.builder().setFormat(RDFFormat.NTRIPLES).setCompression(OutputConfig.Compression.GZIP).build());
+        Path file = directory.resolve("metrics.nt.gz");
+        transformer.transform(file);
+
+        assertTrue(counter(registry, TransformerMetrics.STATEMENTS, "nodeClass", NodeClass.Variable.name()).count() > 0);
+        assertTrue(counter(registry, TransformerMetrics.STATEMENTS, "nodeClass", NodeClass.Object.name()).count() > 0);
+        assertEquals(0, counter(registry, TransformerMetrics.STATEMENTS, "nodeClass", NodeClass.DataType.name()).count());
+        assertTrue(registry.get(TransformerMetrics.CACHE).tag("cache", "nodeIdIri").tag("result", "hit").counter().count() > 0);
+        assertEquals(Files.size(file), registry.get(TransformerMetrics.BYTES).tag("format", "nt").tag("compression", "gzip").counter().count());
+        assertEquals(1, timer(registry, TransformerMetrics.PHASE, "phase", "transform").count());
+        ctx.getClient().disconnect();
+    }
+
+    @Test
+    void countedBytesMatchTheStream() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        TransformerMetrics metrics = new TransformerMetrics(registry, URL);
+        OutputConfig outputConfig = OutputConfig.builder().setFormat(RDFFormat.TURTLE).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream counted = metrics.countBytes(outputConfig, out)) {
+            counted.write('a');
+            counted.write(new byte[10], 2, 5);
+        }
+        assertEquals(6, out.size());
+        assertEquals(6, registry.get(TransformerMetrics.BYTES).tag("format", "ttl").tag("compression", "none").counter().count());
+    }
+
+    private static CrawlConfig config(CrawlConfig.Mode mode, MeterRegistry registry) {
+        CrawlScope scope = CrawlScope.builder().setStartNodes(NodeId.parse("ns=2;s=HelloWorld")).build();
+        return CrawlConfig.builder().setMode(mode).setScope(scope).setMeterRegistry(registry).build();
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String key, String value) {
+        return registry.get(name).tag(key, value).timer();
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String... tags) {
+        return registry.get(name).tags(tags).counter();
+    }
+}